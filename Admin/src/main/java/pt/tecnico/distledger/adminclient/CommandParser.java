@@ -5,6 +5,7 @@ import lombok.CustomLog;
 import pt.tecnico.distledger.adminclient.grpc.AdminService;
 import pt.tecnico.distledger.common.exceptions.ServerUnresolvableException;
 import pt.ulisboa.tecnico.distledger.contract.admin.AdminDistLedger.GetLedgerStateResponse;
+import pt.ulisboa.tecnico.distledger.contract.admin.AdminDistLedger.GossipAllResponse;
 
 import java.util.Scanner;
 
@@ -20,6 +21,8 @@ public class CommandParser {
     private static final String GET_LEDGER_STATE_ALIAS = "ls";
     private static final String GOSSIP = "gossip";
     private static final String GOSSIP_ALIAS = "g";
+    private static final String GOSSIP_ALL = "gossipAll";
+    private static final String GOSSIP_ALL_ALIAS = "ga";
     private static final String HELP = "help";
     private static final String HELP_ALIAS = "h";
     private static final String EXIT = "exit";
@@ -46,6 +49,7 @@ public class CommandParser {
                     case DEACTIVATE, DEACTIVATE_ALIAS -> this.deactivate(line);
                     case GET_LEDGER_STATE, GET_LEDGER_STATE_ALIAS -> this.dump(line);
                     case GOSSIP, GOSSIP_ALIAS -> this.gossip(line);
+                    case GOSSIP_ALL, GOSSIP_ALL_ALIAS -> this.gossipAll(line);
                     case HELP, HELP_ALIAS -> this.printUsage();
                     case EXIT, EXIT_ALIAS -> exit = true;
                     default -> {
@@ -127,6 +131,23 @@ public class CommandParser {
         adminService.gossip(serverFrom, serverTo);
     }
 
+    private void gossipAll(String line) throws ServerUnresolvableException {
+        String[] split = line.split(SPACE);
+
+        if (split.length != 2) {
+            this.printUsage();
+            return;
+        }
+        String serverFrom = split[1];
+
+        final GossipAllResponse response = adminService.gossipAll(serverFrom);
+        if (response.getFailedCount() > 0) {
+            log.error("Failed to gossip to server(s) %s%n", String.join(", ", response.getFailedList()));
+            return;
+        }
+        log.info("OK%n");
+    }
+
     private void printUsage() {
         log.info(
                 """
@@ -135,6 +156,7 @@ public class CommandParser {
                         - deactivate <server>
                         - getLedgerState <server>
                         - gossip <serverFrom> <serverTo>
+                        - gossipAll <serverFrom>
                         - exit
                         """
         );
@@ -8,6 +8,8 @@ import pt.ulisboa.tecnico.distledger.contract.admin.AdminDistLedger.ActivateRequ
 import pt.ulisboa.tecnico.distledger.contract.admin.AdminDistLedger.DeactivateRequest;
 import pt.ulisboa.tecnico.distledger.contract.admin.AdminDistLedger.GetLedgerStateRequest;
 import pt.ulisboa.tecnico.distledger.contract.admin.AdminDistLedger.GetLedgerStateResponse;
+import pt.ulisboa.tecnico.distledger.contract.admin.AdminDistLedger.GossipAllRequest;
+import pt.ulisboa.tecnico.distledger.contract.admin.AdminDistLedger.GossipAllResponse;
 import pt.ulisboa.tecnico.distledger.contract.admin.AdminDistLedger.GossipRequest;
 import pt.ulisboa.tecnico.distledger.contract.admin.AdminServiceGrpc.AdminServiceBlockingStub;
 
@@ -43,6 +45,14 @@ public class AdminService implements AutoCloseable {
         log.debug("[Server '%s'] Receiving gossip response (to server '%s')", serverFrom, serverTo);
     }
 
+    public GossipAllResponse gossipAll(String serverFrom) throws ServerUnresolvableException {
+        log.debug("[Server '%s'] Sending request to gossip to all servers", serverFrom);
+        final GossipAllResponse response = serverResolver.resolveStub(serverFrom)
+                .gossipAll(GossipAllRequest.newBuilder().build());
+        log.debug("[Server '%s'] Receiving response of gossip to all servers", serverFrom);
+        return response;
+    }
+
     public GetLedgerStateResponse getLedgerState(String qualifier) throws ServerUnresolvableException {
         log.debug("[Server '%s'] Sending request for getting ledger state", qualifier);
         final GetLedgerStateResponse response = serverResolver.resolveStub(qualifier)
@@ -63,6 +63,7 @@ class AdminTest {
                 - deactivate <server>
                 - getLedgerState <server>
                 - gossip <serverFrom> <serverTo>
+                - gossipAll <serverFrom>
                 - exit
 
                 >\s""", outputStream.toString());
@@ -166,6 +167,46 @@ class AdminTest {
                 >\s""", outputStream.toString());
     }
 
+    @Test
+    void gossipAll() {
+        stubFor(
+                unaryMethod(AdminServiceGrpc.getGossipAllMethod())
+                        .withRequest(GossipAllRequest.getDefaultInstance())
+                        .willReturn(response(GossipAllResponse.newBuilder().addGossipedTo("B").build()))
+        );
+
+        parseInput("gossipAll " + MAIN_SERVER + "\nexit\n");
+
+        assertEquals("""
+                > OK
+
+                >\s""", outputStream.toString());
+    }
+
+    @Test
+    void gossipAllWithFailedServers() {
+        stubFor(
+                unaryMethod(AdminServiceGrpc.getGossipAllMethod())
+                        .withRequest(GossipAllRequest.getDefaultInstance())
+                        .willReturn(
+                                response(
+                                        GossipAllResponse.newBuilder()
+                                                .addGossipedTo("B")
+                                                .addFailed("C")
+                                                .addFailed("D")
+                                                .build()
+                                )
+                        )
+        );
+
+        parseInput("gossipAll " + MAIN_SERVER + "\nexit\n");
+
+        assertEquals("""
+                > [ERROR] Failed to gossip to server(s) C, D
+
+                >\s""", outputStream.toString());
+    }
+
     @Test
     void invalidCommand() {
         parseInput("test\nexit\n");
@@ -178,6 +219,7 @@ class AdminTest {
                 - deactivate <server>
                 - getLedgerState <server>
                 - gossip <serverFrom> <serverTo>
+                - gossipAll <serverFrom>
                 - exit
 
                 >\s""", outputStream.toString());
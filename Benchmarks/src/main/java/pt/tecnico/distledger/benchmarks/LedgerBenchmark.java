@@ -0,0 +1,119 @@
+package pt.tecnico.distledger.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pt.tecnico.distledger.common.VectorClock;
+import pt.tecnico.distledger.server.domain.Ledger;
+import pt.tecnico.distledger.server.domain.operation.Operation;
+import pt.tecnico.distledger.server.domain.operation.TransferOp;
+import pt.tecnico.distledger.server.persistence.DisabledOperationArchive;
+import pt.tecnico.distledger.server.persistence.DisabledOperationLog;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of adding operations to the ledger, where each operation depends on the previous one: one at a time (as
+ * clients do), or in batches received in causal order or in reverse order (as gossip may deliver them), in which case
+ * every operation waits until the whole batch has been added.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class LedgerBenchmark {
+
+    private static final String ORIGIN = "A";
+    private static final int BATCH_SIZE = 1000;
+
+    private static Ledger newLedger() {
+        final VectorClock valueTimestamp = new VectorClock();
+        return new Ledger(
+                valueTimestamp,
+                operation -> valueTimestamp.updateVectorClock(operation.getUniqueTimestamp()),
+                changed -> {
+                },
+                new DisabledOperationLog(),
+                new DisabledOperationArchive()
+        );
+    }
+
+    private static Operation operation(int counter) {
+        final VectorClock prevTimestamp = new VectorClock();
+        prevTimestamp.setValue(ORIGIN, counter - 1);
+        final VectorClock uniqueTimestamp = new VectorClock();
+        uniqueTimestamp.setValue(ORIGIN, counter);
+        return new TransferOp("broker", "user", 1, prevTimestamp, uniqueTimestamp, false);
+    }
+
+    /**
+     * A ledger that keeps growing while operations are added to it one at a time. It is replaced every iteration, so
+     * that its size (and memory usage) stays bounded.
+     */
+    @State(Scope.Thread)
+    public static class SingleState {
+
+        private Ledger ledger;
+        private int counter;
+
+        @Setup(Level.Iteration)
+        public void setup() {
+            ledger = newLedger();
+            counter = 0;
+        }
+    }
+
+    /**
+     * An empty ledger and a batch of new operations, created before every invocation (which takes long enough for the
+     * setup's overhead to be negligible), since operations are changed when added to a ledger.
+     */
+    @State(Scope.Thread)
+    public static class BatchState {
+
+        @Param({"inOrder", "reverseOrder"})
+        private String order;
+
+        private Ledger ledger;
+        private List<Operation> batch;
+
+        @Setup(Level.Invocation)
+        public void setup() {
+            ledger = newLedger();
+            batch = new ArrayList<>(BATCH_SIZE);
+            for (int i = 1; i <= BATCH_SIZE; i++) {
+                batch.add(operation(i));
+            }
+            if (order.equals("reverseOrder")) {
+                Collections.reverse(batch);
+            }
+        }
+    }
+
+    @Benchmark
+    public Ledger addUnstable(SingleState state) {
+        state.ledger.addUnstable(operation(++state.counter));
+        return state.ledger;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public Ledger addAllUnstable(BatchState state) {
+        state.ledger.addAllUnstable(state.batch);
+        return state.ledger;
+    }
+
+}
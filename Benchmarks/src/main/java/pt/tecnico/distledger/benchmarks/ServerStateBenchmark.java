@@ -0,0 +1,93 @@
+package pt.tecnico.distledger.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import pt.tecnico.distledger.common.VectorClock;
+import pt.tecnico.distledger.server.domain.OperationResult;
+import pt.tecnico.distledger.server.domain.ServerState;
+import pt.tecnico.distledger.server.exceptions.AccountNotFoundException;
+import pt.tecnico.distledger.server.exceptions.InvalidAmountException;
+import pt.tecnico.distledger.server.exceptions.NotYetConsistentException;
+import pt.tecnico.distledger.server.exceptions.ServerUnavailableException;
+import pt.tecnico.distledger.server.exceptions.TransferBetweenSameAccountException;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the requests served by a replica (without persistence), with several threads issuing them at the same
+ * time: only transfers, only balance reads, and a mix of both where reads make up most of the traffic.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class ServerStateBenchmark {
+
+    private static final String USER_ID = "user";
+    private static final VectorClock NO_DEPENDENCIES = new VectorClock().freeze();
+
+    private ServerState state;
+
+    /**
+     * Replace the replica every iteration, so that the size (and memory usage) of its ledger stays bounded.
+     */
+    @Setup(Level.Iteration)
+    public void setup() throws ServerUnavailableException, NotYetConsistentException {
+        state = new ServerState("A");
+        state.createAccount(USER_ID, NO_DEPENDENCIES);
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() {
+        state.close();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public OperationResult<Void> transferTo()
+            throws ServerUnavailableException, InvalidAmountException, TransferBetweenSameAccountException,
+            NotYetConsistentException {
+        // The broker runs out of money after a while, but failed transfers are still added to the ledger
+        return state.transferTo(ServerState.BROKER_ID, USER_ID, 1, NO_DEPENDENCIES);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public OperationResult<Integer> getBalance()
+            throws AccountNotFoundException, NotYetConsistentException, ServerUnavailableException {
+        return state.getBalance(USER_ID, NO_DEPENDENCIES);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public OperationResult<Integer> mixedGetBalance()
+            throws AccountNotFoundException, NotYetConsistentException, ServerUnavailableException {
+        return state.getBalance(USER_ID, NO_DEPENDENCIES);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public OperationResult<Void> mixedTransferTo()
+            throws ServerUnavailableException, InvalidAmountException, TransferBetweenSameAccountException,
+            NotYetConsistentException {
+        return state.transferTo(ServerState.BROKER_ID, USER_ID, 1, NO_DEPENDENCIES);
+    }
+
+}
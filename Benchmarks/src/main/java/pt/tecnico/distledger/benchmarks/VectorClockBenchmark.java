@@ -0,0 +1,69 @@
+package pt.tecnico.distledger.benchmarks;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import pt.tecnico.distledger.common.VectorClock;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the vector clock operations on the hot paths of the server (checking whether an operation is stable,
+ * merging timestamps and copying them), for different numbers of replicas.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class VectorClockBenchmark {
+
+    @Param({"3", "10", "50"})
+    private int replicas;
+
+    private VectorClock older;
+    private VectorClock newer;
+    private VectorClock target;
+
+    @Setup
+    public void setup() {
+        older = new VectorClock();
+        newer = new VectorClock();
+        for (int i = 0; i < replicas; i++) {
+            older.setValue(qualifier(i), i + 1);
+            newer.setValue(qualifier(i), i + 2);
+        }
+        target = older.clone();
+    }
+
+    @Benchmark
+    public boolean isNewerThanOrEqualTo() {
+        // The worst case, where every entry has to be compared
+        return newer.isNewerThanOrEqualTo(older);
+    }
+
+    @Benchmark
+    public VectorClock updateVectorClock() {
+        target.updateVectorClock(newer);
+        return target;
+    }
+
+    @Benchmark
+    public VectorClock cloneVectorClock() {
+        return newer.clone();
+    }
+
+    static String qualifier(int replica) {
+        return "R" + replica;
+    }
+
+}
@@ -0,0 +1,83 @@
+package pt.tecnico.distledger.common;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Global registry that interns replica qualifiers into small, dense integer indices.
+ * <p>
+ * Vector clocks use these indices to store their timestamps in plain arrays. Indices are assigned in registration
+ * order and are never reused, so they are only meaningful within the same process.
+ * <p>
+ * Registered qualifiers are never removed, and vector clocks are sized after the number of registered replicas, so
+ * only qualifiers from trusted sources (e.g., the naming server or other replicas) may be registered. Qualifiers
+ * received from clients must be checked with {@link #lookup} instead.
+ */
+public final class ReplicaRegistry {
+
+    private static final Map<String, Integer> indices = new ConcurrentHashMap<>();
+    private static volatile String[] qualifiers = new String[0];
+
+    private ReplicaRegistry() {
+    }
+
+    /**
+     * Get the index of a replica qualifier, registering it if it has not been seen before.
+     *
+     * @param qualifier The qualifier of the replica.
+     * @return The index of the replica.
+     */
+    public static int indexOf(@NotNull String qualifier) {
+        final Integer index = indices.get(qualifier);
+        if (index != null) {
+            return index;
+        }
+        return register(qualifier);
+    }
+
+    /**
+     * Get the index of a replica qualifier, without registering it.
+     *
+     * @param qualifier The qualifier of the replica.
+     * @return The index of the replica, or -1 if it has not been registered.
+     */
+    public static int lookup(@NotNull String qualifier) {
+        return indices.getOrDefault(qualifier, -1);
+    }
+
+    /**
+     * Get the qualifier of the replica with the given index.
+     *
+     * @param index The index of the replica.
+     * @return The qualifier of the replica.
+     * @throws IndexOutOfBoundsException If there is no replica with the given index.
+     */
+    public static @NotNull String qualifierOf(int index) {
+        return qualifiers[index];
+    }
+
+    /**
+     * @return The number of registered replicas.
+     */
+    public static int size() {
+        return qualifiers.length;
+    }
+
+    private static synchronized int register(String qualifier) {
+        final Integer existing = indices.get(qualifier);
+        if (existing != null) {
+            return existing;
+        }
+        final int index = qualifiers.length;
+        final String[] newQualifiers = Arrays.copyOf(qualifiers, index + 1);
+        newQualifiers[index] = qualifier;
+        // Publish the qualifier before the index, so that qualifierOf works for every index handed out
+        qualifiers = newQualifiers;
+        indices.put(qualifier, index);
+        return index;
+    }
+
+}
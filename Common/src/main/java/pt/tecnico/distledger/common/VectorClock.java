@@ -1,48 +1,64 @@
 package pt.tecnico.distledger.common;
 
-import lombok.EqualsAndHashCode;
-import lombok.RequiredArgsConstructor;
-import lombok.ToString;
 import org.jetbrains.annotations.Contract;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Class abstracting the logic of a vector clock.
  * <p>
- * The internal implementation uses a Map to avoid having a canonical order of the servers.
+ * The timestamps are stored in an array indexed by the replica's index in the {@link ReplicaRegistry}, so comparing,
+ * merging and cloning vector clocks does not hash strings nor box integers. Replicas missing from the array have a
+ * timestamp of zero, which means there is still no canonical order of the servers: the map representation (used in the
+ * contract) does not depend on the indices.
+ * <p>
+ * This class is not thread-safe for concurrent writers; callers must synchronize writes themselves.
  */
-@ToString
-@EqualsAndHashCode
-@RequiredArgsConstructor
 public class VectorClock {
 
-    private @NotNull Map<String, Integer> timestamps = new ConcurrentHashMap<>();
+    private static final int[] EMPTY = new int[0];
+
+    private int[] values = EMPTY;
+    private boolean frozen = false;
+
+    public VectorClock() {
+    }
 
     /**
      * Create a new VectorClock based on a timestamp map. The map can be used afterward without affecting the internal
      * state of this vector clock.
+     * <p>
+     * Every replica with a non-zero entry is registered in the {@link ReplicaRegistry}, so the map must come from a
+     * trusted source.
      *
      * @param timestamps The timestamp map to clone from.
      */
     public VectorClock(Map<String, Integer> timestamps) {
-        timestamps.forEach((qualifier, value) -> {
-            if (value != 0) {
-                this.timestamps.put(qualifier, value);
-            }
-        });
+        timestamps.forEach(this::setValue);
+    }
+
+    private VectorClock(int[] values) {
+        this.values = values;
     }
 
     /**
      * Get the timestamps of this vector clock. The returned map is immutable.
      *
-     * @return An unmodifiable map containing the timestamps.
+     * @return An unmodifiable map containing the (non-zero) timestamps.
      */
     public @NotNull Map<String, Integer> getTimestamps() {
-        return Collections.unmodifiableMap(this.timestamps);
+        final int[] values = this.values;
+        final Map<String, Integer> timestamps = new HashMap<>();
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != 0) {
+                timestamps.put(ReplicaRegistry.qualifierOf(i), values[i]);
+            }
+        }
+        return Collections.unmodifiableMap(timestamps);
     }
 
     /**
@@ -53,7 +69,25 @@ public class VectorClock {
      * @return The timestamp or 0 if the server is not in the vector clock.
      */
     public int getValue(@NotNull String serverId) {
-        return timestamps.getOrDefault(serverId, 0);
+        return getValue(ReplicaRegistry.lookup(serverId));
+    }
+
+    /**
+     * Get the value of the clock for the server with the given index in the {@link ReplicaRegistry}.
+     *
+     * @param index The index of the server to get the timestamp for.
+     * @return The timestamp or 0 if the server is not in the vector clock.
+     */
+    public int getValue(int index) {
+        final int[] values = this.values;
+        return index >= 0 && index < values.length ? values[index] : 0;
+    }
+
+    /**
+     * @return An upper bound (exclusive) of the indices of the servers with a non-zero timestamp in this vector clock.
+     */
+    public int length() {
+        return this.values.length;
     }
 
     /**
@@ -63,11 +97,17 @@ public class VectorClock {
      * @param value    The new value of the timestamp.
      */
     public void setValue(@NotNull String serverId, int value) {
+        ensureNotFrozen();
         if (value == 0) {
-            timestamps.remove(serverId);
-        } else {
-            timestamps.put(serverId, value);
+            final int index = ReplicaRegistry.lookup(serverId);
+            if (index >= 0 && index < this.values.length) {
+                this.values[index] = 0;
+            }
+            return;
         }
+        final int index = ReplicaRegistry.indexOf(serverId);
+        ensureCapacity(index + 1);
+        this.values[index] = value;
     }
 
     /**
@@ -77,7 +117,10 @@ public class VectorClock {
      * @param serverId The server to increment the timestamp of.
      */
     public void incrementClock(@NotNull String serverId) {
-        timestamps.merge(serverId, 1, Integer::sum);
+        ensureNotFrozen();
+        final int index = ReplicaRegistry.indexOf(serverId);
+        ensureCapacity(index + 1);
+        this.values[index]++;
     }
 
     /**
@@ -87,13 +130,22 @@ public class VectorClock {
      * @param newVectorClock The new vector clock to use to update this one.
      */
     public void updateVectorClock(@NotNull VectorClock newVectorClock) {
-        newVectorClock.timestamps.forEach((key, value) -> timestamps.merge(key, value, Integer::max));
+        ensureNotFrozen();
+        final int[] other = newVectorClock.values;
+        ensureCapacity(other.length);
+        final int[] values = this.values;
+        for (int i = 0; i < other.length; i++) {
+            if (other[i] > values[i]) {
+                values[i] = other[i];
+            }
+        }
     }
 
     @SuppressWarnings("MethodDoesntCallSuperMethod")
     @Override
     public @NotNull VectorClock clone() {
-        return new VectorClock(this.timestamps);
+        final int[] values = this.values;
+        return new VectorClock(values.length == 0 ? EMPTY : values.clone());
     }
 
     /**
@@ -104,7 +156,7 @@ public class VectorClock {
      */
     @Contract("-> this")
     public VectorClock freeze() {
-        this.timestamps = Collections.unmodifiableMap(this.timestamps);
+        this.frozen = true;
         return this;
     }
 
@@ -116,9 +168,77 @@ public class VectorClock {
      *         clock.
      */
     public boolean isNewerThanOrEqualTo(@NotNull VectorClock otherVectorClock) {
-        return otherVectorClock.timestamps
-                .entrySet()
-                .stream()
-                .allMatch(entry -> this.timestamps.getOrDefault(entry.getKey(), 0) >= entry.getValue());
+        return otherVectorClock.findEntryNewerThan(this) < 0;
+    }
+
+    /**
+     * Find an entry of this vector clock that is greater than the same entry in the given vector clock.
+     *
+     * @param otherVectorClock The vector clock to compare to.
+     * @return The index (in the {@link ReplicaRegistry}) of the first such entry, or -1 if the given vector clock is
+     *         newer than or equal to this one.
+     */
+    public int findEntryNewerThan(@NotNull VectorClock otherVectorClock) {
+        final int[] values = this.values;
+        final int[] other = otherVectorClock.values;
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] > (i < other.length ? other[i] : 0)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof VectorClock other)) {
+            return false;
+        }
+        final int[] values = this.values;
+        final int[] otherValues = other.values;
+        final int length = Math.max(values.length, otherValues.length);
+        for (int i = 0; i < length; i++) {
+            if ((i < values.length ? values[i] : 0) != (i < otherValues.length ? otherValues[i] : 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        // Ignore trailing zeros, since they are equivalent to missing entries
+        final int[] values = this.values;
+        int length = values.length;
+        while (length > 0 && values[length - 1] == 0) {
+            length--;
+        }
+        int result = 1;
+        for (int i = 0; i < length; i++) {
+            result = 31 * result + values[i];
+        }
+        return result;
     }
+
+    @Override
+    public String toString() {
+        return "VectorClock(timestamps=" + getTimestamps() + ")";
+    }
+
+    private void ensureNotFrozen() {
+        if (this.frozen) {
+            throw new UnsupportedOperationException("Cannot modify a frozen vector clock");
+        }
+    }
+
+    private void ensureCapacity(int length) {
+        if (this.values.length < length) {
+            // Leave room for replicas that are registered in the meantime, avoiding further copies
+            this.values = Arrays.copyOf(this.values, Math.max(length, ReplicaRegistry.size()));
+        }
+    }
+
 }
@@ -2,7 +2,7 @@ package pt.tecnico.distledger.common.connection;
 
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
-import io.grpc.stub.AbstractBlockingStub;
+import io.grpc.stub.AbstractStub;
 import lombok.CustomLog;
 import lombok.val;
 import org.jetbrains.annotations.NotNull;
@@ -25,7 +25,7 @@ import java.util.function.Function;
  * @param <T> The type of the stub.
  */
 @CustomLog(topic = "CachedServerResolver")
-public class CachedServerResolver<T extends AbstractBlockingStub<T>> implements ServerResolver<T> {
+public class CachedServerResolver<T extends AbstractStub<T>> implements ServerResolver<T> {
 
     private final static String NAMING_SERVER_HOST = "localhost";
     private final static int NAMING_SERVER_PORT = 5001;
@@ -1,15 +1,15 @@
 package pt.tecnico.distledger.common.connection;
 
-import io.grpc.stub.AbstractBlockingStub;
+import io.grpc.stub.AbstractStub;
 import org.jetbrains.annotations.NotNull;
 import pt.tecnico.distledger.common.exceptions.ServerUnresolvableException;
 
 /**
  * Manages channels and stubs transparently.
  *
- * @param <T> The type of the stub.
+ * @param <T> The type of the stub (blocking or asynchronous).
  */
-public interface ServerResolver<T extends AbstractBlockingStub<T>> extends AutoCloseable {
+public interface ServerResolver<T extends AbstractStub<T>> extends AutoCloseable {
 
     /**
      * Get the stub for the given qualifier.
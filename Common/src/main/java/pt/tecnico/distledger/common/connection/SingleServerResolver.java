@@ -2,7 +2,7 @@ package pt.tecnico.distledger.common.connection;
 
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
-import io.grpc.stub.AbstractBlockingStub;
+import io.grpc.stub.AbstractStub;
 import lombok.CustomLog;
 import lombok.RequiredArgsConstructor;
 import org.jetbrains.annotations.NotNull;
@@ -17,7 +17,7 @@ import java.util.function.Function;
  */
 @RequiredArgsConstructor
 @CustomLog(topic = "SingleServerResolver")
-public class SingleServerResolver<T extends AbstractBlockingStub<T>> implements ServerResolver<T> {
+public class SingleServerResolver<T extends AbstractStub<T>> implements ServerResolver<T> {
 
     private final String host;
     private final int port;
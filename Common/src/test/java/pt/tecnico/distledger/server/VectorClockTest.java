@@ -2,6 +2,7 @@ package pt.tecnico.distledger.server;
 
 import lombok.val;
 import org.junit.jupiter.api.Test;
+import pt.tecnico.distledger.common.ReplicaRegistry;
 import pt.tecnico.distledger.common.VectorClock;
 
 import java.util.HashMap;
@@ -200,4 +201,65 @@ public class VectorClockTest {
         assertEquals(vectorClock1, vectorClock2);
         assertEquals(vectorClock1.hashCode(), vectorClock2.hashCode());
     }
+
+    @Test
+    public void updateVectorClockWithMoreReplicas() {
+        val vectorClock1 = new VectorClock();
+        vectorClock1.setValue("A", 2);
+
+        val vectorClock2 = new VectorClock();
+        vectorClock2.setValue("E", 5);
+        vectorClock2.setValue("F", 1);
+
+        vectorClock1.updateVectorClock(vectorClock2);
+
+        assertEquals(2, vectorClock1.getValue("A"));
+        assertEquals(5, vectorClock1.getValue("E"));
+        assertEquals(1, vectorClock1.getValue("F"));
+        assertTrue(vectorClock1.isNewerThanOrEqualTo(vectorClock2));
+        assertFalse(vectorClock2.isNewerThanOrEqualTo(vectorClock1));
+    }
+
+    @Test
+    public void findEntryNewerThan() {
+        val vectorClock1 = new VectorClock();
+        vectorClock1.setValue("A", 9);
+        vectorClock1.setValue("B", 6);
+
+        val vectorClock2 = new VectorClock();
+        vectorClock2.setValue("A", 9);
+        vectorClock2.setValue("B", 7);
+
+        assertEquals(-1, vectorClock1.findEntryNewerThan(vectorClock2));
+        assertEquals(ReplicaRegistry.lookup("B"), vectorClock2.findEntryNewerThan(vectorClock1));
+    }
+
+    @Test
+    public void frozenVectorClockCannotBeModified() {
+        val vectorClock = new VectorClock();
+        vectorClock.setValue("A", 3);
+        vectorClock.freeze();
+
+        assertThrows(UnsupportedOperationException.class, () -> vectorClock.setValue("A", 4));
+        assertThrows(UnsupportedOperationException.class, () -> vectorClock.incrementClock("A"));
+        assertThrows(UnsupportedOperationException.class, () -> vectorClock.updateVectorClock(new VectorClock()));
+        assertEquals(3, vectorClock.getValue("A"));
+
+        val clone = vectorClock.clone();
+        clone.incrementClock("A");
+        assertEquals(4, clone.getValue("A"));
+    }
+
+    @Test
+    public void timestampsOnlyContainNonZeroEntries() {
+        val vectorClock = new VectorClock();
+        vectorClock.setValue("A", 3);
+        vectorClock.setValue("B", 1);
+        vectorClock.setValue("B", 0);
+
+        val timestamps = vectorClock.getTimestamps();
+        assertEquals(1, timestamps.size());
+        assertEquals(3, timestamps.get("A"));
+        assertEquals(vectorClock, new VectorClock(timestamps));
+    }
 }
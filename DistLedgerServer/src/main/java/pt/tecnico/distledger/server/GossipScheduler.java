@@ -0,0 +1,200 @@
+package pt.tecnico.distledger.server;
+
+import io.grpc.StatusRuntimeException;
+import lombok.CustomLog;
+import org.jetbrains.annotations.VisibleForTesting;
+import pt.tecnico.distledger.server.exceptions.ServerUnavailableException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Background anti-entropy: periodically gossips this replica's operations to its peers, so replicas converge without
+ * an admin having to issue gossip commands.
+ * <p>
+ * Each round, the peers with the largest backlog (operations they have not acknowledged) are gossiped to, up to the
+ * configured fan-out, in a single pass over the ledger. Each peer is sent its operations in its own thread, through a
+ * bounded queue, so a slow peer only holds up the others until its gossip deadline. A peer whose previous gossip is
+ * still in flight is skipped. When adaptive, the interval shrinks while there is a large backlog and backs
+ * off while there is none.
+ */
+@CustomLog(topic = "Gossip Scheduler")
+public class GossipScheduler implements AutoCloseable {
+
+    private final ServerCoordinator serverCoordinator;
+    private final Config config;
+
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(daemon("gossip-timer"));
+    private final ExecutorService workers = Executors.newCachedThreadPool(daemon("gossip-worker"));
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    private long currentIntervalMillis;
+
+    public GossipScheduler(ServerCoordinator serverCoordinator, Config config) {
+        this.serverCoordinator = serverCoordinator;
+        this.config = config;
+        this.currentIntervalMillis = config.intervalMillis();
+    }
+
+    public void start() {
+        log.info(
+                "Gossiping every %d ms (fan-out: %s, adaptive: %s)",
+                config.intervalMillis(),
+                config.fanOut() > 0 ? config.fanOut() : "all",
+                config.adaptive()
+        );
+        timer.schedule(this::runRound, currentIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+        workers.shutdownNow();
+    }
+
+    private void runRound() {
+        long maxBacklog = 0;
+        try {
+            final Map<String, Long> backlogs = serverCoordinator.getPeers()
+                    .stream()
+                    .filter(peer -> !inFlight.contains(peer))
+                    .collect(Collectors.toMap(peer -> peer, serverCoordinator::getGossipBacklog));
+            maxBacklog = backlogs.values().stream().mapToLong(Long::longValue).max().orElse(0);
+
+            final List<String> selected = selectPeers(backlogs, config.fanOut());
+            if (!selected.isEmpty()) {
+                inFlight.addAll(selected);
+                workers.execute(() -> gossip(selected));
+            }
+        } catch (StatusRuntimeException e) {
+            log.debug("Failed to get server list from naming server: %s", e.getMessage());
+        } catch (RuntimeException e) {
+            log.error("Unexpected error while scheduling gossip: %s", e);
+        } finally {
+            currentIntervalMillis = config.adaptive()
+                    ? nextIntervalMillis(currentIntervalMillis, maxBacklog, config)
+                    : config.intervalMillis();
+            if (!timer.isShutdown()) {
+                timer.schedule(this::runRound, currentIntervalMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+    }
+
+    private void gossip(List<String> peers) {
+        try {
+            serverCoordinator.propagateUsingGossip(peers).forEach((peer, send) -> send.whenComplete((ok, e) -> {
+                if (e != null) {
+                    log.debug("Could not gossip to replica %s: %s", peer, e.getMessage());
+                }
+                inFlight.remove(peer);
+            }));
+        } catch (ServerUnavailableException e) {
+            log.debug("Could not gossip to replicas %s: %s", peers, e.getMessage());
+            peers.forEach(inFlight::remove);
+        } catch (RuntimeException e) {
+            log.error("Unexpected error while gossiping to replicas %s: %s", peers, e);
+            peers.forEach(inFlight::remove);
+        }
+    }
+
+    /**
+     * Select the peers to gossip to in a round: the ones with the largest backlog, up to the fan-out. Peers with no
+     * backlog have nothing to receive and are never selected. Ties are broken randomly, so that peers with the same
+     * backlog get a fair share of the rounds.
+     *
+     * @param backlogs The backlog of each candidate peer.
+     * @param fanOut   The maximum number of peers to select, or 0 to select all of them.
+     * @return The selected peers.
+     */
+    @VisibleForTesting
+    static List<String> selectPeers(Map<String, Long> backlogs, int fanOut) {
+        final List<String> candidates = new ArrayList<>(backlogs.keySet());
+        candidates.removeIf(peer -> backlogs.get(peer) <= 0);
+        Collections.shuffle(candidates);
+        candidates.sort(Comparator.comparing(backlogs::get, Comparator.reverseOrder()));
+        return fanOut > 0 && candidates.size() > fanOut ? candidates.subList(0, fanOut) : candidates;
+    }
+
+    /**
+     * Compute the interval until the next round: the minimum interval if the backlog has reached the threshold, twice
+     * the current interval (up to the maximum) if there is no backlog, or the base interval otherwise.
+     *
+     * @param currentIntervalMillis The interval until the current round.
+     * @param backlog               The largest backlog among the peers in the current round.
+     * @param config                The scheduler's configuration.
+     * @return The interval until the next round, in milliseconds.
+     */
+    @VisibleForTesting
+    static long nextIntervalMillis(long currentIntervalMillis, long backlog, Config config) {
+        if (backlog >= config.backlogThreshold()) {
+            return config.minIntervalMillis();
+        }
+        if (backlog == 0) {
+            return Math.min(Math.max(currentIntervalMillis, config.intervalMillis()) * 2, config.maxIntervalMillis());
+        }
+        return config.intervalMillis();
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            final Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Configuration of the gossip scheduler.
+     *
+     * @param intervalMillis    The base interval between rounds, in milliseconds. Gossip is disabled if not positive.
+     * @param fanOut            The maximum number of peers to gossip to in each round, or 0 for all of them.
+     * @param adaptive          Whether the interval adapts to the backlog.
+     * @param minIntervalMillis The interval used while the backlog is at least the threshold (adaptive only).
+     * @param maxIntervalMillis The interval backed off to while there is no backlog (adaptive only).
+     * @param backlogThreshold  The backlog at which the minimum interval is used (adaptive only).
+     */
+    public record Config(
+            long intervalMillis,
+            int fanOut,
+            boolean adaptive,
+            long minIntervalMillis,
+            long maxIntervalMillis,
+            long backlogThreshold
+    ) {
+
+        /**
+         * Read the configuration from the system properties {@code gossip.interval}, {@code gossip.fanout},
+         * {@code gossip.adaptive}, {@code gossip.minInterval}, {@code gossip.maxInterval} and
+         * {@code gossip.backlogThreshold}. Gossip is disabled unless {@code gossip.interval} is given.
+         *
+         * @return The configuration.
+         */
+        public static Config fromSystemProperties() {
+            final long interval = Long.getLong("gossip.interval", 0);
+            return new Config(
+                    interval,
+                    Integer.getInteger("gossip.fanout", 0),
+                    System.getProperty("gossip.adaptive") != null,
+                    Long.getLong("gossip.minInterval", Math.max(interval / 10, 1)),
+                    Long.getLong("gossip.maxInterval", interval * 10),
+                    Long.getLong("gossip.backlogThreshold", 1000)
+            );
+        }
+
+        public boolean isEnabled() {
+            return intervalMillis > 0;
+        }
+    }
+
+}
@@ -1,47 +1,140 @@
 package pt.tecnico.distledger.server;
 
-import com.google.common.cache.Cache;
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.RemovalNotification;
 import io.grpc.StatusRuntimeException;
 import lombok.CustomLog;
 import lombok.Getter;
 import lombok.val;
+import org.jetbrains.annotations.VisibleForTesting;
+import pt.tecnico.distledger.common.VectorClock;
 import pt.tecnico.distledger.server.domain.ServerState;
 import pt.tecnico.distledger.server.exceptions.ServerUnavailableException;
+import pt.tecnico.distledger.server.factory.OperationFactory;
 import pt.tecnico.distledger.server.grpc.CrossServerService;
 import pt.tecnico.distledger.server.grpc.NamingServerService;
-import pt.tecnico.distledger.server.visitor.ConvertOperationsToGrpcVisitor;
+import pt.tecnico.distledger.server.grpc.PeerConnectionManager;
+import pt.tecnico.distledger.server.persistence.DisabledOperationArchive;
+import pt.tecnico.distledger.server.persistence.DisabledOperationLog;
+import pt.tecnico.distledger.server.persistence.MappedOperationArchive;
+import pt.tecnico.distledger.server.persistence.OperationArchive;
+import pt.tecnico.distledger.server.persistence.OperationLog;
+import pt.tecnico.distledger.server.persistence.Snapshot;
+import pt.tecnico.distledger.server.persistence.SnapshotStore;
+import pt.tecnico.distledger.server.persistence.WriteAheadLog;
+import pt.tecnico.distledger.server.visitor.FanOutOperationsToGrpcVisitor;
+import pt.ulisboa.tecnico.distledger.contract.DistLedgerCommonDefinitions;
+import pt.ulisboa.tecnico.distledger.contract.namingserver.NamingServerDistLedger.ServerInfo;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 
 @CustomLog(topic = "Server Coordinator")
 public class ServerCoordinator {
 
-    private static final int TIMEOUT = 2;
-
     private static final int MAX_RETRIES = 3;
 
+    // Well below gRPC's default maximum message size (4 MiB)
+    private static final int MAX_CHUNK_BYTES = 1024 * 1024;
+
+    /**
+     * How many chunks can be waiting to be sent to a single peer during a pass over the ledger.
+     */
+    @VisibleForTesting
+    static final int MAX_QUEUED_CHUNKS = 4;
+
     private final int port;
     private final String qualifier;
 
     @Getter
     private final ServerState serverState;
 
-    private final Cache<String, CrossServerService> peersCache = CacheBuilder.newBuilder()
-            .expireAfterWrite(TIMEOUT, TimeUnit.MINUTES)
-            .removalListener(
-                    (RemovalNotification<String, CrossServerService> notification) -> notification.getValue().close()
-            )
-            .build();
+    private final PeerConnectionManager peerConnections = new PeerConnectionManager();
 
     private final NamingServerService namingServerService = new NamingServerService();
 
+    private final GossipScheduler gossipScheduler;
+
+    private final OperationLog operationLog;
+
+    private final SnapshotStore snapshotStore;
+
+    private final OperationArchive operationArchive;
+
+    private final ScheduledExecutorService snapshotScheduler;
+
+    // Sends to each peer of a gossip round in its own thread, so that a slow peer only delays the others up to its
+    // deadline
+    private final ExecutorService gossipFanOut = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "gossip-fan-out");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * How long a peer has to acknowledge the operations gossiped to it, given in the system property
+     * {@code gossip.deadline} (in milliseconds).
+     */
+    private final long gossipDeadlineMillis = Long.getLong("gossip.deadline", 30_000);
+
+    /**
+     * The maximum (serialized) size of the chunks of operations gossiped to a peer, given in the system property
+     * {@code gossip.chunkBytes}.
+     */
+    private final int gossipChunkBytes = Integer.getInteger("gossip.chunkBytes", MAX_CHUNK_BYTES);
+
+    /**
+     * How long a pass over the ledger waits for room in the full queue of a peer before failing the peer, given in the
+     * system property {@code gossip.queueWait} (in milliseconds). It is well below the deadline, so a stalled peer
+     * does not make the others miss theirs.
+     */
+    private final long gossipQueueWaitMillis =
+            Long.getLong("gossip.queueWait", Math.min(gossipDeadlineMillis / 10, 1000));
+
+    // The most chunks that have been waiting to be sent to a single peer at once
+    private final AtomicInteger peakQueuedChunks = new AtomicInteger();
+
     public ServerCoordinator(int port, String qualifier) {
+        this(port, qualifier, GossipScheduler.Config.fromSystemProperties());
+    }
+
+    public ServerCoordinator(int port, String qualifier, GossipScheduler.Config gossipConfig) {
         this.port = port;
         this.qualifier = qualifier;
-        this.serverState = new ServerState(qualifier);
+        this.operationLog = openOperationLog(qualifier);
+        this.snapshotStore = openSnapshotStore(qualifier);
+        this.operationArchive = openOperationArchive(qualifier);
+        this.serverState = new ServerState(qualifier, operationLog, operationArchive);
+        recoverServerState();
+        this.gossipScheduler = gossipConfig.isEnabled() ? new GossipScheduler(this, gossipConfig) : null;
+        this.snapshotScheduler = Long.getLong("snapshot.interval", 0) > 0
+                ? Executors.newSingleThreadScheduledExecutor(runnable -> {
+                    final Thread thread = new Thread(runnable, "snapshot");
+                    thread.setDaemon(true);
+                    return thread;
+                })
+                : null;
+        if (snapshotScheduler != null && !operationArchive.isEnabled()) {
+            log.warn("Snapshots are only written and operations only archived when wal.dir is set");
+        }
     }
 
     public void registerOnNamingServer() {
@@ -52,77 +145,446 @@ public class ServerCoordinator {
         namingServerService.removeServer(port);
     }
 
+    /**
+     * Start the background tasks enabled in the configuration: gossiping to the other replicas, and periodically
+     * taking snapshots (given the interval in milliseconds in the system property {@code snapshot.interval}).
+     */
+    public void startBackgroundTasks() {
+        if (gossipScheduler != null) {
+            gossipScheduler.start();
+        }
+        if (snapshotScheduler != null) {
+            final long interval = Long.getLong("snapshot.interval");
+            snapshotScheduler.scheduleWithFixedDelay(this::takeSnapshot, interval, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
     public void shutdown() {
+        if (gossipScheduler != null) {
+            gossipScheduler.close();
+        }
+        if (snapshotScheduler != null) {
+            snapshotScheduler.shutdownNow();
+        }
+        gossipFanOut.shutdownNow();
         namingServerService.close();
+        peerConnections.close();
+        serverState.close();
+        operationLog.close();
+        operationArchive.close();
+    }
+
+    /**
+     * Get the qualifiers of the other replicas registered on the naming server, refreshing the connections to them.
+     *
+     * @return The qualifiers of the other replicas.
+     */
+    public List<String> getPeers() {
+        refreshPeers();
+        return peerConnections.qualifiers();
+    }
+
+    /**
+     * Estimate how many operations known by this replica have not been acknowledged by the given replica.
+     *
+     * @param serverTo The qualifier of the replica.
+     * @return The estimated number of operations the replica is missing.
+     */
+    public long getGossipBacklog(String serverTo) {
+        return serverState.getGossipBacklog(serverTo);
     }
 
     public void propagateUsingGossip(String serverTo) throws ServerUnavailableException {
+        try {
+            propagateUsingGossip(List.of(serverTo)).get(serverTo).join();
+        } catch (CompletionException | CancellationException e) {
+            throw new ServerUnavailableException(serverTo);
+        }
+    }
+
+    /**
+     * Send the operations each of the given replicas has not acknowledged yet, in a single pass over the ledger. Every
+     * operation is converted to its gRPC representation once, and sorted into the outgoing queue of each replica that
+     * is missing it (the messages are shared by the queues). Each queue is sent in its own thread, within the gossip
+     * deadline.
+     * <p>
+     * The queues are bounded, so at most a few chunks per replica are in memory at once, as when streaming to a single
+     * replica. Once the queue of a slow replica is full, the pass waits for it to drain (so the operations to the other
+     * replicas are sent at the pace of the slowest one), but only for a short while: if the queue stays full for longer
+     * than {@code gossip.queueWait} (or until the replica's deadline), the replica fails, its queue is dropped, and the
+     * pass goes on without it.
+     * <p>
+     * Returns once the pass is over, while the operations may still be being sent.
+     *
+     * @param serversTo The qualifiers of the replicas.
+     * @return A future for each replica, which completes once the replica acknowledges the operations sent to it, or
+     *         fails with a {@link ServerUnavailableException} if it cannot be gossiped to.
+     * @throws ServerUnavailableException If this replica is inactive.
+     */
+    public Map<String, CompletableFuture<Void>> propagateUsingGossip(
+            Collection<String> serversTo
+    ) throws ServerUnavailableException {
         if (!serverState.getActive().get()) {
             throw new ServerUnavailableException(qualifier);
         }
-        ConvertOperationsToGrpcVisitor visitor = new ConvertOperationsToGrpcVisitor();
-        // This "data race" isn't an issue because even if the timestamp isn't up-to-date
-        // after iterating over the ledger, it won't affect the gossip propagation.
-        // Worst case scenario, we will send a duplicate operation in further gossip propagations,
-        // which would be ignored by the receiving replica.
-        val timestamp = serverState.getReplicaTimestamp().clone();
-        serverState.operateOverLedgerToPropagateToReplica(visitor, serverTo);
-        propagateLedgerStateToServer(visitor, serverTo);
-        serverState.updateGossipTimestamp(serverTo, timestamp);
+        final Map<String, CompletableFuture<Void>> sends = new LinkedHashMap<>();
+        final List<GossipSend> started = new ArrayList<>();
+        for (String serverTo : serversTo) {
+            final GossipSend send;
+            try {
+                send = new GossipSend(serverTo, resolvePeer(serverTo));
+            } catch (ServerUnavailableException e) {
+                sends.put(serverTo, CompletableFuture.failedFuture(e));
+                continue;
+            }
+            try {
+                gossipFanOut.execute(send);
+            } catch (RejectedExecutionException e) {
+                // This replica is shutting down
+                send.ledgerStream.close();
+                sends.put(serverTo, CompletableFuture.failedFuture(new ServerUnavailableException(qualifier)));
+                continue;
+            }
+            started.add(send);
+            sends.put(serverTo, send.acknowledged);
+        }
+
+        final List<VectorClock> acknowledgedTimestamps = new ArrayList<>();
+        final List<Consumer<List<DistLedgerCommonDefinitions.Operation>>> queues = new ArrayList<>();
+        started.forEach(send -> {
+            acknowledgedTimestamps.add(send.acknowledgedTimestamp);
+            queues.add(send::offer);
+        });
+        final FanOutOperationsToGrpcVisitor visitor =
+                new FanOutOperationsToGrpcVisitor(gossipChunkBytes, acknowledgedTimestamps, queues);
+        try {
+            serverState.operateOverLedgerToPropagateToReplicas(visitor, acknowledgedTimestamps);
+            visitor.flush();
+        } finally {
+            started.forEach(GossipSend::end);
+        }
+        for (int i = 0; i < started.size(); i++) {
+            log.debug(
+                    "Queued %d operation(s) to propagate to replica %s",
+                    visitor.getOperationCount(i),
+                    started.get(i).serverTo
+            );
+        }
+        return sends;
     }
 
-    private void propagateLedgerStateToServer(
-            ConvertOperationsToGrpcVisitor visitor,
-            String serverTo
-    ) throws ServerUnavailableException {
+    /**
+     * Gossip to every other replica registered on the naming server at once, in a single pass over the ledger. Each
+     * replica is sent the operations it has not acknowledged in its own thread, within the gossip deadline, so the
+     * round takes as long as the slowest replica that answers in time, and a replica that cannot be reached only
+     * delays the round up to the deadline.
+     *
+     * @return The replicas that acknowledged the operations sent to them, and the ones that failed to.
+     * @throws ServerUnavailableException If this replica is inactive.
+     */
+    public GossipRoundResult gossipAll() throws ServerUnavailableException {
+        if (!serverState.getActive().get()) {
+            throw new ServerUnavailableException(qualifier);
+        }
+        List<String> peers;
+        try {
+            peers = getPeers();
+        } catch (StatusRuntimeException e) {
+            log.debug("Failed to get server list from naming server, using known peers: %s", e.getMessage());
+            peers = peerConnections.qualifiers();
+        }
+        return gossipTo(peers);
+    }
+
+    /**
+     * Gossip to the given replicas at once, in a single pass over the ledger, and wait for each of them to acknowledge
+     * the operations sent to it or to fail.
+     *
+     * @param peers The qualifiers of the replicas to gossip to.
+     * @return The replicas that acknowledged the operations sent to them, and the ones that failed to.
+     * @throws ServerUnavailableException If this replica is inactive.
+     */
+    @VisibleForTesting
+    GossipRoundResult gossipTo(Collection<String> peers) throws ServerUnavailableException {
+        final List<String> gossipedTo = new ArrayList<>();
+        final List<String> failed = new ArrayList<>();
+        propagateUsingGossip(peers).forEach((peer, send) -> {
+            try {
+                send.join();
+                gossipedTo.add(peer);
+            } catch (CompletionException | CancellationException e) {
+                failed.add(peer);
+            }
+        });
+        log.debug("Gossiped to %d replica(s), failed to gossip to %s", gossipedTo.size(), failed);
+        return new GossipRoundResult(gossipedTo, failed);
+    }
+
+    /**
+     * Open the operation log of this replica, if a directory for it is given in the system property {@code wal.dir}.
+     * The system property {@code wal.fsync=false} disables forcing writes to disk, and {@code wal.batchDelay} sets how
+     * long (in milliseconds) the log waits for more operations before writing them.
+     *
+     * @param qualifier The qualifier of this replica.
+     * @return The operation log.
+     */
+    private static OperationLog openOperationLog(String qualifier) {
+        final String directory = System.getProperty("wal.dir");
+        if (directory == null) {
+            return new DisabledOperationLog();
+        }
+        try {
+            Files.createDirectories(Path.of(directory));
+            return new WriteAheadLog(
+                    Path.of(directory, qualifier + ".wal"),
+                    !"false".equals(System.getProperty("wal.fsync")),
+                    Long.getLong("wal.batchDelay", 0)
+            );
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open write-ahead log in " + directory, e);
+        }
+    }
+
+    private static SnapshotStore openSnapshotStore(String qualifier) {
+        final String directory = System.getProperty("wal.dir");
+        return directory == null ? null : new SnapshotStore(Path.of(directory, qualifier + ".snapshot"));
+    }
+
+    /**
+     * Open the archive of this replica, in the same directory as its operation log. The system property
+     * {@code archive.segmentSize} sets the minimum number of operations per archive segment.
+     *
+     * @param qualifier The qualifier of this replica.
+     * @return The operation archive.
+     */
+    private static OperationArchive openOperationArchive(String qualifier) {
+        final String directory = System.getProperty("wal.dir");
+        if (directory == null) {
+            return new DisabledOperationArchive();
+        }
+        try {
+            return new MappedOperationArchive(
+                    Path.of(directory, qualifier + ".archive"),
+                    Integer.getInteger("archive.segmentSize", 4096)
+            );
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to open operation archive in " + directory, e);
+        }
+    }
+
+    /**
+     * Restore the latest snapshot, if any, and then replay the operations appended to the log after it was taken.
+     */
+    private void recoverServerState() {
+        try {
+            long position = 0;
+            final Optional<Snapshot> snapshot = snapshotStore != null ? snapshotStore.read() : Optional.empty();
+            if (snapshot.isPresent()) {
+                serverState.restore(snapshot.get());
+                position = snapshot.get().logPosition();
+            } else if (operationArchive.size() > 0) {
+                // Operations are only archived after a snapshot covering them has been written
+                throw new IllegalStateException("Operation archive found without a snapshot to restore");
+            }
+            val operationFactory = new OperationFactory();
+            serverState.recover(
+                    operationLog.recover(position).stream().map(operationFactory::createOperationFromGrpc).toList()
+            );
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to recover from the write-ahead log", e);
+        }
+    }
+
+    /**
+     * Write a snapshot of the state of this replica (if it is persistent), and then discard the operations every other
+     * replica has acknowledged from the ledger into the archive (if it has one). Only operations covered by the
+     * snapshot are discarded, so that replaying the log after restoring the snapshot never adds an archived operation
+     * again.
+     */
+    private void takeSnapshot() {
+        try {
+            long limit = Long.MAX_VALUE;
+            if (snapshotStore != null) {
+                final Snapshot snapshot = serverState.takeSnapshot();
+                // Replaying must resume right after the operations in the snapshot, so they must all be in the log
+                operationLog.sync();
+                snapshotStore.write(snapshot);
+                limit = snapshot.discardedCount() + snapshot.stableOperations().size();
+            }
+            // Without an archive, discarded operations would be lost to administrators and to new replicas
+            if (operationArchive.isEnabled()) {
+                serverState.discardAcknowledgedOperations(getPeers(), limit);
+            }
+        } catch (IOException | UncheckedIOException e) {
+            log.error("Failed to write snapshot: %s", e);
+        } catch (StatusRuntimeException e) {
+            log.debug("Failed to get server list from naming server: %s", e.getMessage());
+        } catch (RuntimeException e) {
+            log.error("Unexpected error while taking snapshot: %s", e);
+        }
+    }
+
+    /**
+     * Get the connection to the peer with the given qualifier, refreshing the peers from the naming server if needed.
+     *
+     * @param serverTo The qualifier of the replica.
+     * @return The service to communicate with the replica.
+     * @throws ServerUnavailableException If the replica cannot be found.
+     */
+    private CrossServerService resolvePeer(String serverTo) throws ServerUnavailableException {
         long attempts = 0;
         do {
-            if (peersCache.size() == 0) {
-                populatePeersCache();
+            final Optional<CrossServerService> peer = peerConnections.get(serverTo);
+            if (peer.isPresent()) {
+                return peer.get();
             }
-            if (sendLedgerToServer(visitor, serverTo)) {
-                return;
+            try {
+                refreshPeers();
+            } catch (StatusRuntimeException e) {
+                log.debug("Failed to get server list from naming server: %s", e.getMessage());
             }
-            populatePeersCache();
         } while (++attempts < MAX_RETRIES);
 
         throw new ServerUnavailableException(serverTo);
     }
 
+    private void refreshPeers() {
+        // Connections to the peers that are already known are kept
+        peerConnections.update(
+                namingServerService.getServerList()
+                        .stream()
+                        .filter(serverInfo -> !serverInfo.getQualifier().equals(qualifier))
+                        .toList()
+        );
+    }
+
     /**
-     * Sends the ledger to the server in the cache, invalidating the cache if it fails.
+     * Update the known peers directly, instead of from the naming server.
      *
-     * @param visitor  The visitor containing the operations.
-     * @param serverTo The qualifier of the replica to send to.
-     * @return true if the ledger was sent successfully, false otherwise.
+     * @param servers The other replicas.
      */
-    private boolean sendLedgerToServer(
-            ConvertOperationsToGrpcVisitor visitor,
-            String serverTo
-    ) throws ServerUnavailableException {
-        try {
-            if (!serverState.getActive().get()) {
-                throw new ServerUnavailableException(qualifier);
+    @VisibleForTesting
+    void updatePeers(Collection<ServerInfo> servers) {
+        peerConnections.update(servers);
+    }
+
+    /**
+     * @return The most chunks that have been waiting to be sent to a single peer at once, since this replica started.
+     */
+    @VisibleForTesting
+    int getPeakQueuedChunks() {
+        return peakQueuedChunks.get();
+    }
+
+    /**
+     * The operations being sent to a replica: the chunks sorted into its (bounded) queue are sent, in order, by a
+     * thread of the fan-out pool, until the pass over the ledger ends. Once the stream to the replica fails, or its
+     * queue stays full until its deadline, further chunks are dropped instead of queued.
+     */
+    private class GossipSend implements Runnable {
+
+        // Mark the end of the queue, and that the send has failed; compared by identity
+        private static final List<DistLedgerCommonDefinitions.Operation> END = new ArrayList<>();
+        private static final List<DistLedgerCommonDefinitions.Operation> ABORT = new ArrayList<>();
+
+        private final String serverTo;
+        private final VectorClock acknowledgedTimestamp;
+        private final CrossServerService.LedgerStream ledgerStream;
+        private final BlockingQueue<List<DistLedgerCommonDefinitions.Operation>> chunks =
+                new ArrayBlockingQueue<>(MAX_QUEUED_CHUNKS);
+        private final CompletableFuture<Void> acknowledged = new CompletableFuture<>();
+        private final long deadlineNanos;
+
+        GossipSend(String serverTo, CrossServerService peer) {
+            this.serverTo = serverTo;
+            this.acknowledgedTimestamp = serverState.getGossipTimestamp(serverTo);
+            this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(gossipDeadlineMillis);
+            this.ledgerStream = peer.openLedgerStream(gossipDeadlineMillis);
+        }
+
+        /**
+         * Queue a chunk to be sent, waiting for a short while (and never past the deadline) while the queue is full.
+         */
+        void offer(List<DistLedgerCommonDefinitions.Operation> chunk) {
+            if (acknowledged.isDone()) {
+                return;
+            }
+            final long waitNanos = Math.min(
+                    TimeUnit.MILLISECONDS.toNanos(gossipQueueWaitMillis),
+                    deadlineNanos - System.nanoTime()
+            );
+            try {
+                if (!chunks.offer(chunk, waitNanos, TimeUnit.NANOSECONDS)) {
+                    log.debug("Outgoing queue to replica %s stayed full, giving up on it", serverTo);
+                    fail(new ServerUnavailableException(serverTo));
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                fail(new ServerUnavailableException(qualifier));
+                return;
+            }
+            peakQueuedChunks.accumulateAndGet(chunks.size(), Math::max);
+        }
+
+        void end() {
+            offer(END);
+        }
+
+        /**
+         * Fail the send from the pass over the ledger, dropping the queued chunks. The sender thread cancels the stream
+         * once it takes the abort marker, since calls on the stream must not overlap.
+         */
+        private void fail(ServerUnavailableException e) {
+            peerConnections.reportFailure(serverTo);
+            acknowledged.completeExceptionally(e);
+            chunks.clear();
+            // Only this thread adds to the queue, so the marker fits right after clearing it
+            chunks.offer(ABORT);
+        }
+
+        @Override
+        public void run() {
+            try (ledgerStream) {
+                List<DistLedgerCommonDefinitions.Operation> chunk;
+                while ((chunk = chunks.take()) != END) {
+                    if (chunk == ABORT) {
+                        return;
+                    }
+                    ledgerStream.send(chunk);
+                }
+
+                // Only the operations the other replica acknowledges having are skipped in further propagations,
+                // so operations lost along the way (or not applied by the other replica) are sent again.
+                val replicaTimestamp = ledgerStream.finish();
+                peerConnections.reportSuccess(serverTo);
+                serverState.updateGossipTimestamp(serverTo, replicaTimestamp);
+                log.debug("Propagated operations to replica %s", serverTo);
+                acknowledged.complete(null);
+            } catch (StatusRuntimeException e) {
+                log.debug("Failed to propagate operations to replica %s: %s", serverTo, e.getMessage());
+                // The connection is kept, and retried after a backoff if the replica could not be reached
+                peerConnections.reportFailure(serverTo);
+                acknowledged.completeExceptionally(new ServerUnavailableException(serverTo));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                acknowledged.completeExceptionally(new ServerUnavailableException(qualifier));
+            } catch (RuntimeException e) {
+                acknowledged.completeExceptionally(e);
+                throw e;
+            } finally {
+                chunks.clear();
             }
-            Optional.ofNullable(peersCache.getIfPresent(serverTo))
-                    .orElseThrow(() -> new RuntimeException("Server not found"))
-                    .sendLedger(visitor.getLedger());
-            return true;
-        } catch (ServerUnavailableException e) {
-            peersCache.invalidate(qualifier);
-            throw e;
-        } catch (StatusRuntimeException e) {
-            throw new ServerUnavailableException(serverTo);
-        } catch (Exception e) {
-            e.printStackTrace();
-            peersCache.invalidate(serverTo);
         }
-        return false;
     }
 
-    private void populatePeersCache() {
-        namingServerService.getServerList()
-                .forEach(serverInfo -> peersCache.put(serverInfo.getQualifier(), new CrossServerService(serverInfo)));
+    /**
+     * The outcome of gossiping to every other replica.
+     *
+     * @param gossipedTo The replicas that acknowledged the operations sent to them.
+     * @param failed     The replicas that could not be gossiped to.
+     */
+    public record GossipRoundResult(List<String> gossipedTo, List<String> failed) {
     }
 
 }
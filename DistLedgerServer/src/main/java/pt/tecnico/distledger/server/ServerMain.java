@@ -3,13 +3,18 @@ package pt.tecnico.distledger.server;
 import io.grpc.BindableService;
 import io.grpc.Server;
 import io.grpc.ServerBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
 import lombok.CustomLog;
 import pt.tecnico.distledger.common.Logger;
+import pt.tecnico.distledger.server.grpc.PeerConnectionManager;
 import pt.tecnico.distledger.server.service.AdminDistLedgerServiceImpl;
 import pt.tecnico.distledger.server.service.CrossServerDistLedgerServiceImpl;
 import pt.tecnico.distledger.server.service.UserDistLedgerServiceImpl;
 
+import java.util.Optional;
 import java.util.OptionalInt;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
 
 @CustomLog
 public class ServerMain {
@@ -37,17 +42,30 @@ public class ServerMain {
             System.exit(1);
         }
 
+        final Optional<ExecutorService> executor;
+        try {
+            executor = createExecutor();
+        } catch (IllegalArgumentException e) {
+            log.error("%s", e.getMessage());
+            System.exit(1);
+            return;
+        }
+
         final ServerCoordinator serverCoordinator = new ServerCoordinator(port, qualifier);
 
         final BindableService userImpl = new UserDistLedgerServiceImpl(serverCoordinator);
         final BindableService adminImpl = new AdminDistLedgerServiceImpl(serverCoordinator);
         final BindableService crossServerImpl = new CrossServerDistLedgerServiceImpl(serverCoordinator);
 
-        Server server = ServerBuilder.forPort(port)
+        final ServerBuilder<?> serverBuilder = NettyServerBuilder.forPort(port)
+                // Other replicas keep their connections to this one alive with pings, even while idle
+                .permitKeepAliveTime(PeerConnectionManager.KEEPALIVE_TIME_SECONDS, TimeUnit.SECONDS)
+                .permitKeepAliveWithoutCalls(true)
                 .addService(userImpl)
                 .addService(adminImpl)
-                .addService(crossServerImpl)
-                .build();
+                .addService(crossServerImpl);
+        executor.ifPresent(serverBuilder::executor);
+        Server server = serverBuilder.build();
 
         server.start();
 
@@ -63,15 +81,46 @@ public class ServerMain {
         }
         log.info("Registered server on naming server with qualifier %s", qualifier);
 
+        serverCoordinator.startBackgroundTasks();
+
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             log.info("Server shutting down");
             serverCoordinator.unregisterFromNamingServer();
             serverCoordinator.shutdown();
+            executor.ifPresent(ExecutorService::shutdown);
         }));
 
         server.awaitTermination();
     }
 
+    /**
+     * Create the executor the services run on, as selected by the system property {@code server.executor}: either
+     * {@code default} (gRPC's cached thread pool) or {@code virtual} (a virtual thread per call, requiring Java 21).
+     *
+     * @return The executor, or an empty optional to use gRPC's default executor.
+     * @throws IllegalArgumentException If the executor is unknown, or not supported by the running Java version.
+     */
+    private static Optional<ExecutorService> createExecutor() {
+        final String executor = System.getProperty("server.executor", "default");
+        return switch (executor) {
+            case "default" -> Optional.empty();
+            case "virtual" -> {
+                if (!VirtualThreads.isSupported()) {
+                    throw new IllegalArgumentException(String.format(
+                            "Virtual threads require Java 21 or later (running %s)",
+                            Runtime.version()
+                    ));
+                }
+                log.info("Running services on virtual threads");
+                yield Optional.of(VirtualThreads.newVirtualThreadPerTaskExecutor());
+            }
+            default -> throw new IllegalArgumentException(String.format(
+                    "Unknown executor '%s' (expected 'default' or 'virtual')",
+                    executor
+            ));
+        };
+    }
+
     /**
      * Parses a string as a valid non-privileged port number (1024-65535).
      *
@@ -0,0 +1,53 @@
+package pt.tecnico.distledger.server;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Access to virtual threads, which are only available from Java 21 on. They are looked up reflectively, so the server
+ * still compiles and runs (with platform threads only) on older versions of Java.
+ */
+public final class VirtualThreads {
+
+    private static final Method NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR = findFactory();
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * @return Whether the running JVM supports virtual threads.
+     */
+    public static boolean isSupported() {
+        return NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR != null;
+    }
+
+    /**
+     * Create an executor that runs each task in a new virtual thread.
+     *
+     * @return The executor.
+     * @throws UnsupportedOperationException If the running JVM does not support virtual threads.
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor() {
+        if (!isSupported()) {
+            throw new UnsupportedOperationException(
+                    "Virtual threads require Java 21 or later (running " + Runtime.version() + ")"
+            );
+        }
+        try {
+            return (ExecutorService) NEW_VIRTUAL_THREAD_PER_TASK_EXECUTOR.invoke(null);
+        } catch (IllegalAccessException | InvocationTargetException e) {
+            throw new IllegalStateException("Failed to create virtual thread executor", e);
+        }
+    }
+
+    private static Method findFactory() {
+        try {
+            return Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+}
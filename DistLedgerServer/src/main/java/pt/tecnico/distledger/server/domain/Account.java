@@ -4,22 +4,48 @@ import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.ToString;
 
+import java.util.concurrent.atomic.AtomicInteger;
 
-@Getter
+/**
+ * An account and its balance. The balance is updated atomically, so it can be read without any lock while operations
+ * are being executed.
+ */
 @RequiredArgsConstructor
 @ToString
 public class Account {
 
+    @Getter
     private final String userId;
 
-    private int balance = 0;
+    private final AtomicInteger balance = new AtomicInteger();
+
+    public int getBalance() {
+        return this.balance.get();
+    }
 
     public void increaseBalance(int amount) {
-        this.balance += amount;
+        this.balance.addAndGet(amount);
     }
 
     public void decreaseBalance(int amount) {
-        this.balance -= amount;
+        this.balance.addAndGet(-amount);
+    }
+
+    /**
+     * Decrease the balance by the given amount, unless the balance is lower than the amount.
+     *
+     * @param amount The amount to withdraw.
+     * @return Whether the balance was decreased.
+     */
+    public boolean tryDecreaseBalance(int amount) {
+        int current;
+        do {
+            current = this.balance.get();
+            if (current < amount) {
+                return false;
+            }
+        } while (!this.balance.compareAndSet(current, current - amount));
+        return true;
     }
 
 }
@@ -0,0 +1,153 @@
+package pt.tecnico.distledger.server.domain;
+
+import lombok.CustomLog;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Function;
+
+/**
+ * Registry of clients watching the balance of accounts, which are pushed the balance of an account (along with the
+ * value timestamp) whenever an executed operation changes it.
+ * <p>
+ * Changes are collected while a batch of operations is executed, and the affected watches are notified once the value
+ * timestamp covering the batch has been published, in a single task per batch. Updates are conflated: a watch that is
+ * not ready to send (e.g., because its client is reading slowly) only remembers that its balance has changed, and
+ * sends the latest balance once it is ready, however many times the balance has changed in the meantime.
+ */
+@CustomLog(topic = "Balance Watchers")
+public class BalanceWatchers {
+
+    private final Function<String, Optional<OperationResult<Integer>>> balanceReader;
+
+    private final Map<String, Set<Watch>> watches = new ConcurrentHashMap<>();
+
+    // Only accessed while executing operations, under the ledger's write lock
+    private final Set<Watch> changed = new HashSet<>();
+
+    /**
+     * @param balanceReader Reads the balance of an account, and a value timestamp covering it.
+     */
+    public BalanceWatchers(Function<String, Optional<OperationResult<Integer>>> balanceReader) {
+        this.balanceReader = balanceReader;
+    }
+
+    /**
+     * Start watching the balance of an account. The watch starts with an update pending, so the current balance is
+     * sent as soon as the listener is ready.
+     *
+     * @param userId   The ID of the account.
+     * @param listener The listener to send the balance to.
+     * @return The watch, which must be closed once the client stops watching.
+     */
+    public Watch watch(String userId, Listener listener) {
+        final Watch watch = new Watch(userId, listener);
+        watches.compute(userId, (id, accountWatches) -> {
+            final Set<Watch> updated = accountWatches != null ? accountWatches : ConcurrentHashMap.newKeySet();
+            updated.add(watch);
+            return updated;
+        });
+        return watch;
+    }
+
+    /**
+     * Record that an executed operation has changed the balance of an account. Must be called while holding the
+     * ledger's write lock.
+     *
+     * @param userId The ID of the account.
+     */
+    void balanceChanged(String userId) {
+        final Set<Watch> accountWatches = watches.get(userId);
+        if (accountWatches != null) {
+            changed.addAll(accountWatches);
+        }
+    }
+
+    /**
+     * Notify the watches of the accounts changed since the last call, once the value timestamp covering the changes has
+     * been published. Must be called while holding the ledger's write lock.
+     */
+    void publish() {
+        if (changed.isEmpty()) {
+            return;
+        }
+        final List<Watch> notified = List.copyOf(changed);
+        changed.clear();
+        ForkJoinPool.commonPool().execute(() -> notified.forEach(Watch::balanceChanged));
+    }
+
+    /**
+     * @return The number of open watches.
+     */
+    public int size() {
+        return watches.values().stream().mapToInt(Set::size).sum();
+    }
+
+    /**
+     * Receives the balance updates of a watch, which are never sent concurrently.
+     */
+    public interface Listener {
+
+        /**
+         * @return Whether an update can be sent now. If not, the listener must call {@link Watch#flush()} once it is.
+         */
+        boolean isReady();
+
+        void onBalance(OperationResult<Integer> balance);
+    }
+
+    /**
+     * A client watching the balance of an account.
+     */
+    public class Watch implements AutoCloseable {
+
+        private final String userId;
+        private final Listener listener;
+
+        // Guarded by this
+        private boolean pending = true;
+        private boolean closed = false;
+
+        private Watch(String userId, Listener listener) {
+            this.userId = userId;
+            this.listener = listener;
+        }
+
+        /**
+         * Send the latest balance, if it has changed since the last one sent and the listener is ready.
+         */
+        public synchronized void flush() {
+            if (closed || !pending || !listener.isReady()) {
+                return;
+            }
+            // Cleared before reading, so a change made after the balance is read is sent afterward
+            pending = false;
+            try {
+                balanceReader.apply(userId).ifPresent(listener::onBalance);
+            } catch (RuntimeException e) {
+                log.debug("Closing watch of account '%s' after failing to send its balance: %s", userId, e);
+                close();
+            }
+        }
+
+        @Override
+        public synchronized void close() {
+            closed = true;
+            watches.computeIfPresent(userId, (id, accountWatches) -> {
+                accountWatches.remove(this);
+                return accountWatches.isEmpty() ? null : accountWatches;
+            });
+        }
+
+        private synchronized void balanceChanged() {
+            pending = true;
+            flush();
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+package pt.tecnico.distledger.server.domain;
+
+import pt.tecnico.distledger.common.VectorClock;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Index of items waiting for a vector clock to become newer than or equal to a required timestamp.
+ * <p>
+ * Each item is indexed by a single entry of its required timestamp that is not yet satisfied. When the vector clock
+ * advances, only the items waiting on the entries that have changed are woken up, instead of re-checking every pending
+ * item. Woken items that are still waiting on other entries are indexed again by one of those.
+ * <p>
+ * This class is not thread-safe; callers must ensure mutual exclusion.
+ *
+ * @param <T> The type of the items being indexed.
+ */
+public class DependencyIndex<T> {
+
+    // Indexed by the replica's index in the ReplicaRegistry, then by the required value of its timestamp
+    private final List<NavigableMap<Integer, List<Dependent<T>>>> index = new ArrayList<>();
+    private int size = 0;
+
+    /**
+     * Register an item that requires the given vector clock to be newer than or equal to the required timestamp.
+     *
+     * @param item     The item to register.
+     * @param required The timestamp the item depends on.
+     * @param current  The current value of the vector clock.
+     * @return true if the dependency is already satisfied (in which case the item is not indexed), false otherwise.
+     */
+    public boolean register(T item, VectorClock required, VectorClock current) {
+        return register(new Dependent<>(item, required), current);
+    }
+
+    /**
+     * Wake up the items waiting on the entries of the vector clock that might have advanced.
+     *
+     * @param current The current value of the vector clock.
+     * @param changed A vector clock whose non-zero entries are the ones of the vector clock that might have advanced
+     *                (usually, the timestamp that has just been merged into it).
+     * @param onReady Called with every item whose dependency is now fully satisfied.
+     */
+    public void advance(VectorClock current, VectorClock changed, Consumer<T> onReady) {
+        final int length = Math.min(changed.length(), index.size());
+        for (int i = 0; i < length; i++) {
+            final NavigableMap<Integer, List<Dependent<T>>> waiting = index.get(i);
+            if (waiting == null || changed.getValue(i) == 0) {
+                continue;
+            }
+            final Map<Integer, List<Dependent<T>>> satisfied = waiting.headMap(current.getValue(i), true);
+            if (satisfied.isEmpty()) {
+                continue;
+            }
+
+            final List<Dependent<T>> woken = new ArrayList<>();
+            satisfied.values().forEach(woken::addAll);
+            satisfied.clear();
+            size -= woken.size();
+
+            for (Dependent<T> dependent : woken) {
+                if (register(dependent, current)) {
+                    onReady.accept(dependent.item());
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove the items that match the given predicate (e.g., the ones that have stopped waiting), regardless of their
+     * dependencies. This visits every indexed item.
+     *
+     * @param filter The predicate the items to remove match.
+     * @return The number of removed items.
+     */
+    public int removeIf(Predicate<T> filter) {
+        int removed = 0;
+        for (NavigableMap<Integer, List<Dependent<T>>> waiting : index) {
+            if (waiting == null) {
+                continue;
+            }
+            final Iterator<List<Dependent<T>>> iterator = waiting.values().iterator();
+            while (iterator.hasNext()) {
+                final List<Dependent<T>> dependents = iterator.next();
+                final int previousSize = dependents.size();
+                dependents.removeIf(dependent -> filter.test(dependent.item()));
+                removed += previousSize - dependents.size();
+                if (dependents.isEmpty()) {
+                    iterator.remove();
+                }
+            }
+        }
+        size -= removed;
+        return removed;
+    }
+
+    /**
+     * @return The number of items still waiting for their dependencies.
+     */
+    public int size() {
+        return size;
+    }
+
+    private boolean register(Dependent<T> dependent, VectorClock current) {
+        final int entry = dependent.required().findEntryNewerThan(current);
+        if (entry < 0) {
+            return true;
+        }
+        while (index.size() <= entry) {
+            index.add(null);
+        }
+        NavigableMap<Integer, List<Dependent<T>>> waiting = index.get(entry);
+        if (waiting == null) {
+            waiting = new TreeMap<>();
+            index.set(entry, waiting);
+        }
+        waiting.computeIfAbsent(dependent.required().getValue(entry), k -> new ArrayList<>()).add(dependent);
+        size++;
+        return false;
+    }
+
+    private record Dependent<T>(T item, VectorClock required) {
+    }
+
+}
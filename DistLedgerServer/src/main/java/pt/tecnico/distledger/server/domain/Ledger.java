@@ -5,28 +5,69 @@ import lombok.RequiredArgsConstructor;
 import org.jetbrains.annotations.VisibleForTesting;
 import pt.tecnico.distledger.common.VectorClock;
 import pt.tecnico.distledger.server.domain.operation.Operation;
+import pt.tecnico.distledger.server.persistence.OperationArchive;
+import pt.tecnico.distledger.server.persistence.OperationLog;
+import pt.tecnico.distledger.server.persistence.Snapshot;
 import pt.tecnico.distledger.server.visitor.OperationVisitor;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Queue;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.function.Consumer;
+import java.util.function.LongSupplier;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
 
 @RequiredArgsConstructor
 @CustomLog(topic = "Ledger")
 public class Ledger {
 
-    private final Predicate<Operation> stable;
+    // How many times to try copying the balances without holding the lock, before holding it while copying them
+    private static final int OPTIMISTIC_SNAPSHOT_ATTEMPTS = 3;
+    /**
+     * How many operations can be stabilized before the stabilized callback is called, so that the state they change is
+     * published regularly while stabilizing a large batch (e.g., received through gossip).
+     */
+    @VisibleForTesting
+    public static final int MAX_STABILIZED_BATCH = 64;
+
+    /**
+     * The vector clock operations depend on to become stable. It must only be advanced by the executor callback.
+     */
+    private final VectorClock valueTimestamp;
     private final Consumer<Operation> executorCallback;
+    /**
+     * Called after each batch of (at most {@link #MAX_STABILIZED_BATCH}) operations is stabilized, while still holding
+     * the write lock, with a vector clock whose non-zero entries are the ones of the value timestamp that the batch has
+     * advanced.
+     */
+    private final Consumer<VectorClock> stabilizedCallback;
+    /**
+     * Log every accepted operation is appended to, in the order it is accepted.
+     */
+    private final OperationLog operationLog;
+    /**
+     * Archive the oldest stable operations are moved to when discarded from the ledger.
+     */
+    private final OperationArchive operationArchive;
 
-    private final List<Operation> ledger = new CopyOnWriteArrayList<>();
-    private final Set<VectorClock> operationIdList = ConcurrentHashMap.newKeySet();
-    private int stableOperationCount = 0;
+    private final SegmentedLog<Operation> stableOperations = new SegmentedLog<>();
+    // Insertion-ordered; operations have identity semantics, so removing one is O(1)
+    private final Set<Operation> unstableOperations = new LinkedHashSet<>();
+    private final OperationIdSet knownOperations = new OperationIdSet();
+    // The operations in memory (stable and unstable), by origin
+    private final OriginIndex operationsByOrigin = new OriginIndex();
+    private final DependencyIndex<PendingOperation> pendingOperations = new DependencyIndex<>();
+    private long nextSequence = 0;
+    // The number of stable operations discarded before the first position of the stable operations' log
+    private long discardedBase = 0;
 
     private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
@@ -42,27 +83,17 @@ public class Ledger {
         if (operation.isStable()) {
             throw new IllegalArgumentException("Operation to add to ledger must be unstable");
         }
-        if (!operationIdList.add(operation.getUniqueTimestamp())) {
-            throw new IllegalArgumentException("Operation already in ledger");
-        }
-        if (this.stable.test(operation)) {
-            this.lock.writeLock().lock();
-            try {
-                this.ledger.add(this.stableOperationCount, operation);
-                operation.setStable(true);
-                this.executorCallback.accept(operation);
-                this.stableOperationCount++;
-            } finally {
-                this.lock.writeLock().unlock();
+        this.lock.writeLock().lock();
+        try {
+            if (!isNew(operation)) {
+                throw new IllegalArgumentException("Operation already in ledger");
             }
-            log.debug(
-                    "The %s operation with timestamp %s has now been stabilized",
-                    operation.getType(),
-                    operation.getUniqueTimestamp()
-            );
-        } else {
-            // The underlying structure already gives us synchronization guarantees
-            this.ledger.add(operation);
+            this.operationLog.append(operation);
+            final Queue<PendingOperation> ready = new PriorityQueue<>();
+            register(operation, ready);
+            stabilizeOperations(ready);
+        } finally {
+            this.lock.writeLock().unlock();
         }
     }
 
@@ -75,78 +106,382 @@ public class Ledger {
      *                                  true).
      */
     public void addAllUnstable(Collection<Operation> operations) {
-        if (operations.stream().anyMatch(Operation::isStable)) {
-            throw new IllegalArgumentException("All operations to add to ledger must be unstable");
+        addAllUnstable(operations, true);
+    }
+
+    /**
+     * Add the operations recovered from the operation log to the ledger, without appending them to the log again.
+     *
+     * @param operations The operations to add to the ledger, in the order they were appended to the log.
+     * @throws IllegalArgumentException If any of the given operations is already stable (its attribute 'stable' is
+     *                                  true).
+     */
+    public void recover(Collection<Operation> operations) {
+        addAllUnstable(operations, false);
+    }
+
+    public void operateOverLedger(OperationVisitor visitor) {
+        operateOverLedger(visitor, operation -> true);
+    }
+
+    /**
+     * Visit a snapshot of the ledger: the archived operations, followed by the stable operations still in memory, both
+     * in the order they were stabilized, followed by the unstable ones. The lock is only held while taking the
+     * snapshot, so visitors do not block writers.
+     * <p>
+     * The operations in the snapshot are made durable before being visited, so that no operation leaves this replica
+     * before it would survive a restart.
+     *
+     * @param visitor The visitor to call with every operation that matches the filter.
+     * @param filter  The filter the operations must match.
+     */
+    public void operateOverLedger(OperationVisitor visitor, Predicate<Operation> filter) {
+        final List<OperationArchive.Segment> archived;
+        final SegmentedLog.View<Operation> stable;
+        final Operation[] unstable;
+        this.lock.readLock().lock();
+        try {
+            archived = this.operationArchive.segments();
+            stable = this.stableOperations.view();
+            unstable = this.unstableOperations.toArray(new Operation[0]);
+        } finally {
+            this.lock.readLock().unlock();
         }
+        this.operationLog.sync();
 
-        operations.forEach(operation -> {
-            if (operationIdList.add(operation.getUniqueTimestamp())) {
-                this.ledger.add(operation);
+        final Consumer<Operation> action = operation -> {
+            if (filter.test(operation)) {
+                operation.accept(visitor);
             }
-        });
-        stabilizeOperations();
+        };
+        for (OperationArchive.Segment segment : archived) {
+            segment.forEach(action);
+        }
+        stable.forEach(action);
+        for (Operation operation : unstable) {
+            action.accept(operation);
+        }
     }
 
-    public void operateOverLedger(OperationVisitor visitor) {
+    /**
+     * Visit the operations of a snapshot of the ledger that are not covered by the given timestamp (usually, the
+     * timestamp acknowledged by another replica): the archived ones first, in the order they were stabilized, followed
+     * by the ones in memory, grouped by origin in ascending order of their origin counter. Archived segments whose
+     * operations are all covered by the timestamp are skipped without being read, the covered operations of the other
+     * segments are skipped without being decoded, and the operations in memory are found with a range lookup per
+     * origin, so the operations covered by the timestamp are never visited.
+     *
+     * @param visitor               The visitor to call with every operation not covered by the timestamp.
+     * @param acknowledgedTimestamp The timestamp covering the operations to skip.
+     */
+    public void operateOverLedgerNotCoveredBy(OperationVisitor visitor, VectorClock acknowledgedTimestamp) {
+        final List<OperationArchive.Segment> archived;
+        final List<Operation> inMemory = new ArrayList<>();
         this.lock.readLock().lock();
         try {
-            this.ledger.forEach(operation -> operation.accept(visitor));
+            archived = this.operationArchive.segments();
+            this.operationsByOrigin.collectNotCoveredBy(acknowledgedTimestamp, inMemory);
         } finally {
             this.lock.readLock().unlock();
         }
+        this.operationLog.sync();
+
+        for (OperationArchive.Segment segment : archived) {
+            if (!acknowledgedTimestamp.isNewerThanOrEqualTo(segment.getMaxCounters())) {
+                segment.forEachNotCoveredBy(acknowledgedTimestamp, operation -> operation.accept(visitor));
+            }
+        }
+        inMemory.forEach(operation -> operation.accept(visitor));
     }
 
-    public void operateOverLedger(OperationVisitor visitor, Predicate<Operation> filter) {
+    /**
+     * Get the timestamp of the operations known by this ledger: for each origin replica, the highest counter such that
+     * all of the replica's operations up to it are in the ledger. Another replica can safely skip sending any operation
+     * covered by this timestamp.
+     *
+     * @return A new vector clock with the known timestamp.
+     */
+    public VectorClock getKnownTimestamp() {
         this.lock.readLock().lock();
         try {
-            this.ledger.stream()
-                    .filter(filter)
-                    .forEach(operation -> operation.accept(visitor));
+            return this.knownOperations.getWatermarks();
         } finally {
             this.lock.readLock().unlock();
         }
     }
 
-    @VisibleForTesting
-    public int size() {
-        // No need for locks, the underlying structure provides synchornization guarantees.
-        return this.ledger.size();
+    /**
+     * Take a snapshot of the ledger and of the state derived from its stable operations, without blocking writers for
+     * longer than it takes to copy the unstable operations and the known identifiers.
+     * <p>
+     * The lock is only held while recording where the stable operations end, since their log is append-only: they are
+     * copied after releasing it. The state derived from them (the balances) is also copied after releasing it, and is
+     * only used if the given version shows that no stable operation has been executed in the meantime. If that keeps
+     * failing, the state is copied while holding the lock instead.
+     *
+     * @param balancesCopier Copies the balance of each account, which must only be changed by the executor callback.
+     * @param stateVersion   Gets a version of the balances, which changes whenever the executor callback is called.
+     * @return The snapshot.
+     */
+    public Snapshot takeSnapshot(Supplier<Map<String, Integer>> balancesCopier, LongSupplier stateVersion) {
+        for (int attempt = 1; ; attempt++) {
+            final boolean optimistic = attempt <= OPTIMISTIC_SNAPSHOT_ATTEMPTS;
+            final long version;
+            final long logPosition;
+            final long discardedCount;
+            final SegmentedLog.View<Operation> stable;
+            final VectorClock valueTimestamp;
+            final VectorClock replicaTimestamp;
+            final OperationIdSet known;
+            final List<Operation> unstable;
+            Map<String, Integer> balances = null;
+            this.lock.readLock().lock();
+            try {
+                version = stateVersion.getAsLong();
+                logPosition = this.operationLog.position();
+                stable = this.stableOperations.view();
+                discardedCount = this.discardedBase + stable.from();
+                valueTimestamp = this.valueTimestamp.clone();
+                // The replica timestamp covers exactly the operations in the ledger: the value timestamp covers the
+                // stable ones, and the unstable ones are merged into it
+                replicaTimestamp = this.valueTimestamp.clone();
+                this.unstableOperations.forEach(
+                        operation -> replicaTimestamp.updateVectorClock(operation.getUniqueTimestamp())
+                );
+                known = this.knownOperations.copy();
+                unstable = List.copyOf(this.unstableOperations);
+                if (!optimistic) {
+                    balances = balancesCopier.get();
+                }
+            } finally {
+                this.lock.readLock().unlock();
+            }
+            if (optimistic) {
+                balances = balancesCopier.get();
+                if (stateVersion.getAsLong() != version) {
+                    continue;
+                }
+            }
+
+            final List<Operation> stableCopy = new ArrayList<>(stable.size());
+            stable.forEach(stableCopy::add);
+            return new Snapshot(
+                    logPosition,
+                    discardedCount,
+                    balances,
+                    valueTimestamp.freeze(),
+                    replicaTimestamp.freeze(),
+                    known,
+                    stableCopy,
+                    unstable
+            );
+        }
     }
 
     /**
-     * Try to mark operations as stable whenever possible.
+     * Restore the operations of a snapshot into this (empty) ledger. The value timestamp and the state derived from
+     * the stable operations must have already been restored, since the stable operations are not executed again.
+     * <p>
+     * Stable operations that have been archived after the snapshot was taken are not restored into the ledger.
+     *
+     * @param snapshot The snapshot to restore.
+     * @throws IllegalStateException If the ledger is not empty.
      */
-    private void stabilizeOperations() {
+    public void restore(Snapshot snapshot) {
+        this.lock.writeLock().lock();
+        try {
+            if (this.stableOperations.size() != 0 || !this.unstableOperations.isEmpty()) {
+                throw new IllegalStateException("Cannot restore a snapshot into a non-empty ledger");
+            }
+            this.knownOperations.addAll(snapshot.knownOperations());
+
+            final List<Operation> stable = snapshot.stableOperations();
+            final int archivedSinceSnapshot = (int) Math.min(
+                    Math.max(this.operationArchive.size() - snapshot.discardedCount(), 0),
+                    stable.size()
+            );
+            this.discardedBase = snapshot.discardedCount() + archivedSinceSnapshot;
+            stable.subList(archivedSinceSnapshot, stable.size()).forEach(operation -> {
+                operation.setStable(true);
+                this.stableOperations.append(operation);
+                this.operationsByOrigin.add(operation);
+            });
+
+            final Queue<PendingOperation> ready = new PriorityQueue<>();
+            snapshot.unstableOperations().forEach(operation -> register(operation, ready));
+            stabilizeOperations(ready);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Discard the oldest stable operations from the ledger into the archive, as long as they are covered by the given
+     * timestamp (usually the timestamp acknowledged by every other replica). Discarded operations are still known, so
+     * they are not added again if received later.
+     * <p>
+     * Operations are only discarded once there are enough of them to fill an archive segment, which is written
+     * without holding the lock. Only one thread at a time can discard operations.
+     *
+     * @param acknowledgedTimestamp The timestamp covering the operations that can be discarded.
+     * @param limit                 The number of stable operations (including the ones already discarded) that can be
+     *                              discarded, usually the ones covered by the latest durable snapshot.
+     * @return The number of discarded operations.
+     * @throws IOException If the archive segment cannot be written.
+     */
+    public synchronized int discardAcknowledged(VectorClock acknowledgedTimestamp, long limit) throws IOException {
+        // Only this method moves the head of the stable operations, so it does not change until they are discarded
+        final List<Operation> discarded = new ArrayList<>();
+        final int first;
         this.lock.readLock().lock();
         try {
-            for (int i = this.stableOperationCount; i < this.ledger.size(); i++) {
-                Operation operation = this.ledger.get(i);
-                if (this.stable.test(operation)) {
-                    this.lock.readLock().unlock();
-                    this.lock.writeLock().lock();
-                    try {
-                        // Check if another thread got the lock and stabilized this operation meanwhile
-                        if (!operation.isStable()) {
-                            Collections.swap(this.ledger, this.stableOperationCount, i);
-                            operation.setStable(true);
-                            this.executorCallback.accept(operation);
-                            i = this.stableOperationCount;
-                            this.stableOperationCount++;
-                        }
-                        this.lock.readLock().lock();
-                    } finally {
-                        this.lock.writeLock().unlock();
-                    }
-                    log.debug(
-                            "The %s operation with timestamp %s has now been stabilized",
-                            operation.getType(),
-                            operation.getUniqueTimestamp()
-                    );
+            first = this.stableOperations.first();
+            final int size = (int) Math.min(this.stableOperations.size(), limit - this.discardedBase);
+            for (int position = first; position < size; position++) {
+                final Operation operation = this.stableOperations.get(position);
+                if (acknowledgedTimestamp.getValue(operation.getOriginIndex()) < operation.getOriginCounter()) {
+                    break;
                 }
+                discarded.add(operation);
             }
         } finally {
             this.lock.readLock().unlock();
         }
+        if (discarded.isEmpty() || discarded.size() < this.operationArchive.minSegmentSize()) {
+            return 0;
+        }
+
+        final OperationArchive.Segment segment = this.operationArchive.write(discarded);
+        this.lock.writeLock().lock();
+        try {
+            this.operationArchive.add(segment);
+            discarded.forEach(this.operationsByOrigin::remove);
+            this.stableOperations.truncateHead(first + discarded.size());
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+        return discarded.size();
+    }
+
+    @VisibleForTesting
+    public int size() {
+        this.lock.readLock().lock();
+        try {
+            return this.stableOperations.view().size() + this.unstableOperations.size();
+        } finally {
+            this.lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Check if an operation has never been added to the ledger, by its identifier (origin and origin counter). Every
+     * registered operation is known, including the ones discarded from the ledger since, so a new operation must be
+     * registered before the next one is checked.
+     *
+     * @param operation The operation to check.
+     * @return true if the operation is new, false otherwise.
+     */
+    private boolean isNew(Operation operation) {
+        return !this.knownOperations.contains(operation.getOriginIndex(), operation.getOriginCounter());
+    }
+
+    private void addAllUnstable(Collection<Operation> operations, boolean appendToLog) {
+        if (operations.stream().anyMatch(Operation::isStable)) {
+            throw new IllegalArgumentException("All operations to add to ledger must be unstable");
+        }
+
+        this.lock.writeLock().lock();
+        try {
+            final Queue<PendingOperation> ready = new PriorityQueue<>();
+            operations.forEach(operation -> {
+                if (isNew(operation)) {
+                    if (appendToLog) {
+                        this.operationLog.append(operation);
+                    }
+                    register(operation, ready);
+                }
+            });
+            stabilizeOperations(ready);
+        } finally {
+            this.lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Index a new operation by the dependencies it is still waiting on. Operations that can be stabilized right away
+     * are added to the ready queue instead of the unstable part of the ledger.
+     *
+     * @param operation The operation to register.
+     * @param ready     The queue of operations that are ready to be stabilized.
+     */
+    private void register(Operation operation, Queue<PendingOperation> ready) {
+        this.knownOperations.add(operation.getOriginIndex(), operation.getOriginCounter());
+        this.operationsByOrigin.add(operation);
+        final PendingOperation pending = new PendingOperation(this.nextSequence++, operation);
+        if (this.pendingOperations.register(pending, operation.getPrevTimestamp(), this.valueTimestamp)) {
+            ready.add(pending);
+        } else {
+            this.unstableOperations.add(operation);
+        }
+    }
+
+    /**
+     * Stabilize the operations in the ready queue, in the order they were added to the ledger. Stabilizing an
+     * operation advances the value timestamp, which wakes up only the operations that were waiting on the entries it
+     * has changed. Every operation made ready along the way is stabilized in the same pass, and the stabilized
+     * callback is called once for every {@link #MAX_STABILIZED_BATCH} operations, and once more for the remaining ones.
+     * <p>
+     * Must be called while holding the write lock.
+     *
+     * @param ready The queue of operations that are ready to be stabilized.
+     */
+    private void stabilizeOperations(Queue<PendingOperation> ready) {
+        if (ready.isEmpty()) {
+            return;
+        }
+        VectorClock changed = new VectorClock();
+        int stabilized = 0;
+        int unpublished = 0;
+        PendingOperation pending;
+        while ((pending = ready.poll()) != null) {
+            final Operation operation = pending.operation();
+            this.unstableOperations.remove(operation);
+            // Mark as stable before appending, since readers of the stable operations do not take the lock
+            operation.setStable(true);
+            this.stableOperations.append(operation);
+            this.executorCallback.accept(operation);
+            changed.updateVectorClock(operation.getUniqueTimestamp());
+            stabilized++;
+            if (++unpublished == MAX_STABILIZED_BATCH) {
+                this.stabilizedCallback.accept(changed);
+                changed = new VectorClock();
+                unpublished = 0;
+            }
+
+            this.pendingOperations.advance(
+                    this.valueTimestamp,
+                    operation.getUniqueTimestamp(),
+                    ready::add
+            );
+        }
+        if (unpublished > 0) {
+            this.stabilizedCallback.accept(changed);
+        }
+        log.debug("%d operation(s) have now been stabilized, up to timestamp %s", stabilized, this.valueTimestamp);
+    }
+
+    /**
+     * An operation that has been accepted into the ledger but not yet stabilized.
+     *
+     * @param sequence  The order in which the operation was added to the ledger.
+     * @param operation The operation.
+     */
+    private record PendingOperation(long sequence, Operation operation) implements Comparable<PendingOperation> {
+
+        @Override
+        public int compareTo(PendingOperation other) {
+            return Long.compare(this.sequence, other.sequence);
+        }
     }
 
 }
@@ -0,0 +1,158 @@
+package pt.tecnico.distledger.server.domain;
+
+import lombok.CustomLog;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Single thread that applies every change to the ledger, in the order the changes are submitted.
+ * <p>
+ * Request handlers submit their changes to a lock-free ring buffer and get the result through a future, instead of
+ * contending for the ledger's locks. The apply thread drains the buffer one change after the other, so it owns the
+ * order in which operations are accepted, stabilized and executed. It parks while the buffer is empty, and is only
+ * unparked by producers when it is parked.
+ */
+@CustomLog(topic = "Ledger Applier")
+public class LedgerApplier implements AutoCloseable {
+
+    private static final long FULL_BACKOFF_NANOS = 10_000;
+
+    private final MpscRingBuffer<Task<?>> queue;
+    private final Thread thread;
+
+    private volatile boolean parked = false;
+    private volatile boolean closed = false;
+
+    /**
+     * Create and start an apply thread.
+     *
+     * @param name     The name of the thread.
+     * @param capacity The maximum number of changes waiting to be applied, after which submitting blocks.
+     */
+    public LedgerApplier(String name, int capacity) {
+        this.queue = new MpscRingBuffer<>(capacity);
+        this.thread = new Thread(this::run, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Submit a change to be applied by the apply thread. If there are already too many changes waiting, this blocks
+     * until there is room for the new one.
+     *
+     * @param change The change to apply, returning its result.
+     * @param <T>    The type of the result.
+     * @return A future completed with the result of the change, or failed with the exception it has thrown.
+     * @throws IllegalStateException If the applier has been closed.
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> change) {
+        final Task<T> task = new Task<>(change);
+        ensureNotClosed();
+        while (!queue.offer(task)) {
+            ensureNotClosed();
+            LockSupport.unpark(thread);
+            LockSupport.parkNanos(FULL_BACKOFF_NANOS);
+        }
+        if (closed) {
+            // The apply thread may have already drained the buffer and stopped, in which case the change is never
+            // applied: fail it, unless the apply thread has already run it
+            task.reject();
+        } else if (parked) {
+            LockSupport.unpark(thread);
+        }
+        return task.future;
+    }
+
+    /**
+     * Apply the changes already submitted and stop the apply thread.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(thread);
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        while (true) {
+            final Task<?> task = queue.poll();
+            if (task != null) {
+                task.run();
+                continue;
+            }
+            if (closed) {
+                failRemainingTasks();
+                return;
+            }
+            parked = true;
+            // A producer that has not seen this thread parked has published its change before checking, so it is
+            // seen here
+            final Task<?> late = queue.poll();
+            if (late == null && !closed) {
+                LockSupport.park(this);
+            }
+            parked = false;
+            if (late != null) {
+                late.run();
+            }
+        }
+    }
+
+    private void failRemainingTasks() {
+        Task<?> task;
+        while ((task = queue.poll()) != null) {
+            task.reject();
+        }
+    }
+
+    private void ensureNotClosed() {
+        if (closed) {
+            throw new IllegalStateException("Ledger applier has been closed");
+        }
+    }
+
+    /**
+     * A submitted change, which is either run by the apply thread or rejected because the applier has been closed,
+     * whichever happens first.
+     */
+    private static class Task<T> {
+
+        private final Supplier<T> change;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private final AtomicBoolean claimed = new AtomicBoolean(false);
+
+        Task(Supplier<T> change) {
+            this.change = change;
+        }
+
+        void run() {
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                future.complete(change.get());
+            } catch (RuntimeException e) {
+                log.debug("Change failed: %s", e.getMessage());
+                future.completeExceptionally(e);
+            } catch (Throwable e) {
+                // Keep the apply thread alive, since every change submitted afterwards would otherwise never complete
+                log.error("Change failed: %s", e);
+                future.completeExceptionally(e);
+            }
+        }
+
+        void reject() {
+            if (claimed.compareAndSet(false, true)) {
+                future.completeExceptionally(new IllegalStateException("Ledger applier has been closed"));
+            }
+        }
+    }
+
+}
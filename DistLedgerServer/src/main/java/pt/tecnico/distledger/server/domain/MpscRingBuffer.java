@@ -0,0 +1,97 @@
+package pt.tecnico.distledger.server.domain;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free queue for many producers and a single consumer, backed by a ring buffer.
+ * <p>
+ * Producers claim a slot by advancing the tail with a compare-and-set, write their element into it and then publish
+ * the slot by advancing its sequence number. The consumer only reads slots whose sequence number shows they have been
+ * published, and releases them by advancing their sequence number by the capacity, so that producers can reuse them
+ * on the next lap. Neither side ever takes a lock.
+ *
+ * @param <E> The type of the elements.
+ */
+public class MpscRingBuffer<E> {
+
+    private final Object[] elements;
+    // For each slot, the position it is expected to be claimed at (free) or that position + 1 (published)
+    private final AtomicLongArray sequences;
+    private final int mask;
+
+    private final AtomicLong tail = new AtomicLong();
+    // Only accessed by the consumer
+    private long head = 0;
+
+    /**
+     * Create a ring buffer.
+     *
+     * @param capacity The maximum number of elements in the buffer, rounded up to a power of two.
+     */
+    public MpscRingBuffer(int capacity) {
+        final int size = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.elements = new Object[size];
+        this.sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            this.sequences.set(i, i);
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Add an element to the buffer, unless it is full. Can be called by any thread.
+     *
+     * @param element The element to add.
+     * @return true if the element was added, false if the buffer is full.
+     */
+    public boolean offer(E element) {
+        long position = tail.get();
+        while (true) {
+            final int slot = (int) (position & mask);
+            final long difference = sequences.get(slot) - position;
+            if (difference == 0) {
+                if (tail.compareAndSet(position, position + 1)) {
+                    elements[slot] = element;
+                    // Publishes the element to the consumer
+                    sequences.set(slot, position + 1);
+                    return true;
+                }
+                position = tail.get();
+            } else if (difference < 0) {
+                // The slot has not been released by the consumer since the previous lap
+                return false;
+            } else {
+                // Another producer has claimed this position
+                position = tail.get();
+            }
+        }
+    }
+
+    /**
+     * Remove the oldest element from the buffer. Must only be called by the consumer.
+     *
+     * @return The oldest element, or null if the buffer is empty.
+     */
+    @SuppressWarnings("unchecked")
+    public E poll() {
+        final int slot = (int) (head & mask);
+        if (sequences.get(slot) != head + 1) {
+            return null;
+        }
+        final E element = (E) elements[slot];
+        elements[slot] = null;
+        // Releases the slot for the next lap
+        sequences.set(slot, head + elements.length);
+        head++;
+        return element;
+    }
+
+    /**
+     * @return The number of elements the buffer can hold.
+     */
+    public int capacity() {
+        return elements.length;
+    }
+
+}
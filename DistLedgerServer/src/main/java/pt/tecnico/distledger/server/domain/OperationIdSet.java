@@ -0,0 +1,276 @@
+package pt.tecnico.distledger.server.domain;
+
+import pt.tecnico.distledger.common.ReplicaRegistry;
+import pt.tecnico.distledger.common.VectorClock;
+
+import java.util.Arrays;
+
+/**
+ * Set of operation identifiers, where an operation is identified by the replica it originated from and the value of
+ * that replica's entry in its unique timestamp (the origin counter).
+ * <p>
+ * For each origin, the set keeps the highest counter up to which all operations are known (the watermark), plus a
+ * sparse bitmap of the counters known above it: only the 64-bit words with at least one known counter are stored,
+ * ordered by their position. Since operations mostly arrive close to their origin's order, the watermark covers almost
+ * every identifier, and the bitmap only has the few words around the gaps, so checking or adding an identifier never
+ * hashes nor boxes anything.
+ * <p>
+ * This class is not thread-safe; callers must ensure mutual exclusion.
+ */
+public class OperationIdSet {
+
+    private static final Origin[] NO_ORIGINS = new Origin[0];
+
+    // Indexed by the replica's index in the ReplicaRegistry
+    private Origin[] origins = NO_ORIGINS;
+
+    /**
+     * Add an operation identifier to the set.
+     *
+     * @param origin  The index (in the {@link ReplicaRegistry}) of the replica the operation originated from.
+     * @param counter The origin counter of the operation.
+     * @return true if the identifier was not yet in the set, false otherwise.
+     */
+    public boolean add(int origin, int counter) {
+        return ensureOrigin(origin).add(counter);
+    }
+
+    /**
+     * Check if an operation identifier is in the set.
+     *
+     * @param origin  The index (in the {@link ReplicaRegistry}) of the replica the operation originated from.
+     * @param counter The origin counter of the operation.
+     * @return true if the identifier is in the set, false otherwise.
+     */
+    public boolean contains(int origin, int counter) {
+        return origin < origins.length && origins[origin].contains(counter);
+    }
+
+    /**
+     * Get the watermarks of this set as a vector clock. Every operation whose origin counter is not greater than the
+     * entry of its origin in this vector clock is in the set, regardless of the order they were added in.
+     *
+     * @return A new vector clock with the watermark of each origin.
+     */
+    public VectorClock getWatermarks() {
+        final VectorClock vectorClock = new VectorClock();
+        for (int i = 0; i < origins.length; i++) {
+            vectorClock.setValue(ReplicaRegistry.qualifierOf(i), origins[i].watermark);
+        }
+        return vectorClock;
+    }
+
+    /**
+     * @return An upper bound (exclusive) of the indices of the origins with identifiers in this set.
+     */
+    public int originCount() {
+        return origins.length;
+    }
+
+    /**
+     * @param origin The index (in the {@link ReplicaRegistry}) of the replica.
+     * @return The watermark of the given origin.
+     */
+    public int getWatermark(int origin) {
+        return origin < origins.length ? origins[origin].watermark : 0;
+    }
+
+    /**
+     * @param origin The index (in the {@link ReplicaRegistry}) of the replica.
+     * @return The counters of the given origin known above its watermark, in ascending order.
+     */
+    public int[] getAboveWatermark(int origin) {
+        return origin < origins.length ? origins[origin].aboveWatermark() : new int[0];
+    }
+
+    /**
+     * Add every identifier of an origin up to the given watermark, plus the given ones above it.
+     *
+     * @param origin    The index (in the {@link ReplicaRegistry}) of the replica.
+     * @param watermark The counter up to which all operations of the origin are known.
+     * @param above     Other counters of the origin that are known.
+     */
+    public void addAll(int origin, int watermark, int[] above) {
+        final Origin entry = ensureOrigin(origin);
+        entry.raiseWatermark(watermark);
+        for (int counter : above) {
+            entry.add(counter);
+        }
+    }
+
+    /**
+     * Add every identifier in the given set to this one.
+     *
+     * @param other The set to add the identifiers from.
+     */
+    public void addAll(OperationIdSet other) {
+        for (int origin = 0; origin < other.originCount(); origin++) {
+            addAll(origin, other.getWatermark(origin), other.getAboveWatermark(origin));
+        }
+    }
+
+    /**
+     * @return A copy of this set, which is not affected by further changes to this one.
+     */
+    public OperationIdSet copy() {
+        final OperationIdSet copy = new OperationIdSet();
+        copy.origins = new Origin[origins.length];
+        for (int i = 0; i < origins.length; i++) {
+            copy.origins[i] = origins[i].copy();
+        }
+        return copy;
+    }
+
+    private Origin ensureOrigin(int origin) {
+        if (origin >= origins.length) {
+            final int length = origins.length;
+            origins = Arrays.copyOf(origins, origin + 1);
+            for (int i = length; i < origins.length; i++) {
+                origins[i] = new Origin();
+            }
+        }
+        return origins[origin];
+    }
+
+    /**
+     * The identifiers of a single origin: its watermark, and the words of the bitmap of the counters above it. Bit
+     * {@code b} of the word at position {@code p} stands for counter {@code p * 64 + b}; only counters above the
+     * watermark are ever set, and words with no bit set are removed.
+     */
+    private static class Origin {
+
+        private static final int[] NO_POSITIONS = new int[0];
+        private static final long[] NO_WORDS = new long[0];
+
+        private int watermark = 0;
+        // Ascending; only the first wordCount entries are used
+        private int[] positions = NO_POSITIONS;
+        private long[] words = NO_WORDS;
+        private int wordCount = 0;
+
+        boolean contains(int counter) {
+            if (counter <= watermark) {
+                return true;
+            }
+            final int word = find(counter >>> 6);
+            return word >= 0 && (words[word] & (1L << counter)) != 0;
+        }
+
+        boolean add(int counter) {
+            if (counter <= watermark) {
+                return false;
+            }
+            int word = find(counter >>> 6);
+            if (word < 0) {
+                word = -word - 1;
+                insert(word, counter >>> 6);
+            } else if ((words[word] & (1L << counter)) != 0) {
+                return false;
+            }
+            words[word] |= 1L << counter;
+            if (counter == watermark + 1) {
+                advanceWatermark();
+            }
+            return true;
+        }
+
+        /**
+         * Raise the watermark to the given counter (if it is higher), clearing the bits it now covers.
+         */
+        void raiseWatermark(int counter) {
+            if (counter <= watermark) {
+                return;
+            }
+            watermark = counter;
+            clearCovered();
+            advanceWatermark();
+        }
+
+        int[] aboveWatermark() {
+            int count = 0;
+            for (int i = 0; i < wordCount; i++) {
+                count += Long.bitCount(words[i]);
+            }
+            final int[] counters = new int[count];
+            int next = 0;
+            for (int i = 0; i < wordCount; i++) {
+                long word = words[i];
+                while (word != 0) {
+                    counters[next++] = (positions[i] << 6) + Long.numberOfTrailingZeros(word);
+                    word &= word - 1;
+                }
+            }
+            return counters;
+        }
+
+        Origin copy() {
+            final Origin copy = new Origin();
+            copy.watermark = watermark;
+            copy.positions = Arrays.copyOf(positions, wordCount);
+            copy.words = Arrays.copyOf(words, wordCount);
+            copy.wordCount = wordCount;
+            return copy;
+        }
+
+        /**
+         * Move the watermark past the counters known right after it, a whole word at a time.
+         */
+        private void advanceWatermark() {
+            while (wordCount > 0) {
+                final int next = watermark + 1;
+                if (positions[0] != next >>> 6) {
+                    return;
+                }
+                // Bits below the watermark are clear, so the known counters right after it are the trailing ones
+                final int run = Long.numberOfTrailingZeros(~(words[0] >>> next));
+                if (run == 0) {
+                    return;
+                }
+                watermark += run;
+                clearCovered();
+            }
+        }
+
+        /**
+         * Clear the bits of the counters up to the watermark, removing the words left with no bit set. Only the first
+         * words can have such bits, since the words are ordered.
+         */
+        private void clearCovered() {
+            final int position = watermark >>> 6;
+            int removed = 0;
+            while (removed < wordCount && positions[removed] < position) {
+                removed++;
+            }
+            if (removed < wordCount && positions[removed] == position) {
+                // Clears bits 0 to (watermark % 64), inclusive
+                words[removed] &= -2L << watermark;
+                if (words[removed] == 0) {
+                    removed++;
+                }
+            }
+            if (removed > 0) {
+                System.arraycopy(positions, removed, positions, 0, wordCount - removed);
+                System.arraycopy(words, removed, words, 0, wordCount - removed);
+                wordCount -= removed;
+            }
+        }
+
+        private int find(int position) {
+            return Arrays.binarySearch(positions, 0, wordCount, position);
+        }
+
+        private void insert(int index, int position) {
+            if (wordCount == positions.length) {
+                final int capacity = Math.max(4, wordCount * 2);
+                positions = Arrays.copyOf(positions, capacity);
+                words = Arrays.copyOf(words, capacity);
+            }
+            System.arraycopy(positions, index, positions, index + 1, wordCount - index);
+            System.arraycopy(words, index, words, index + 1, wordCount - index);
+            positions[index] = position;
+            words[index] = 0;
+            wordCount++;
+        }
+    }
+
+}
@@ -0,0 +1,77 @@
+package pt.tecnico.distledger.server.domain;
+
+import pt.tecnico.distledger.common.VectorClock;
+import pt.tecnico.distledger.server.domain.operation.Operation;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Index of operations by the replica they originated from, ordered by their origin counter.
+ * <p>
+ * The operations of an origin after a given counter (e.g., the ones another replica has not acknowledged) are found
+ * with a range lookup, so finding the operations not covered by a timestamp takes time proportional to their number
+ * (plus a logarithmic lookup per origin), instead of to the number of indexed operations.
+ * <p>
+ * This class is not thread-safe; callers must ensure mutual exclusion.
+ */
+public class OriginIndex {
+
+    // Indexed by the replica's index in the ReplicaRegistry, then by the origin counter
+    private final List<NavigableMap<Integer, Operation>> index = new ArrayList<>();
+    private int size = 0;
+
+    /**
+     * Add an operation to the index.
+     *
+     * @param operation The operation to add.
+     * @return true if the index did not have an operation with the same origin and counter, false otherwise (in which
+     *         case the index is not changed).
+     */
+    public boolean add(Operation operation) {
+        while (index.size() <= operation.getOriginIndex()) {
+            index.add(new TreeMap<>());
+        }
+        if (index.get(operation.getOriginIndex()).putIfAbsent(operation.getOriginCounter(), operation) != null) {
+            return false;
+        }
+        size++;
+        return true;
+    }
+
+    /**
+     * Remove an operation from the index.
+     *
+     * @param operation The operation to remove.
+     */
+    public void remove(Operation operation) {
+        if (operation.getOriginIndex() < index.size()
+                && index.get(operation.getOriginIndex()).remove(operation.getOriginCounter(), operation)) {
+            size--;
+        }
+    }
+
+    /**
+     * Add the indexed operations not covered by the given timestamp to a list, that is, the operations whose counter
+     * is greater than the entry of their origin in the timestamp. They are added grouped by origin, in ascending order
+     * of their counter.
+     *
+     * @param timestamp  The timestamp covering the operations to skip.
+     * @param operations The list to add the operations to.
+     */
+    public void collectNotCoveredBy(VectorClock timestamp, List<Operation> operations) {
+        for (int origin = 0; origin < index.size(); origin++) {
+            operations.addAll(index.get(origin).tailMap(timestamp.getValue(origin), false).values());
+        }
+    }
+
+    /**
+     * @return The number of indexed operations.
+     */
+    public int size() {
+        return size;
+    }
+
+}
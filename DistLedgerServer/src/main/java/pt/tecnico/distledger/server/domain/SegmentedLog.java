@@ -0,0 +1,177 @@
+package pt.tecnico.distledger.server.domain;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Append-only log split into fixed-size segments.
+ * <p>
+ * Appending never copies previously appended elements, so its cost does not depend on the size of the log. Only the
+ * (small) segment directory is copied when it runs out of space.
+ * <p>
+ * Elements keep their position for as long as they are in the log, but the oldest ones can be discarded by truncating
+ * the head of the log, which releases the segments that only held discarded elements.
+ * <p>
+ * There must be a single writer at a time, but readers do not need any synchronization: an element is only published
+ * (by updating the volatile size) after it has been written into the current segment directory, and segments are never
+ * modified afterwards. Growing or truncating the log replaces the segment directory instead of modifying the entries
+ * readers may use, so readers iterating over a log see a consistent snapshot of it, even if elements are appended or
+ * its head is truncated in the meantime. Readers must read the size, then the directory, then the first position.
+ *
+ * @param <T> The type of the elements in the log.
+ */
+public class SegmentedLog<T> {
+
+    private static final int SEGMENT_SHIFT = 12;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_SHIFT;
+    private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+    private volatile Object[][] segments = new Object[16][];
+    private volatile int first = 0;
+    private volatile int size = 0;
+
+    /**
+     * Append an element to the end of the log. Must not be called concurrently with other writes.
+     *
+     * @param element The element to append.
+     */
+    public void append(T element) {
+        final int index = this.size;
+        final int segment = index >>> SEGMENT_SHIFT;
+
+        Object[][] directory = this.segments;
+        if (segment == directory.length) {
+            directory = Arrays.copyOf(directory, directory.length * 2);
+            this.segments = directory;
+        }
+        if (directory[segment] == null) {
+            directory[segment] = new Object[SEGMENT_SIZE];
+        }
+        directory[segment][index & SEGMENT_MASK] = element;
+
+        this.size = index + 1;
+    }
+
+    /**
+     * Get the element at the given position of the log.
+     *
+     * @param index The position of the element.
+     * @return The element at the given position.
+     * @throws IndexOutOfBoundsException If the position is not within the published (and not discarded) elements of
+     *                                   the log.
+     */
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        // Same order as when taking a view
+        final int to = this.size;
+        final Object[][] directory = this.segments;
+        if (index < this.first || index >= to) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return (T) directory[index >>> SEGMENT_SHIFT][index & SEGMENT_MASK];
+    }
+
+    /**
+     * @return The number of elements published to the log, including the discarded ones. This is also the position
+     *         of the next element to be appended.
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * @return The position of the first element that has not been discarded.
+     */
+    public int first() {
+        return this.first;
+    }
+
+    /**
+     * Discard the elements before the given position. Must not be called concurrently with other writes.
+     *
+     * @param position The position of the first element to keep.
+     * @throws IndexOutOfBoundsException If the position is after the end of the log.
+     */
+    public void truncateHead(int position) {
+        if (position > this.size) {
+            throw new IndexOutOfBoundsException(position);
+        }
+        if (position <= this.first) {
+            return;
+        }
+        final int firstSegment = this.first >>> SEGMENT_SHIFT;
+        final int newFirstSegment = position >>> SEGMENT_SHIFT;
+        this.first = position;
+        if (newFirstSegment > firstSegment) {
+            // Readers might still be iterating over the released segments, so they are removed from a copy
+            final Object[][] directory = this.segments.clone();
+            Arrays.fill(directory, firstSegment, newFirstSegment, null);
+            this.segments = directory;
+        }
+    }
+
+    /**
+     * Take a snapshot of the log, which can be iterated over even after other elements are appended or the head of
+     * the log is truncated.
+     *
+     * @return A view of the elements currently in the log.
+     */
+    public View<T> view() {
+        // The size must be read before the directory: appending publishes the size only after the element is in the
+        // current directory, so any later directory holds every element up to that size, even if it has grown since.
+        // The directory must be read before the first position: truncating updates the first position before
+        // replacing the directory, so any previous directory still holds every element from the first position on
+        final int to = this.size;
+        final Object[][] directory = this.segments;
+        final int from = this.first;
+        // The head may have been truncated past the size read, in which case every element read has been discarded
+        return new View<>(directory, from, Math.max(from, to));
+    }
+
+    /**
+     * Iterate over a snapshot of the log, in order. Elements appended during the iteration are not included.
+     *
+     * @param action The action to run for every element.
+     */
+    public void forEach(Consumer<? super T> action) {
+        view().forEach(action);
+    }
+
+    /**
+     * An immutable view of the elements of the log at a point in time.
+     *
+     * @param directory The segment directory at that point in time.
+     * @param from      The position of the first element in the view.
+     * @param to        The position after the last element in the view.
+     * @param <T>       The type of the elements in the log.
+     */
+    public record View<T>(Object[][] directory, int from, int to) {
+
+        /**
+         * @return The number of elements in this view.
+         */
+        public int size() {
+            return to - from;
+        }
+
+        /**
+         * Iterate over the elements in this view, in order.
+         *
+         * @param action The action to run for every element.
+         */
+        @SuppressWarnings("unchecked")
+        public void forEach(Consumer<? super T> action) {
+            int index = from;
+            while (index < to) {
+                final Object[] elements = directory[index >>> SEGMENT_SHIFT];
+                final int segmentStart = index & ~SEGMENT_MASK;
+                final int end = Math.min(SEGMENT_SIZE, to - segmentStart);
+                for (int i = index & SEGMENT_MASK; i < end; i++) {
+                    action.accept((T) elements[i]);
+                }
+                index = segmentStart + end;
+            }
+        }
+    }
+
+}
@@ -4,23 +4,40 @@ import lombok.CustomLog;
 import lombok.Getter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.VisibleForTesting;
+import pt.tecnico.distledger.common.ReplicaRegistry;
 import pt.tecnico.distledger.common.VectorClock;
 import pt.tecnico.distledger.server.domain.operation.CreateOp;
 import pt.tecnico.distledger.server.domain.operation.Operation;
 import pt.tecnico.distledger.server.domain.operation.TransferOp;
 import pt.tecnico.distledger.server.exceptions.AccountNotFoundException;
 import pt.tecnico.distledger.server.exceptions.InvalidAmountException;
+import pt.tecnico.distledger.server.exceptions.NotYetConsistentException;
 import pt.tecnico.distledger.server.exceptions.ServerUnavailableException;
 import pt.tecnico.distledger.server.exceptions.TransferBetweenSameAccountException;
+import pt.tecnico.distledger.server.persistence.DisabledOperationArchive;
+import pt.tecnico.distledger.server.persistence.DisabledOperationLog;
+import pt.tecnico.distledger.server.persistence.OperationArchive;
+import pt.tecnico.distledger.server.persistence.OperationLog;
+import pt.tecnico.distledger.server.persistence.Snapshot;
 import pt.tecnico.distledger.server.visitor.ExecuteOperationVisitor;
 import pt.tecnico.distledger.server.visitor.OperationVisitor;
 
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
 
 @Getter
 @CustomLog(topic = "Server State")
@@ -28,14 +45,33 @@ public class ServerState {
 
     public static final String BROKER_ID = "broker";
     public static final int BROKER_INITIAL_AMOUNT = 1000;
+    /**
+     * How long a balance read waits for this replica to catch up with the client's timestamp, by default.
+     */
+    public static final long BALANCE_TIMEOUT_MILLIS = Long.getLong("balance.timeout", 10_000);
+    private static final int APPLY_QUEUE_CAPACITY = 4096;
+    // How many times a balance read spins while a batch is being executed, before parking between retries
+    private static final int READ_SPIN_ATTEMPTS = 16;
+    private static final long READ_BACKOFF_NANOS = 10_000;
     private final Ledger ledger;
     private final Map<String, Account> accounts;
     private final AtomicBoolean active;
     private final String qualifier;
+    private final OperationLog operationLog;
 
     private final VectorClock replicaTimestamp = new VectorClock();
     private final VectorClock valueTimestamp = new VectorClock();
-    private final Map<String, VectorClock> gossipTimestampMap = new HashMap<>();
+    private final Map<String, VectorClock> gossipTimestampMap = new ConcurrentHashMap<>();
+
+    // Holds a frozen copy of the value timestamp, replaced whenever it changes, so that reads do not need its monitor
+    private final TimestampWaiters valueTimestampWaiters = new TimestampWaiters();
+    // Seqlock over the balances and the published value timestamp: odd while a (bounded) batch of operations is being
+    // executed
+    private final AtomicLong valueVersion = new AtomicLong();
+    private final BalanceWatchers balanceWatchers = new BalanceWatchers(this::readBalanceIfPresent);
+    private final ExecuteOperationVisitor executeOperationVisitor;
+    // Owns the order in which operations are accepted, stabilized and executed
+    private final LedgerApplier applier;
 
     @VisibleForTesting
     public ServerState() {
@@ -43,59 +79,167 @@ public class ServerState {
     }
 
     public ServerState(String qualifier) {
+        this(qualifier, new DisabledOperationLog());
+    }
+
+    /**
+     * Create the state of a replica whose accepted operations are recorded in the given log. Operations are only
+     * acknowledged (to clients and other replicas) after being durable in the log.
+     *
+     * @param qualifier    The qualifier of the replica.
+     * @param operationLog The log to record accepted operations in.
+     */
+    public ServerState(String qualifier, OperationLog operationLog) {
+        this(qualifier, operationLog, new DisabledOperationArchive());
+    }
+
+    /**
+     * Create the state of a replica whose accepted operations are recorded in the given log, and whose oldest stable
+     * operations are moved to the given archive when discarded from the ledger.
+     *
+     * @param qualifier        The qualifier of the replica.
+     * @param operationLog     The log to record accepted operations in.
+     * @param operationArchive The archive to move discarded operations to.
+     */
+    public ServerState(String qualifier, OperationLog operationLog, OperationArchive operationArchive) {
         this.accounts = new ConcurrentHashMap<>();
-        this.ledger = new Ledger(this::canOperationBeStable, this::executeOperation);
+        this.executeOperationVisitor = new ExecuteOperationVisitor(this.accounts, this.balanceWatchers::balanceChanged);
+        this.operationLog = operationLog;
+        this.ledger = new Ledger(
+                this.valueTimestamp,
+                this::executeOperation,
+                this::publishValueTimestamp,
+                operationLog,
+                operationArchive
+        );
         this.active = new AtomicBoolean(true);
         createBroker();
         this.qualifier = qualifier;
+        ReplicaRegistry.indexOf(qualifier);
+        this.applier = new LedgerApplier("ledger-applier-" + qualifier, APPLY_QUEUE_CAPACITY);
     }
 
     public OperationResult<Integer> getBalance(
             String userId,
             VectorClock prevTimestamp
-    ) throws AccountNotFoundException, ServerUnavailableException {
+    ) throws AccountNotFoundException, NotYetConsistentException, ServerUnavailableException {
+        return getBalance(userId, prevTimestamp, BALANCE_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * Get the balance of an account once this replica has caught up with the client's previous timestamp, blocking the
+     * calling thread while waiting for operations to be propagated.
+     *
+     * @param userId        The ID of the account.
+     * @param prevTimestamp The client's previous timestamp.
+     * @param timeoutMillis How long to wait for this replica to catch up, in milliseconds.
+     * @return The balance.
+     * @throws NotYetConsistentException If this replica has not caught up in time.
+     * @see #getBalanceAsync
+     */
+    public OperationResult<Integer> getBalance(
+            String userId,
+            VectorClock prevTimestamp,
+            long timeoutMillis
+    ) throws AccountNotFoundException, NotYetConsistentException, ServerUnavailableException {
         // We check if the client's previous timestamp is consistent with the server's -- that is, if this replica still
         // needs to wait for operations to be propagated in order to return a consistent result.
-        // The condition verified is: !valueTimestamp.isNewerThanOrEqualTo(prevTimestamp) -- if this is true, we need to keep waiting
-        // For this, we use the wait/notify mechanism
         ensureServerIsActive();
-        synchronized (this.valueTimestamp) {
-            while (!this.valueTimestamp.isNewerThanOrEqualTo(prevTimestamp)) {
-                try {
-                    this.valueTimestamp.wait();
-                } catch (InterruptedException e) {
-                    log.error("Interrupted while waiting for value timestamp to be updated", e);
-                }
+        if (this.valueTimestampWaiters.current().isNewerThanOrEqualTo(prevTimestamp)) {
+            return readBalance(userId);
+        }
+        try {
+            return getBalanceAsync(userId, prevTimestamp, timeoutMillis).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof AccountNotFoundException cause) {
+                throw cause;
+            } else if (e.getCause() instanceof NotYetConsistentException cause) {
+                throw cause;
+            } else if (e.getCause() instanceof ServerUnavailableException cause) {
+                throw cause;
             }
+            throw e;
+        }
+    }
 
+    /**
+     * Get the balance of an account once this replica has caught up with the client's previous timestamp, without
+     * blocking the calling thread while waiting for operations to be propagated.
+     *
+     * @param userId        The ID of the account.
+     * @param prevTimestamp The client's previous timestamp.
+     * @param timeoutMillis How long to wait for this replica to catch up, in milliseconds.
+     * @return A future completed with the balance, or failed with an {@link AccountNotFoundException}, a
+     *         {@link ServerUnavailableException}, or a {@link NotYetConsistentException} if this replica has not caught
+     *         up in time.
+     */
+    public CompletableFuture<OperationResult<Integer>> getBalanceAsync(
+            String userId,
+            VectorClock prevTimestamp,
+            long timeoutMillis
+    ) {
+        try {
             ensureServerIsActive();
-            return new OperationResult<>(
-                    getAccount(userId)
-                            .orElseThrow(() -> new AccountNotFoundException(userId))
-                            .getBalance(),
-                    this.valueTimestamp
-            );
+        } catch (ServerUnavailableException e) {
+            return CompletableFuture.failedFuture(e);
         }
+        return this.valueTimestampWaiters.await(prevTimestamp)
+                .orTimeout(timeoutMillis, TimeUnit.MILLISECONDS)
+                .handle((ignored, failure) -> {
+                    try {
+                        if (failure instanceof TimeoutException) {
+                            throw new NotYetConsistentException(qualifier);
+                        } else if (failure != null) {
+                            throw new CompletionException(failure);
+                        }
+                        ensureServerIsActive();
+                        return readBalance(userId);
+                    } catch (AccountNotFoundException | NotYetConsistentException | ServerUnavailableException e) {
+                        throw new CompletionException(e);
+                    }
+                });
+    }
+
+    /**
+     * Watch the balance of an account once this replica has caught up with the client's previous timestamp, sending
+     * the current balance and then the new balance whenever an executed operation changes it.
+     *
+     * @param userId        The ID of the account.
+     * @param prevTimestamp The client's previous timestamp.
+     * @param timeoutMillis How long to wait for this replica to catch up, in milliseconds.
+     * @param listener      The listener to send the balance to.
+     * @return A future completed with the watch, or failed like {@link #getBalanceAsync}.
+     */
+    public CompletableFuture<BalanceWatchers.Watch> watchBalance(
+            String userId,
+            VectorClock prevTimestamp,
+            long timeoutMillis,
+            BalanceWatchers.Listener listener
+    ) {
+        return getBalanceAsync(userId, prevTimestamp, timeoutMillis).thenApply(ignored -> {
+            final BalanceWatchers.Watch watch = this.balanceWatchers.watch(userId, listener);
+            watch.flush();
+            return watch;
+        });
     }
 
     public OperationResult<Void> createAccount(
             @NotNull String userId,
             VectorClock prevTimestamp
-    ) throws ServerUnavailableException {
+    ) throws ServerUnavailableException, NotYetConsistentException {
         ensureServerIsActive();
+        ensureCaughtUpWithOwnCounter(prevTimestamp);
 
-        int currentReplicaClockValue;
-        synchronized (this.replicaTimestamp) {
-            this.replicaTimestamp.incrementClock(qualifier);
-            currentReplicaClockValue = this.replicaTimestamp.getValue(this.qualifier);
-        }
-        VectorClock uniqueTimestamp = prevTimestamp.clone();
-        uniqueTimestamp.setValue(qualifier, currentReplicaClockValue);
+        // The operation's counter is assigned by the apply thread, so operations are accepted in the order of their
+        // counters
+        final VectorClock uniqueTimestamp = apply(() -> {
+            final VectorClock timestamp = nextUniqueTimestamp(prevTimestamp);
+            ledger.addUnstable(new CreateOp(userId, prevTimestamp, timestamp, false));
+            return timestamp;
+        });
+        operationLog.sync();
 
-        CreateOp pendingOperation = new CreateOp(userId, prevTimestamp, uniqueTimestamp, false);
-        ledger.addUnstable(pendingOperation);
-
-        log.debug("Replica's current timestamp: %s", replicaTimestamp);
+        log.debug("Created operation with timestamp: %s", uniqueTimestamp);
         return new OperationResult<>(null, uniqueTimestamp);
     }
 
@@ -104,7 +248,8 @@ public class ServerState {
             @NotNull String toUserId,
             int amount,
             VectorClock prevTimestamp
-    ) throws ServerUnavailableException, InvalidAmountException, TransferBetweenSameAccountException {
+    ) throws ServerUnavailableException, InvalidAmountException, TransferBetweenSameAccountException,
+            NotYetConsistentException {
         ensureServerIsActive();
 
         if (fromUserId.equals(toUserId)) {
@@ -114,20 +259,73 @@ public class ServerState {
         if (amount <= 0) {
             throw new InvalidAmountException(amount);
         }
+        ensureCaughtUpWithOwnCounter(prevTimestamp);
 
-        int currentReplicaClockValue;
-        synchronized (this.replicaTimestamp) {
-            this.replicaTimestamp.incrementClock(qualifier);
-            currentReplicaClockValue = this.replicaTimestamp.getValue(this.qualifier);
+        final VectorClock uniqueTimestamp = apply(() -> {
+            final VectorClock timestamp = nextUniqueTimestamp(prevTimestamp);
+            ledger.addUnstable(new TransferOp(fromUserId, toUserId, amount, prevTimestamp, timestamp, false));
+            return timestamp;
+        });
+        operationLog.sync();
+        log.debug("Created operation with timestamp: %s", uniqueTimestamp);
+        return new OperationResult<>(null, uniqueTimestamp);
+    }
+
+    /**
+     * Accept a batch of transfers that all depend on the same previous timestamp. Every transfer is validated before
+     * any of them is accepted, and then they are assigned consecutive counters of this replica and added to the ledger
+     * at once, so the whole batch is acknowledged after a single wait for the operation log.
+     *
+     * @param transfers     The transfers, in the order they are assigned counters.
+     * @param prevTimestamp The previous timestamp of every transfer.
+     * @return The counter assigned to the first transfer, and the unique timestamp of the last one (or the previous
+     *         timestamp, if there are no transfers).
+     */
+    public OperationResult<Integer> batchTransfer(
+            @NotNull List<Transfer> transfers,
+            VectorClock prevTimestamp
+    ) throws ServerUnavailableException, InvalidAmountException, TransferBetweenSameAccountException,
+            NotYetConsistentException {
+        ensureServerIsActive();
+
+        for (Transfer transfer : transfers) {
+            if (transfer.fromUserId().equals(transfer.toUserId())) {
+                throw new TransferBetweenSameAccountException(transfer.fromUserId(), transfer.toUserId());
+            }
+            if (transfer.amount() <= 0) {
+                throw new InvalidAmountException(transfer.amount());
+            }
+        }
+        if (transfers.isEmpty()) {
+            return new OperationResult<>(0, prevTimestamp);
         }
-        VectorClock uniqueTimestamp = prevTimestamp.clone();
-        uniqueTimestamp.setValue(qualifier, currentReplicaClockValue);
+        ensureCaughtUpWithOwnCounter(prevTimestamp);
 
-        TransferOp pendingOperation =
-                new TransferOp(fromUserId, toUserId, amount, prevTimestamp, uniqueTimestamp, false);
-        ledger.addUnstable(pendingOperation);
-        log.debug("Replica's current timestamp: %s", this.replicaTimestamp);
-        return new OperationResult<>(null, uniqueTimestamp);
+        final OperationResult<Integer> result = apply(() -> {
+            final int firstCounter = reserveCounters(transfers.size());
+            final List<Operation> operations = new ArrayList<>(transfers.size());
+            VectorClock timestamp = null;
+            for (int i = 0; i < transfers.size(); i++) {
+                final Transfer transfer = transfers.get(i);
+                timestamp = prevTimestamp.clone();
+                timestamp.setValue(qualifier, firstCounter + i);
+                operations.add(
+                        new TransferOp(
+                                transfer.fromUserId(),
+                                transfer.toUserId(),
+                                transfer.amount(),
+                                prevTimestamp,
+                                timestamp,
+                                false
+                        )
+                );
+            }
+            ledger.addAllUnstable(operations);
+            return new OperationResult<>(firstCounter, timestamp);
+        });
+        operationLog.sync();
+        log.debug("Created %d operation(s) up to timestamp: %s", transfers.size(), result.vectorClock());
+        return result;
     }
 
     public void activate() {
@@ -139,53 +337,267 @@ public class ServerState {
     }
 
     /**
-     * Get operations to be sent to another replica with the given qualifier.
+     * Get operations to be sent to another replica with the given qualifier, that is, the operations that replica has
+     * not acknowledged yet.
      *
      * @param visitor   The visitor to be called with every operation to be sent to the replica.
      * @param qualifier The qualifier of the replica to send operations to.
      */
     public void operateOverLedgerToPropagateToReplica(OperationVisitor visitor, String qualifier) {
-        final VectorClock lastTimestamp = gossipTimestampMap.getOrDefault(qualifier, new VectorClock());
+        final VectorClock acknowledgedTimestamp = gossipTimestampMap.getOrDefault(qualifier, new VectorClock());
 
-        ledger.operateOverLedger(
-                visitor,
-                operation -> !lastTimestamp.isNewerThanOrEqualTo(operation.getUniqueTimestamp())
-        );
+        ledger.operateOverLedgerNotCoveredBy(visitor, acknowledgedTimestamp);
+    }
+
+    /**
+     * Get operations to be sent to several replicas at once, in a single pass over the ledger: the operations that at
+     * least one of the replicas has not acknowledged yet. Operations every replica has acknowledged are skipped with a
+     * single comparison, so the visitor only has to sort the remaining ones by replica.
+     *
+     * @param visitor                The visitor to be called with every operation to be sent to any of the replicas.
+     * @param acknowledgedTimestamps The timestamps acknowledged by the replicas, as given by
+     *                               {@link #getGossipTimestamp(String)}.
+     */
+    public void operateOverLedgerToPropagateToReplicas(
+            OperationVisitor visitor,
+            Collection<VectorClock> acknowledgedTimestamps
+    ) {
+        if (acknowledgedTimestamps.isEmpty()) {
+            return;
+        }
+        final VectorClock acknowledgedByAll = acknowledgedTimestamps.stream()
+                .reduce(ServerState::minimum)
+                .orElseThrow();
+
+        ledger.operateOverLedgerNotCoveredBy(visitor, acknowledgedByAll);
+    }
+
+    /**
+     * Get the timestamp acknowledged by another replica, that is, the one covering the operations that do not have to
+     * be sent to it again.
+     *
+     * @param qualifier The qualifier of the other replica.
+     * @return The (frozen) acknowledged timestamp, which is empty if the replica has not acknowledged any.
+     */
+    public VectorClock getGossipTimestamp(String qualifier) {
+        return gossipTimestampMap.getOrDefault(qualifier, new VectorClock().freeze());
     }
 
     /**
-     * Save the timestamp of the last operation propagated to this replica.
+     * Save the timestamp acknowledged by another replica, that is, the known timestamp it returned after receiving
+     * operations from this one. Acknowledged timestamps only move forward.
      *
      * @param qualifier The qualifier of the replica to save this timestamp of.
-     * @param timestamp The timestamp to save.
+     * @param timestamp The timestamp acknowledged by the replica.
      */
     public void updateGossipTimestamp(String qualifier, VectorClock timestamp) {
-        gossipTimestampMap.put(qualifier, timestamp);
+        gossipTimestampMap.merge(qualifier, timestamp.clone().freeze(), (previous, acknowledged) -> {
+            final VectorClock merged = previous.clone();
+            merged.updateVectorClock(acknowledged);
+            return merged.freeze();
+        });
+    }
+
+    /**
+     * Estimate how many operations known by this replica have not been acknowledged by another replica. Operations
+     * received out of order (above the known timestamp) are not counted.
+     *
+     * @param qualifier The qualifier of the other replica.
+     * @return The estimated number of operations the other replica is missing.
+     */
+    public long getGossipBacklog(String qualifier) {
+        final VectorClock knownTimestamp = ledger.getKnownTimestamp();
+        final VectorClock acknowledgedTimestamp = gossipTimestampMap.getOrDefault(qualifier, new VectorClock());
+        long backlog = 0;
+        for (int i = 0; i < knownTimestamp.length(); i++) {
+            backlog += Math.max(0, knownTimestamp.getValue(i) - acknowledgedTimestamp.getValue(i));
+        }
+        return backlog;
+    }
+
+    /**
+     * Get the timestamp of the operations known by this replica, to be acknowledged to the replicas that send
+     * operations to it.
+     *
+     * @return A new vector clock with the known timestamp.
+     * @see Ledger#getKnownTimestamp()
+     */
+    public VectorClock getKnownTimestamp() {
+        return ledger.getKnownTimestamp();
     }
 
     public void operateOverLedger(OperationVisitor visitor) {
         ledger.operateOverLedger(visitor);
     }
 
-    public synchronized void addToLedger(List<Operation> newOperations) throws ServerUnavailableException {
+    public void addToLedger(List<Operation> newOperations) throws ServerUnavailableException {
         ensureServerIsActive();
-        newOperations.forEach(operation -> replicaTimestamp.updateVectorClock(operation.getUniqueTimestamp()));
-        ledger.addAllUnstable(newOperations);
+        apply(() -> {
+            synchronized (this.replicaTimestamp) {
+                newOperations.forEach(operation -> replicaTimestamp.updateVectorClock(operation.getUniqueTimestamp()));
+            }
+            ledger.addAllUnstable(newOperations);
+            return null;
+        });
+        operationLog.sync();
     }
 
-    private boolean canOperationBeStable(Operation operation) {
-        return this.valueTimestamp.isNewerThanOrEqualTo(operation.getPrevTimestamp());
+    /**
+     * Rebuild the state of this replica from the operations recovered from its operation log. Must be called before
+     * the replica starts accepting requests.
+     *
+     * @param recoveredOperations The operations recovered from the log, in the order they were appended to it.
+     */
+    public synchronized void recover(List<Operation> recoveredOperations) {
+        synchronized (this.replicaTimestamp) {
+            recoveredOperations.forEach(
+                    operation -> replicaTimestamp.updateVectorClock(operation.getUniqueTimestamp())
+            );
+        }
+        ledger.recover(recoveredOperations);
+        log.debug("Replica's timestamp after recovery: %s", replicaTimestamp);
+    }
+
+    /**
+     * Take a snapshot of the state of this replica.
+     *
+     * @return The snapshot.
+     * @see Ledger#takeSnapshot
+     */
+    public Snapshot takeSnapshot() {
+        return ledger.takeSnapshot(
+                () -> {
+                    final Map<String, Integer> balances = new HashMap<>(accounts.size() * 2);
+                    accounts.values().forEach(account -> balances.put(account.getUserId(), account.getBalance()));
+                    return balances;
+                },
+                this.valueVersion::get
+        );
+    }
+
+    /**
+     * Restore the state of this replica from a snapshot. Must be called before the replica starts accepting requests,
+     * and before recovering the operations appended to the operation log after the snapshot was taken.
+     *
+     * @param snapshot The snapshot to restore.
+     */
+    public synchronized void restore(Snapshot snapshot) {
+        accounts.clear();
+        snapshot.balances().forEach((userId, balance) -> {
+            final Account account = new Account(userId);
+            account.increaseBalance(balance);
+            accounts.put(userId, account);
+        });
+        this.valueTimestamp.updateVectorClock(snapshot.valueTimestamp());
+        this.valueTimestampWaiters.advance(this.valueTimestamp.clone(), snapshot.valueTimestamp());
+        synchronized (this.replicaTimestamp) {
+            this.replicaTimestamp.updateVectorClock(snapshot.replicaTimestamp());
+        }
+        ledger.restore(snapshot);
+        log.debug("Replica's timestamp after restoring snapshot: %s", replicaTimestamp);
+    }
+
+    /**
+     * Discard the oldest stable operations that every given replica has acknowledged from the ledger into the archive,
+     * since they no longer need to be propagated. Nothing is discarded if there are no other replicas or if some of
+     * them has not acknowledged any operation yet.
+     *
+     * @param peers The qualifiers of the other replicas.
+     * @param limit The number of stable operations that can be discarded (including the ones already discarded).
+     * @return The number of discarded operations.
+     * @throws IOException If the discarded operations cannot be archived.
+     * @see Ledger#discardAcknowledged
+     */
+    public int discardAcknowledgedOperations(Collection<String> peers, long limit) throws IOException {
+        VectorClock acknowledgedByAll = null;
+        for (String peer : peers) {
+            final VectorClock acknowledged = gossipTimestampMap.get(peer);
+            if (acknowledged == null) {
+                return 0;
+            }
+            acknowledgedByAll = acknowledgedByAll == null ? acknowledged : minimum(acknowledgedByAll, acknowledged);
+        }
+        if (acknowledgedByAll == null) {
+            return 0;
+        }
+        final int discarded = ledger.discardAcknowledged(acknowledgedByAll, limit);
+        log.debug("Discarded %d operation(s) acknowledged by all replicas", discarded);
+        return discarded;
     }
 
+    private static VectorClock minimum(VectorClock first, VectorClock second) {
+        final VectorClock minimum = new VectorClock();
+        final int length = Math.min(first.length(), second.length());
+        for (int i = 0; i < length; i++) {
+            minimum.setValue(ReplicaRegistry.qualifierOf(i), Math.min(first.getValue(i), second.getValue(i)));
+        }
+        return minimum;
+    }
+
+    /**
+     * Execute a stabilized operation. Called by the ledger while holding its write lock, which is the only lock the
+     * value timestamp is advanced under. The first operation of a batch makes the value version odd, until the batch
+     * is published, which the ledger does at least every {@link Ledger#MAX_STABILIZED_BATCH} operations.
+     *
+     * @param operation The operation to execute.
+     */
     private void executeOperation(Operation operation) {
-        operation.accept(new ExecuteOperationVisitor(this.accounts));
-        synchronized (valueTimestamp) {
-            this.valueTimestamp.updateVectorClock(operation.getUniqueTimestamp());
-            valueTimestamp.notifyAll(); // Notifies all threads waiting for an update to the value timestamp
+        if ((this.valueVersion.get() & 1) == 0) {
+            this.valueVersion.incrementAndGet();
+        }
+        operation.accept(this.executeOperationVisitor);
+        this.valueTimestamp.updateVectorClock(operation.getUniqueTimestamp());
+    }
+
+    /**
+     * Publish the value timestamp once a batch of operations has been executed, completing the requests waiting for
+     * it. Called by the ledger while holding its write lock. The value version is made even again only once the new
+     * timestamp is published, so that it covers every balance changed by the batch.
+     *
+     * @param changed A vector clock whose non-zero entries are the ones the batch has advanced.
+     */
+    private void publishValueTimestamp(VectorClock changed) {
+        this.valueTimestampWaiters.advance(this.valueTimestamp.clone(), changed);
+        if ((this.valueVersion.get() & 1) != 0) {
+            this.valueVersion.incrementAndGet();
         }
+        this.balanceWatchers.publish();
         log.debug("Value's timestamp: %s", valueTimestamp);
     }
 
+    private OperationResult<Integer> readBalance(String userId) throws AccountNotFoundException {
+        return readBalanceIfPresent(userId).orElseThrow(() -> new AccountNotFoundException(userId));
+    }
+
+    /**
+     * Read the balance of an account along with the value timestamp, as a consistent pair: the timestamp covers exactly
+     * the operations reflected in the balance (and in whether the account exists). Balances change while a batch of
+     * operations is executed, but the timestamp covering them is only published at the end of the batch, so the read
+     * is retried while a batch is being executed, or if one was executed in the meantime. Batches are bounded, so a read
+     * only waits for the operations of the current one; it spins briefly and then parks between retries.
+     *
+     * @param userId The ID of the account.
+     * @return An optional with the balance and the value timestamp, or an empty optional if the account cannot be
+     *         found.
+     */
+    private Optional<OperationResult<Integer>> readBalanceIfPresent(String userId) {
+        for (int attempt = 1; ; attempt++) {
+            final long version = this.valueVersion.get();
+            if ((version & 1) == 0) {
+                final Optional<Account> account = getAccount(userId);
+                final int balance = account.map(Account::getBalance).orElse(0);
+                final VectorClock timestamp = this.valueTimestampWaiters.current();
+                if (this.valueVersion.get() == version) {
+                    return account.map(ignored -> new OperationResult<>(balance, timestamp));
+                }
+            } else if (attempt <= READ_SPIN_ATTEMPTS) {
+                Thread.onSpinWait();
+            } else {
+                LockSupport.parkNanos(READ_BACKOFF_NANOS);
+            }
+        }
+    }
+
     /**
      * Get an account by its ID.
      *
@@ -202,6 +614,78 @@ public class ServerState {
         accounts.put(BROKER_ID, broker);
     }
 
+    /**
+     * Stop the thread applying changes to the ledger, after applying the changes already submitted to it.
+     */
+    public void close() {
+        applier.close();
+    }
+
+    /**
+     * Apply a change to the ledger in the apply thread, waiting for it to be applied.
+     *
+     * @param change The change to apply, returning its result.
+     * @param <T>    The type of the result.
+     * @return The result of the change.
+     */
+    private <T> T apply(Supplier<T> change) {
+        try {
+            return applier.submit(change).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Assign the next counter of this replica to a new operation. Must only be called by the apply thread.
+     *
+     * @param prevTimestamp The previous timestamp of the new operation.
+     * @return The unique timestamp of the new operation.
+     */
+    private VectorClock nextUniqueTimestamp(VectorClock prevTimestamp) {
+        final VectorClock uniqueTimestamp = prevTimestamp.clone();
+        uniqueTimestamp.setValue(qualifier, reserveCounters(1));
+        return uniqueTimestamp;
+    }
+
+    /**
+     * Assign the next counters of this replica to new operations. Must only be called by the apply thread.
+     *
+     * @param count The number of counters to assign.
+     * @return The first of the consecutive counters assigned.
+     */
+    private int reserveCounters(int count) {
+        synchronized (this.replicaTimestamp) {
+            final int firstCounter = this.replicaTimestamp.getValue(this.qualifier) + 1;
+            this.replicaTimestamp.setValue(this.qualifier, firstCounter + count - 1);
+            return firstCounter;
+        }
+    }
+
+    /**
+     * Ensure this replica has already assigned every counter of its own that the client has seen, so that the counter
+     * assigned to a new operation makes its unique timestamp newer than the client's previous timestamp. Since the
+     * counters only grow, checking it before the counter is assigned is enough.
+     * <p>
+     * A client can only be ahead of this replica if the replica has lost operations it had accepted, e.g., after
+     * restarting without an operation log. It catches up once the other replicas propagate those operations back.
+     *
+     * @param prevTimestamp The client's previous timestamp.
+     * @throws NotYetConsistentException If the client has seen a counter of this replica it has not reached yet.
+     */
+    private void ensureCaughtUpWithOwnCounter(VectorClock prevTimestamp) throws NotYetConsistentException {
+        final int counter;
+        synchronized (this.replicaTimestamp) {
+            counter = this.replicaTimestamp.getValue(this.qualifier);
+        }
+        if (prevTimestamp.getValue(this.qualifier) > counter) {
+            throw new NotYetConsistentException(qualifier);
+        }
+    }
+
     private void ensureServerIsActive() throws ServerUnavailableException {
         if (!active.get()) {
             throw new ServerUnavailableException(qualifier);
@@ -0,0 +1,145 @@
+package pt.tecnico.distledger.server.domain;
+
+import org.jetbrains.annotations.VisibleForTesting;
+import pt.tecnico.distledger.common.VectorClock;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Registry of requests waiting for a vector clock (usually, the value timestamp) to become newer than or equal to the
+ * timestamp they depend on. Instead of blocking a thread, each request gets a future that is completed once its
+ * dependency is satisfied.
+ * <p>
+ * The registry holds a frozen copy of the vector clock, which is replaced whenever the vector clock advances, so that
+ * it can be read without any lock. Waiters are grouped by an entry of the vector clock they need and the value they
+ * need it to reach (see {@link DependencyIndex}), so advancing the vector clock only checks the waiters whose
+ * dependency may have just been satisfied.
+ * <p>
+ * Futures are completed asynchronously, in a single task per advance, so that whatever depends on them does not run
+ * in the thread advancing the vector clock. Futures that are completed in some other way (e.g., because they timed
+ * out) are purged from the registry once they make up most of it.
+ */
+public class TimestampWaiters {
+
+    // Waiters that stopped waiting are only purged once there are at least this many of them
+    private static final int MIN_PURGE_SIZE = 64;
+
+    private volatile VectorClock current = new VectorClock().freeze();
+
+    // Guarded by this
+    private final DependencyIndex<Waiter> waiters = new DependencyIndex<>();
+    // The registered waiters that stopped waiting; guarded by this
+    private int abandoned = 0;
+
+    /**
+     * @return The latest value of the vector clock, which must not be modified.
+     */
+    public VectorClock current() {
+        return this.current;
+    }
+
+    /**
+     * Wait for the vector clock to become newer than or equal to the required timestamp.
+     *
+     * @param required The timestamp to wait for.
+     * @return A future that is completed once the dependency is satisfied.
+     */
+    public CompletableFuture<Void> await(VectorClock required) {
+        final Waiter waiter = new Waiter();
+        synchronized (this) {
+            if (waiters.register(waiter, required, this.current)) {
+                return CompletableFuture.completedFuture(null);
+            }
+            waiter.registered = true;
+        }
+        waiter.whenComplete((ignored, failure) -> {
+            if (failure != null) {
+                abandon(waiter);
+            }
+        });
+        return waiter;
+    }
+
+    /**
+     * Publish a new value of the vector clock, and complete the futures of the requests whose dependency is now
+     * satisfied.
+     *
+     * @param current The new value of the vector clock. It is frozen, so it must not be modified afterward.
+     * @param changed A vector clock whose non-zero entries are the ones that might have advanced (usually, the
+     *                timestamp that has just been merged into the vector clock).
+     */
+    public void advance(VectorClock current, VectorClock changed) {
+        final List<Waiter> ready = new ArrayList<>();
+        synchronized (this) {
+            this.current = current.freeze();
+            waiters.advance(current, changed, waiter -> {
+                unregister(waiter);
+                ready.add(waiter);
+            });
+        }
+        if (!ready.isEmpty()) {
+            // A single task for the whole batch: with few processors, CompletableFuture's default executor would start
+            // a thread per future
+            ForkJoinPool.commonPool().execute(() -> ready.forEach(future -> future.complete(null)));
+        }
+    }
+
+    /**
+     * @return The number of requests still registered, including the ones that stopped waiting but were not purged.
+     */
+    public synchronized int size() {
+        return waiters.size();
+    }
+
+    /**
+     * @return The number of requests still registered that stopped waiting.
+     */
+    @VisibleForTesting
+    public synchronized int abandonedCount() {
+        return abandoned;
+    }
+
+    /**
+     * Count a waiter that stopped waiting, if it is still registered, purging the ones that stopped waiting once they
+     * make up most of the registry.
+     */
+    private synchronized void abandon(Waiter waiter) {
+        if (!waiter.registered) {
+            return;
+        }
+        waiter.abandoned = true;
+        if (++abandoned >= MIN_PURGE_SIZE && abandoned * 2 >= waiters.size()) {
+            waiters.removeIf(candidate -> {
+                if (!candidate.isDone()) {
+                    return false;
+                }
+                unregister(candidate);
+                return true;
+            });
+        }
+    }
+
+    /**
+     * Record that a waiter has been removed from the registry, so that it is no longer counted as abandoned.
+     */
+    private void unregister(Waiter waiter) {
+        waiter.registered = false;
+        if (waiter.abandoned) {
+            abandoned--;
+        }
+    }
+
+    /**
+     * The future of a request waiting for its dependency, along with whether it is still registered and whether it has
+     * been counted as abandoned, both guarded by the registry.
+     */
+    private static class Waiter extends CompletableFuture<Void> {
+
+        private boolean registered = false;
+        private boolean abandoned = false;
+    }
+
+}
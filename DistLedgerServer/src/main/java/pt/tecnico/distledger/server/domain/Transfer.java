@@ -0,0 +1,11 @@
+package pt.tecnico.distledger.server.domain;
+
+/**
+ * A transfer requested as part of a batch, before it is assigned its timestamps.
+ *
+ * @param fromUserId The ID of the account to transfer from.
+ * @param toUserId   The ID of the account to transfer to.
+ * @param amount     The amount to transfer.
+ */
+public record Transfer(String fromUserId, String toUserId, int amount) {
+}
@@ -14,6 +14,16 @@ public abstract class Operation {
     private final OperationType type;
     private final VectorClock prevTimestamp;
     private final VectorClock uniqueTimestamp;
+    /**
+     * The index (in the ReplicaRegistry) of the replica this operation was submitted to, that is, the only entry of
+     * the unique timestamp that is newer than the previous timestamp.
+     */
+    private final int originIndex;
+    /**
+     * The value of the origin replica's entry in the unique timestamp. Together with the origin, it identifies the
+     * operation.
+     */
+    private final int originCounter;
     @Setter
     private boolean stable;
 
@@ -28,6 +38,13 @@ public abstract class Operation {
         this.type = type;
         this.prevTimestamp = prevTimestamp.freeze();
         this.uniqueTimestamp = uniqueTimestamp.freeze();
+        this.originIndex = uniqueTimestamp.findEntryNewerThan(prevTimestamp);
+        if (this.originIndex < 0) {
+            throw new IllegalArgumentException(
+                    "The unique timestamp of an operation must be newer than its previous timestamp"
+            );
+        }
+        this.originCounter = uniqueTimestamp.getValue(this.originIndex);
         this.stable = stable;
     }
 
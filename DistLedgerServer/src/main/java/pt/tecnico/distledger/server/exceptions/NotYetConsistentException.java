@@ -0,0 +1,25 @@
+package pt.tecnico.distledger.server.exceptions;
+
+import io.grpc.Status;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+@EqualsAndHashCode(callSuper = true)
+@Getter
+public class NotYetConsistentException extends Exception implements GrpcSerializableException {
+
+    private final String serverQualifier;
+
+    public NotYetConsistentException(String serverQualifier) {
+        super(String.format(
+                "The server %s has not caught up with the client's timestamp yet. Please try again later.",
+                serverQualifier
+        ));
+        this.serverQualifier = serverQualifier;
+    }
+
+    @Override
+    public Status.Code getStatusCode() {
+        return Status.Code.UNAVAILABLE;
+    }
+}
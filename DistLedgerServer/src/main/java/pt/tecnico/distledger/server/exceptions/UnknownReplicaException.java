@@ -0,0 +1,22 @@
+package pt.tecnico.distledger.server.exceptions;
+
+import io.grpc.Status;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+@EqualsAndHashCode(callSuper = true)
+@Getter
+public class UnknownReplicaException extends Exception implements GrpcSerializableException {
+
+    private final String serverQualifier;
+
+    public UnknownReplicaException(String serverQualifier) {
+        super(String.format("The timestamp refers to an unknown server (%s)", serverQualifier));
+        this.serverQualifier = serverQualifier;
+    }
+
+    @Override
+    public Status.Code getStatusCode() {
+        return Status.Code.INVALID_ARGUMENT;
+    }
+}
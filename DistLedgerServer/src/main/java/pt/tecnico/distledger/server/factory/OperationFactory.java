@@ -0,0 +1,33 @@
+package pt.tecnico.distledger.server.factory;
+
+import pt.tecnico.distledger.common.VectorClock;
+import pt.tecnico.distledger.server.domain.operation.CreateOp;
+import pt.tecnico.distledger.server.domain.operation.Operation;
+import pt.tecnico.distledger.server.domain.operation.TransferOp;
+import pt.ulisboa.tecnico.distledger.contract.DistLedgerCommonDefinitions;
+
+public class OperationFactory {
+
+    // We ignore the stable field coming from the gRPC representation, since the operation hasn't been executed (in
+    // this replica) yet
+    public Operation createOperationFromGrpc(DistLedgerCommonDefinitions.Operation operation) {
+        return switch (operation.getType()) {
+            case OP_CREATE_ACCOUNT -> new CreateOp(
+                    operation.getUserId(),
+                    new VectorClock(operation.getPrevTimestampMap()),
+                    new VectorClock(operation.getUniqueTimestampMap()),
+                    false
+            );
+            case OP_TRANSFER_TO -> new TransferOp(
+                    operation.getUserId(),
+                    operation.getDestUserId(),
+                    operation.getAmount(),
+                    new VectorClock(operation.getPrevTimestampMap()),
+                    new VectorClock(operation.getUniqueTimestampMap()),
+                    false
+            );
+            default -> throw new IllegalArgumentException("Invalid operation");
+        };
+    }
+
+}
@@ -1,18 +1,27 @@
 package pt.tecnico.distledger.server.grpc;
 
+import io.grpc.ConnectivityState;
 import io.grpc.ManagedChannel;
 import io.grpc.ManagedChannelBuilder;
+import io.grpc.Status;
 import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ClientCallStreamObserver;
+import io.grpc.stub.ClientResponseObserver;
 import lombok.CustomLog;
+import pt.tecnico.distledger.common.VectorClock;
 import pt.ulisboa.tecnico.distledger.contract.DistLedgerCommonDefinitions.LedgerState;
 import pt.ulisboa.tecnico.distledger.contract.DistLedgerCommonDefinitions.Operation;
 import pt.ulisboa.tecnico.distledger.contract.distledgerserver.CrossServerDistLedger.PropagateStateRequest;
-import pt.ulisboa.tecnico.distledger.contract.distledgerserver.DistLedgerCrossServerServiceGrpc.DistLedgerCrossServerServiceBlockingStub;
+import pt.ulisboa.tecnico.distledger.contract.distledgerserver.CrossServerDistLedger.PropagateStateResponse;
+import pt.ulisboa.tecnico.distledger.contract.distledgerserver.DistLedgerCrossServerServiceGrpc.DistLedgerCrossServerServiceStub;
 import pt.ulisboa.tecnico.distledger.contract.namingserver.NamingServerDistLedger.ServerInfo;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
-import static pt.ulisboa.tecnico.distledger.contract.distledgerserver.DistLedgerCrossServerServiceGrpc.newBlockingStub;
+import static pt.ulisboa.tecnico.distledger.contract.distledgerserver.DistLedgerCrossServerServiceGrpc.newStub;
 
 @CustomLog(topic = "Service")
 public class CrossServerService implements AutoCloseable {
@@ -21,34 +30,58 @@ public class CrossServerService implements AutoCloseable {
 
     private final ManagedChannel channel;
 
-    private final DistLedgerCrossServerServiceBlockingStub stub;
+    private final DistLedgerCrossServerServiceStub stub;
 
-    public CrossServerService(ServerInfo serverInfo) {
+    /**
+     * Create a service to communicate with a server, through a channel built by the given builder.
+     *
+     * @param serverInfo     The server to communicate with.
+     * @param channelBuilder The builder of the channel to the server, with its options already set.
+     */
+    public CrossServerService(ServerInfo serverInfo, ManagedChannelBuilder<?> channelBuilder) {
         this.serverInfo = serverInfo;
-        channel = ManagedChannelBuilder
-                .forAddress(serverInfo.getAddress().getHost(), serverInfo.getAddress().getPort())
-                .usePlaintext()
-                .build();
-        stub = newBlockingStub(channel);
+        channel = channelBuilder.build();
+        stub = newStub(channel);
     }
 
-    public void sendLedger(List<Operation> ledger) throws StatusRuntimeException {
-        log.debug("Sending request to send ledger to server %s with %d operations", serverInfo, ledger.size());
-
-        // noinspection ResultOfMethodCallIgnored
-        stub.propagateState(
-                PropagateStateRequest
-                        .newBuilder()
-                        .setState(
-                                LedgerState
-                                        .newBuilder()
-                                        .addAllLedger(ledger)
-                                        .build()
-                        )
-                        .build()
-        );
-
-        log.debug("Sent ledger to server");
+    public ServerInfo getServerInfo() {
+        return serverInfo;
+    }
+
+    /**
+     * Get the asynchronous stub to the server. Calls through it share the same channel, so they can overlap.
+     *
+     * @return The stub.
+     */
+    public DistLedgerCrossServerServiceStub getStub() {
+        return stub;
+    }
+
+    /**
+     * Make the channel try to connect again right away, if it is waiting to retry after failing to connect.
+     *
+     * @return Whether the channel was waiting to retry.
+     */
+    public boolean reconnectIfFailing() {
+        if (channel.getState(false) != ConnectivityState.TRANSIENT_FAILURE) {
+            return false;
+        }
+        channel.resetConnectBackoff();
+        return true;
+    }
+
+    /**
+     * Open a stream to send operations to the server in several chunks.
+     *
+     * @param deadlineMillis How long the server has to acknowledge the whole stream, in milliseconds. Once it expires,
+     *                       the stream fails, even while waiting to send a chunk.
+     * @return The opened stream.
+     */
+    public LedgerStream openLedgerStream(long deadlineMillis) {
+        log.debug("Opening stream to send ledger to server %s", serverInfo);
+        final LedgerStream ledgerStream = new LedgerStream();
+        stub.withDeadlineAfter(deadlineMillis, TimeUnit.MILLISECONDS).propagateStateStream(ledgerStream);
+        return ledgerStream;
     }
 
     @Override
@@ -56,4 +89,112 @@ public class CrossServerService implements AutoCloseable {
         channel.shutdown();
     }
 
+    /**
+     * A stream of operations being sent to the server. Sending a chunk blocks while the transport is not ready to
+     * accept more messages, so that a slow receiver applies backpressure to the sender instead of having the chunks
+     * buffered in memory.
+     */
+    public class LedgerStream
+            implements ClientResponseObserver<PropagateStateRequest, PropagateStateResponse>, AutoCloseable {
+
+        private final CompletableFuture<PropagateStateResponse> response = new CompletableFuture<>();
+        private ClientCallStreamObserver<PropagateStateRequest> requestStream;
+        private int operationCount = 0;
+
+        @Override
+        public void beforeStart(ClientCallStreamObserver<PropagateStateRequest> requestStream) {
+            this.requestStream = requestStream;
+            requestStream.setOnReadyHandler(this::wakeUpSender);
+        }
+
+        /**
+         * Send a chunk of operations, waiting until the stream is ready to accept it.
+         *
+         * @param chunk The operations to send.
+         * @throws StatusRuntimeException If the stream has failed.
+         */
+        public void send(List<Operation> chunk) throws StatusRuntimeException {
+            synchronized (this) {
+                while (!requestStream.isReady() && !response.isDone()) {
+                    try {
+                        this.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw Status.CANCELLED.withCause(e).asRuntimeException();
+                    }
+                }
+            }
+            if (response.isDone()) {
+                // The server has already answered (i.e., failed) before the stream was completed
+                awaitResponse();
+                throw Status.INTERNAL.withDescription("Server closed the stream prematurely").asRuntimeException();
+            }
+
+            log.debug("Sending chunk with %d operations to server %s", chunk.size(), serverInfo);
+            requestStream.onNext(
+                    PropagateStateRequest.newBuilder()
+                            .setState(LedgerState.newBuilder().addAllLedger(chunk).build())
+                            .build()
+            );
+            operationCount += chunk.size();
+        }
+
+        /**
+         * Complete the stream and wait for the server to acknowledge it.
+         *
+         * @return The timestamp acknowledged by the server after receiving the operations.
+         * @throws StatusRuntimeException If the stream has failed.
+         */
+        public VectorClock finish() throws StatusRuntimeException {
+            requestStream.onCompleted();
+            final PropagateStateResponse propagateStateResponse = awaitResponse();
+            log.debug("Sent ledger to server %s with %d operations", serverInfo, operationCount);
+            return new VectorClock(propagateStateResponse.getReplicaTimestampMap());
+        }
+
+        /**
+         * Cancel the stream if it has not been completed.
+         */
+        @Override
+        public void close() {
+            if (!response.isDone()) {
+                requestStream.cancel("Ledger stream closed before completion", null);
+            }
+        }
+
+        @Override
+        public void onNext(PropagateStateResponse value) {
+            response.complete(value);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            response.completeExceptionally(t);
+            wakeUpSender();
+        }
+
+        @Override
+        public void onCompleted() {
+            response.completeExceptionally(
+                    Status.INTERNAL.withDescription("Server did not acknowledge the stream").asRuntimeException()
+            );
+            wakeUpSender();
+        }
+
+        private synchronized void wakeUpSender() {
+            this.notifyAll();
+        }
+
+        private PropagateStateResponse awaitResponse() throws StatusRuntimeException {
+            try {
+                return response.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw Status.CANCELLED.withCause(e).asRuntimeException();
+            } catch (ExecutionException e) {
+                throw Status.fromThrowable(e.getCause()).asRuntimeException();
+            }
+        }
+    }
+
 }
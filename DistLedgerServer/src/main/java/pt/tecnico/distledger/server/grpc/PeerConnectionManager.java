@@ -0,0 +1,169 @@
+package pt.tecnico.distledger.server.grpc;
+
+import io.grpc.ManagedChannelBuilder;
+import lombok.CustomLog;
+import pt.tecnico.distledger.common.ReplicaRegistry;
+import pt.ulisboa.tecnico.distledger.contract.namingserver.NamingServerDistLedger.ServerInfo;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Long-lived connections to the other replicas. The connection to a replica is kept for as long as the naming server
+ * lists it at the same address, so gossip rounds reuse the same channel (and its TCP and HTTP/2 connection) instead of
+ * connecting again.
+ * <p>
+ * Idle connections are kept alive with pings, so a replica that goes away is noticed before the next round. A channel
+ * whose replica cannot be reached retries connecting on its own, but backs off for up to a couple of minutes; instead,
+ * once a call to the replica fails, the channel is made to retry after a shorter backoff, which doubles with every
+ * consecutive failure.
+ */
+@CustomLog(topic = "Peer Connections")
+public class PeerConnectionManager implements AutoCloseable {
+
+    /**
+     * How often idle connections are pinged, in seconds. Replicas must accept pings this often.
+     */
+    public static final long KEEPALIVE_TIME_SECONDS = 30;
+    private static final long KEEPALIVE_TIMEOUT_SECONDS = 10;
+
+    private static final long MIN_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 10_000;
+
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+
+    /**
+     * Update the known replicas from the list given by the naming server. Connections to the replicas still listed at
+     * the same address are kept, while the ones to replicas that are no longer listed (or have moved) are closed.
+     *
+     * @param servers The other replicas registered on the naming server.
+     */
+    public synchronized void update(Collection<ServerInfo> servers) {
+        for (ServerInfo server : servers) {
+            // Client timestamps may only refer to the replicas learned from the naming server (or known otherwise)
+            ReplicaRegistry.indexOf(server.getQualifier());
+            final Peer existing = peers.get(server.getQualifier());
+            if (existing != null && existing.service.getServerInfo().getAddress().equals(server.getAddress())) {
+                continue;
+            }
+            log.debug("Connecting to replica %s at %s", server.getQualifier(), server.getAddress());
+            peers.put(server.getQualifier(), new Peer(new CrossServerService(server, channelBuilder(server))));
+            if (existing != null) {
+                existing.service.close();
+            }
+        }
+
+        final Set<String> listed = servers.stream().map(ServerInfo::getQualifier).collect(Collectors.toSet());
+        peers.entrySet().removeIf(entry -> {
+            if (listed.contains(entry.getKey())) {
+                return false;
+            }
+            log.debug("Disconnecting from replica %s, which is no longer registered", entry.getKey());
+            entry.getValue().service.close();
+            return true;
+        });
+    }
+
+    /**
+     * @return The qualifiers of the known replicas.
+     */
+    public List<String> qualifiers() {
+        return List.copyOf(peers.keySet());
+    }
+
+    /**
+     * Get the service to communicate with a replica, making its channel retry connecting if it has been backing off
+     * for long enough.
+     *
+     * @param qualifier The qualifier of the replica.
+     * @return The service, or an empty optional if the replica is not known.
+     */
+    public Optional<CrossServerService> get(String qualifier) {
+        final Peer peer = peers.get(qualifier);
+        if (peer == null) {
+            return Optional.empty();
+        }
+        peer.reconnectIfDue();
+        return Optional.of(peer.service);
+    }
+
+    /**
+     * Record that a call to a replica has failed, so its channel is made to retry connecting after a backoff.
+     *
+     * @param qualifier The qualifier of the replica.
+     */
+    public void reportFailure(String qualifier) {
+        final Peer peer = peers.get(qualifier);
+        if (peer != null) {
+            peer.failed();
+        }
+    }
+
+    /**
+     * Record that a call to a replica has succeeded, resetting its backoff.
+     *
+     * @param qualifier The qualifier of the replica.
+     */
+    public void reportSuccess(String qualifier) {
+        final Peer peer = peers.get(qualifier);
+        if (peer != null) {
+            peer.succeeded();
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        peers.values().forEach(peer -> peer.service.close());
+        peers.clear();
+    }
+
+    private static ManagedChannelBuilder<?> channelBuilder(ServerInfo server) {
+        return ManagedChannelBuilder.forAddress(server.getAddress().getHost(), server.getAddress().getPort())
+                .usePlaintext()
+                .keepAliveTime(KEEPALIVE_TIME_SECONDS, TimeUnit.SECONDS)
+                .keepAliveTimeout(KEEPALIVE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .keepAliveWithoutCalls(true);
+    }
+
+    /**
+     * The connection to a replica, and its backoff after failed calls.
+     */
+    private static class Peer {
+
+        private final CrossServerService service;
+
+        // Guarded by this
+        private long backoffMillis = 0;
+        private long retryAtNanos;
+
+        Peer(CrossServerService service) {
+            this.service = service;
+        }
+
+        synchronized void failed() {
+            backoffMillis = backoffMillis == 0 ? MIN_BACKOFF_MILLIS : Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+            retryAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoffMillis);
+        }
+
+        synchronized void succeeded() {
+            backoffMillis = 0;
+        }
+
+        synchronized void reconnectIfDue() {
+            if (backoffMillis > 0 && System.nanoTime() - retryAtNanos >= 0 && service.reconnectIfFailing()) {
+                log.debug(
+                        "Reconnecting to replica %s after backing off for %d ms",
+                        service.getServerInfo().getQualifier(),
+                        backoffMillis
+                );
+            }
+        }
+    }
+
+}
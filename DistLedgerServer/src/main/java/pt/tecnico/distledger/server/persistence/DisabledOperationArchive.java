@@ -0,0 +1,68 @@
+package pt.tecnico.distledger.server.persistence;
+
+import pt.tecnico.distledger.common.VectorClock;
+import pt.tecnico.distledger.server.domain.operation.Operation;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Operation archive that does not keep anything, so operations discarded from the ledger into it are lost. Replicas
+ * without an archive never discard operations from their ledger.
+ */
+public class DisabledOperationArchive implements OperationArchive {
+
+    private static final Segment EMPTY_SEGMENT = new Segment() {
+        @Override
+        public int size() {
+            return 0;
+        }
+
+        @Override
+        public VectorClock getMaxCounters() {
+            return new VectorClock();
+        }
+
+        @Override
+        public void forEach(Consumer<Operation> action) {
+        }
+
+        @Override
+        public void forEachNotCoveredBy(VectorClock timestamp, Consumer<Operation> action) {
+        }
+    };
+
+    @Override
+    public long size() {
+        return 0;
+    }
+
+    @Override
+    public int minSegmentSize() {
+        return 1;
+    }
+
+    @Override
+    public Segment write(List<Operation> operations) {
+        return EMPTY_SEGMENT;
+    }
+
+    @Override
+    public void add(Segment segment) {
+    }
+
+    @Override
+    public List<Segment> segments() {
+        return List.of();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return false;
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
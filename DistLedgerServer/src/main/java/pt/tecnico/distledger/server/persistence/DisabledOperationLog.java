@@ -0,0 +1,35 @@
+package pt.tecnico.distledger.server.persistence;
+
+import pt.tecnico.distledger.server.domain.operation.Operation;
+import pt.ulisboa.tecnico.distledger.contract.DistLedgerCommonDefinitions;
+
+import java.util.List;
+
+/**
+ * Operation log that does not record anything, for replicas whose state only lives in memory.
+ */
+public class DisabledOperationLog implements OperationLog {
+
+    @Override
+    public List<DistLedgerCommonDefinitions.Operation> recover(long position) {
+        return List.of();
+    }
+
+    @Override
+    public long position() {
+        return 0;
+    }
+
+    @Override
+    public void append(Operation operation) {
+    }
+
+    @Override
+    public void sync() {
+    }
+
+    @Override
+    public void close() {
+    }
+
+}
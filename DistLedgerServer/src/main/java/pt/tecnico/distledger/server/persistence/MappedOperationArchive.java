@@ -0,0 +1,340 @@
+package pt.tecnico.distledger.server.persistence;
+
+import lombok.CustomLog;
+import lombok.Getter;
+import pt.tecnico.distledger.common.ReplicaRegistry;
+import pt.tecnico.distledger.common.VectorClock;
+import pt.tecnico.distledger.server.domain.operation.CreateOp;
+import pt.tecnico.distledger.server.domain.operation.Operation;
+import pt.tecnico.distledger.server.domain.operation.TransferOp;
+import pt.tecnico.distledger.server.visitor.OperationVisitor;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Operation archive that stores each segment in its own file, which is memory-mapped to be read. Archived operations
+ * therefore live outside the Java heap: they are decoded straight from the mapped file when iterated over, and the
+ * operating system decides which parts of the archive are kept in memory.
+ * <p>
+ * Segments use a compact binary encoding, where qualifiers are stored once per segment, in a header that also holds
+ * the highest origin counters of the segment. Each operation is encoded as its origin, origin counter and the length
+ * of the rest of its record, followed by its type, accounts, amount (for transfers) and timestamps, with every
+ * qualifier referred to by its position in the header. The origin and counter of a record are read in place, so the
+ * operations covered by a timestamp (e.g., the ones another replica has acknowledged) are skipped without being
+ * decoded nor allocating anything; only the operations that are visited are decoded.
+ */
+@CustomLog(topic = "Operation Archive")
+public class MappedOperationArchive implements OperationArchive {
+
+    private static final int MAGIC = 0x444c5347; // "DLSG"
+    private static final int FORMAT_VERSION = 2;
+    private static final String SEGMENT_EXTENSION = ".segment";
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+
+    private static final byte CREATE_ACCOUNT = 1;
+    private static final byte TRANSFER_TO = 2;
+    // Origin (short), origin counter (int) and length of the rest of the record (int)
+    private static final int RECORD_HEADER_BYTES = 10;
+
+    private final Path directory;
+    private final int minSegmentSize;
+
+    // Copy-on-write, so readers can iterate over the segments without holding any lock
+    private volatile List<Segment> segments;
+    private volatile long size;
+
+    /**
+     * Open (or create) an archive, mapping the segments previously written to it.
+     *
+     * @param directory      The directory of the archive.
+     * @param minSegmentSize The minimum number of operations in a segment.
+     * @throws IOException If the segments cannot be mapped.
+     */
+    public MappedOperationArchive(Path directory, int minSegmentSize) throws IOException {
+        this.directory = directory;
+        this.minSegmentSize = minSegmentSize;
+        Files.createDirectories(directory);
+
+        final List<Path> files;
+        try (Stream<Path> paths = Files.list(directory)) {
+            files = paths.filter(path -> path.getFileName().toString().endsWith(SEGMENT_EXTENSION)).sorted().toList();
+        }
+        final List<Segment> segments = new ArrayList<>(files.size());
+        long size = 0;
+        for (Path file : files) {
+            final MappedSegment segment = MappedSegment.map(file);
+            segments.add(segment);
+            size += segment.size();
+        }
+        this.segments = List.copyOf(segments);
+        this.size = size;
+        log.info("Mapped %d archived operation(s) in %d segment(s) from %s", size, segments.size(), directory);
+    }
+
+    @Override
+    public long size() {
+        return this.size;
+    }
+
+    @Override
+    public int minSegmentSize() {
+        return this.minSegmentSize;
+    }
+
+    @Override
+    public Segment write(List<Operation> operations) throws IOException {
+        // Segments are named after the position of their first operation, so they are listed in order
+        final Path path = directory.resolve(String.format("%020d%s", size, SEGMENT_EXTENSION));
+        final Path temporaryPath = path.resolveSibling(path.getFileName() + TEMPORARY_EXTENSION);
+
+        // The unique timestamp of an operation is its previous timestamp with the entry of its origin advanced, so it
+        // has every qualifier of both
+        final List<String> qualifiers = new ArrayList<>();
+        final Map<String, Integer> qualifierIndices = new HashMap<>();
+        final VectorClock maxCounters = new VectorClock();
+        for (Operation operation : operations) {
+            operation.getUniqueTimestamp().getTimestamps().keySet().forEach(qualifier -> {
+                if (qualifierIndices.putIfAbsent(qualifier, qualifiers.size()) == null) {
+                    qualifiers.add(qualifier);
+                }
+            });
+            final String origin = ReplicaRegistry.qualifierOf(operation.getOriginIndex());
+            maxCounters.setValue(origin, Math.max(maxCounters.getValue(origin), operation.getOriginCounter()));
+        }
+
+        try (FileOutputStream file = new FileOutputStream(temporaryPath.toFile())) {
+            final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(file));
+            output.writeInt(MAGIC);
+            output.writeInt(FORMAT_VERSION);
+            output.writeInt(operations.size());
+            output.writeShort(qualifiers.size());
+            for (String qualifier : qualifiers) {
+                writeString(output, qualifier);
+            }
+            final RecordEncoder encoder = new RecordEncoder(qualifierIndices);
+            encoder.writeTimestamp(output, maxCounters);
+            for (Operation operation : operations) {
+                encoder.writeRecord(output, operation);
+            }
+            output.flush();
+            file.getFD().sync();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE);
+        return MappedSegment.map(path);
+    }
+
+    @Override
+    public void add(Segment segment) {
+        final List<Segment> segments = new ArrayList<>(this.segments);
+        segments.add(segment);
+        this.segments = List.copyOf(segments);
+        this.size += segment.size();
+    }
+
+    @Override
+    public List<Segment> segments() {
+        return this.segments;
+    }
+
+    @Override
+    public void close() {
+        // Mapped files are released by the garbage collector
+    }
+
+    private static void writeString(DataOutputStream output, String string) throws IOException {
+        final byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        output.writeShort(bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        final int length = buffer.getShort() & 0xffff;
+        final String string = StandardCharsets.UTF_8.decode(buffer.slice(buffer.position(), length)).toString();
+        buffer.position(buffer.position() + length);
+        return string;
+    }
+
+    /**
+     * Encodes operations into the records of a segment file.
+     */
+    private static class RecordEncoder extends OperationVisitor {
+
+        private final Map<String, Integer> qualifierIndices;
+        // The body of the record being encoded, which is only written once its length is known
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private final DataOutputStream bodyOutput = new DataOutputStream(body);
+
+        RecordEncoder(Map<String, Integer> qualifierIndices) {
+            this.qualifierIndices = qualifierIndices;
+        }
+
+        void writeRecord(DataOutputStream output, Operation operation) throws IOException {
+            body.reset();
+            operation.accept(this);
+            output.writeShort(qualifierIndices.get(ReplicaRegistry.qualifierOf(operation.getOriginIndex())));
+            output.writeInt(operation.getOriginCounter());
+            output.writeInt(body.size());
+            body.writeTo(output);
+        }
+
+        @Override
+        public void visit(CreateOp operation) {
+            try {
+                bodyOutput.writeByte(CREATE_ACCOUNT);
+                writeString(bodyOutput, operation.getAccount());
+                writeTimestamps(operation);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void visit(TransferOp operation) {
+            try {
+                bodyOutput.writeByte(TRANSFER_TO);
+                writeString(bodyOutput, operation.getAccount());
+                writeString(bodyOutput, operation.getDestAccount());
+                bodyOutput.writeInt(operation.getAmount());
+                writeTimestamps(operation);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void writeTimestamps(Operation operation) throws IOException {
+            writeTimestamp(bodyOutput, operation.getPrevTimestamp());
+            writeTimestamp(bodyOutput, operation.getUniqueTimestamp());
+        }
+
+        void writeTimestamp(DataOutputStream output, VectorClock timestamp) throws IOException {
+            final Map<String, Integer> timestamps = timestamp.getTimestamps();
+            output.writeShort(timestamps.size());
+            for (Map.Entry<String, Integer> entry : timestamps.entrySet()) {
+                output.writeShort(qualifierIndices.get(entry.getKey()));
+                output.writeInt(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * A segment whose file is memory-mapped.
+     */
+    private static class MappedSegment implements Segment {
+
+        private final MappedByteBuffer buffer;
+        private final int size;
+        private final String[] qualifiers;
+        // The index (in the ReplicaRegistry) of each qualifier of the header
+        private final int[] qualifierIndices;
+        @Getter
+        private final VectorClock maxCounters;
+        private final int recordsOffset;
+
+        private MappedSegment(MappedByteBuffer buffer, Path path) throws IOException {
+            this.buffer = buffer;
+            if (buffer.getInt() != MAGIC || buffer.getInt() != FORMAT_VERSION) {
+                throw new IOException("Invalid archive segment " + path);
+            }
+            this.size = buffer.getInt();
+            this.qualifiers = new String[buffer.getShort()];
+            for (int i = 0; i < qualifiers.length; i++) {
+                qualifiers[i] = readString(buffer);
+            }
+            this.qualifierIndices = new int[qualifiers.length];
+            for (int i = 0; i < qualifiers.length; i++) {
+                qualifierIndices[i] = ReplicaRegistry.indexOf(qualifiers[i]);
+            }
+            this.maxCounters = readTimestamp(buffer).freeze();
+            this.recordsOffset = buffer.position();
+        }
+
+        static MappedSegment map(Path path) throws IOException {
+            try (FileChannel channel = FileChannel.open(path)) {
+                // The mapping remains valid after the channel is closed
+                return new MappedSegment(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), path);
+            }
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public void forEach(Consumer<Operation> action) {
+            // Each iteration has its own position over the same mapped memory
+            final ByteBuffer records = buffer.duplicate().position(recordsOffset);
+            for (int i = 0; i < size; i++) {
+                // Skips the origin, origin counter and length of the record
+                records.position(records.position() + RECORD_HEADER_BYTES);
+                action.accept(readOperation(records));
+            }
+        }
+
+        @Override
+        public void forEachNotCoveredBy(VectorClock timestamp, Consumer<Operation> action) {
+            final ByteBuffer records = buffer.duplicate().position(recordsOffset);
+            for (int i = 0; i < size; i++) {
+                final int origin = qualifierIndices[records.getShort()];
+                final int counter = records.getInt();
+                final int length = records.getInt();
+                if (timestamp.getValue(origin) < counter) {
+                    action.accept(readOperation(records));
+                } else {
+                    records.position(records.position() + length);
+                }
+            }
+        }
+
+        private Operation readOperation(ByteBuffer records) {
+            final byte type = records.get();
+            final String account = readString(records);
+            return switch (type) {
+                case CREATE_ACCOUNT -> new CreateOp(account, readTimestamp(records), readTimestamp(records), true);
+                case TRANSFER_TO -> {
+                    final String destAccount = readString(records);
+                    final int amount = records.getInt();
+                    yield new TransferOp(
+                            account,
+                            destAccount,
+                            amount,
+                            readTimestamp(records),
+                            readTimestamp(records),
+                            true
+                    );
+                }
+                default -> throw new IllegalStateException("Invalid operation type in archive: " + type);
+            };
+        }
+
+        private VectorClock readTimestamp(ByteBuffer records) {
+            final VectorClock timestamp = new VectorClock();
+            final int entries = records.getShort();
+            for (int i = 0; i < entries; i++) {
+                timestamp.setValue(qualifiers[records.getShort()], records.getInt());
+            }
+            return timestamp;
+        }
+    }
+
+}
@@ -0,0 +1,99 @@
+package pt.tecnico.distledger.server.persistence;
+
+import pt.tecnico.distledger.common.VectorClock;
+import pt.tecnico.distledger.server.domain.operation.Operation;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Storage for the oldest stable operations, once they are discarded from the (in-memory) ledger.
+ * <p>
+ * Operations are archived in segments. Writing a segment and adding it to the archive are separate steps, so that the
+ * (slow) writing can happen without holding the ledger's lock, while adding it is done at the same time the operations
+ * are discarded from the ledger.
+ */
+public interface OperationArchive extends AutoCloseable {
+
+    /**
+     * @return The number of archived operations.
+     */
+    long size();
+
+    /**
+     * @return The minimum number of operations worth writing in a segment. Operations are kept in the ledger until
+     *         there are enough of them to be archived together.
+     */
+    int minSegmentSize();
+
+    /**
+     * Write a segment with the given operations. The segment is not part of the archive until it is added.
+     *
+     * @param operations The stable operations to write, in order.
+     * @return The written segment.
+     * @throws IOException If the segment cannot be written.
+     */
+    Segment write(List<Operation> operations) throws IOException;
+
+    /**
+     * Add a written segment to the end of the archive. Must be called while holding the same lock the segments are
+     * read with.
+     *
+     * @param segment The segment to add.
+     */
+    void add(Segment segment);
+
+    /**
+     * @return The segments in the archive, in order. The returned list is not affected by segments added later.
+     */
+    List<Segment> segments();
+
+    /**
+     * @return Whether the archive keeps the operations added to it. Operations must not be discarded from the ledger
+     *         into an archive that does not keep them, since they would be lost.
+     */
+    default boolean isEnabled() {
+        return true;
+    }
+
+    @Override
+    void close();
+
+    /**
+     * A sequence of archived operations.
+     */
+    interface Segment {
+
+        /**
+         * @return The number of operations in this segment.
+         */
+        int size();
+
+        /**
+         * Get the highest origin counter of each origin in this segment. Every operation in the segment is covered by
+         * a timestamp newer than or equal to this one.
+         *
+         * @return The highest origin counter of each origin.
+         */
+        VectorClock getMaxCounters();
+
+        /**
+         * Iterate over the operations in this segment, in order.
+         *
+         * @param action The action to run for every operation.
+         */
+        void forEach(Consumer<Operation> action);
+
+        /**
+         * Iterate over the operations in this segment that are not covered by the given timestamp, that is, the ones
+         * whose origin counter is greater than the entry of their origin in the timestamp, in order. The operations
+         * covered by the timestamp may be skipped without being read.
+         *
+         * @param timestamp The timestamp covering the operations to skip.
+         * @param action    The action to run for every operation not covered by the timestamp.
+         */
+        void forEachNotCoveredBy(VectorClock timestamp, Consumer<Operation> action);
+    }
+
+}
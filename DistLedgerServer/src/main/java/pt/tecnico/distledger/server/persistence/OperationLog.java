@@ -0,0 +1,51 @@
+package pt.tecnico.distledger.server.persistence;
+
+import pt.tecnico.distledger.server.domain.operation.Operation;
+import pt.ulisboa.tecnico.distledger.contract.DistLedgerCommonDefinitions;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+
+/**
+ * Durable record of the operations accepted by a replica, from which its state can be rebuilt after a restart.
+ */
+public interface OperationLog extends AutoCloseable {
+
+    /**
+     * Read the operations recorded in the log from the given position on, in the order they were appended. Must be
+     * called before any operation is appended.
+     *
+     * @param position The position to start reading from, usually the one recorded in the latest snapshot.
+     * @return The recorded operations.
+     * @throws IOException If the log cannot be read.
+     */
+    List<DistLedgerCommonDefinitions.Operation> recover(long position) throws IOException;
+
+    /**
+     * Get the position of the end of the log, that is, right after the last appended operation. Must be called while
+     * holding the same lock operations are appended with, to get a position consistent with them.
+     *
+     * @return The position of the end of the log.
+     */
+    long position();
+
+    /**
+     * Append an operation to the log. The operation is not necessarily durable when this method returns; call
+     * {@link #sync()} to wait for it.
+     *
+     * @param operation The operation to append.
+     */
+    void append(Operation operation);
+
+    /**
+     * Wait until every operation appended before this call is durable.
+     *
+     * @throws UncheckedIOException If the operations cannot be written to the log.
+     */
+    void sync();
+
+    @Override
+    void close();
+
+}
@@ -0,0 +1,33 @@
+package pt.tecnico.distledger.server.persistence;
+
+import pt.tecnico.distledger.common.VectorClock;
+import pt.tecnico.distledger.server.domain.OperationIdSet;
+import pt.tecnico.distledger.server.domain.operation.Operation;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Consistent copy of the state of a replica, from which the replica can be restored without replaying the operations
+ * that were appended to its operation log before the snapshot was taken.
+ *
+ * @param logPosition        The position of the operation log when the snapshot was taken.
+ * @param discardedCount     The number of stable operations discarded from the ledger (possibly into the archive).
+ * @param balances           The balance of each account.
+ * @param valueTimestamp     The value timestamp.
+ * @param replicaTimestamp   The replica timestamp, covering exactly the operations in the ledger.
+ * @param knownOperations    The identifiers of every operation ever added to the ledger, including the discarded ones.
+ * @param stableOperations   The stable operations that have not been discarded from the ledger, in order.
+ * @param unstableOperations The unstable operations, in order.
+ */
+public record Snapshot(
+        long logPosition,
+        long discardedCount,
+        Map<String, Integer> balances,
+        VectorClock valueTimestamp,
+        VectorClock replicaTimestamp,
+        OperationIdSet knownOperations,
+        List<Operation> stableOperations,
+        List<Operation> unstableOperations
+) {
+}
@@ -0,0 +1,183 @@
+package pt.tecnico.distledger.server.persistence;
+
+import lombok.CustomLog;
+import pt.tecnico.distledger.common.ReplicaRegistry;
+import pt.tecnico.distledger.common.VectorClock;
+import pt.tecnico.distledger.server.domain.OperationIdSet;
+import pt.tecnico.distledger.server.domain.operation.Operation;
+import pt.tecnico.distledger.server.factory.OperationFactory;
+import pt.tecnico.distledger.server.visitor.ConvertOperationsToGrpcVisitor;
+import pt.ulisboa.tecnico.distledger.contract.DistLedgerCommonDefinitions;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Stores the latest snapshot of a replica in a file. A new snapshot is written to a temporary file, which then
+ * atomically replaces the previous one, so a crash while writing never leaves the replica without a valid snapshot.
+ */
+@CustomLog(topic = "Snapshot Store")
+public class SnapshotStore {
+
+    private static final int FORMAT_VERSION = 2;
+
+    private final Path path;
+    private final Path temporaryPath;
+    private final OperationFactory operationFactory = new OperationFactory();
+
+    public SnapshotStore(Path path) {
+        this.path = path;
+        this.temporaryPath = path.resolveSibling(path.getFileName() + ".tmp");
+    }
+
+    /**
+     * Durably write a snapshot, replacing the previous one.
+     *
+     * @param snapshot The snapshot to write.
+     * @throws IOException If the snapshot cannot be written.
+     */
+    public void write(Snapshot snapshot) throws IOException {
+        try (FileOutputStream file = new FileOutputStream(temporaryPath.toFile())) {
+            final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(file));
+            output.writeInt(FORMAT_VERSION);
+            output.writeLong(snapshot.logPosition());
+            output.writeLong(snapshot.discardedCount());
+            writeMap(output, snapshot.valueTimestamp().getTimestamps());
+            writeMap(output, snapshot.replicaTimestamp().getTimestamps());
+            writeMap(output, snapshot.balances());
+            writeOperationIds(output, snapshot.knownOperations());
+            writeOperations(output, snapshot.stableOperations());
+            writeOperations(output, snapshot.unstableOperations());
+            output.flush();
+            file.getFD().sync();
+        }
+        Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        log.debug(
+                "Wrote snapshot with %d account(s) and %d operation(s) at log position %d",
+                snapshot.balances().size(),
+                snapshot.stableOperations().size() + snapshot.unstableOperations().size(),
+                snapshot.logPosition()
+        );
+    }
+
+    /**
+     * Read the latest snapshot.
+     *
+     * @return The latest snapshot, or an empty optional if no snapshot has been written yet.
+     * @throws IOException If the snapshot cannot be read.
+     */
+    public Optional<Snapshot> read() throws IOException {
+        if (!Files.exists(path)) {
+            return Optional.empty();
+        }
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            final int version = input.readInt();
+            if (version != FORMAT_VERSION) {
+                throw new IOException("Unsupported snapshot format version " + version);
+            }
+            final long logPosition = input.readLong();
+            final long discardedCount = input.readLong();
+            final VectorClock valueTimestamp = new VectorClock(readMap(input));
+            final VectorClock replicaTimestamp = new VectorClock(readMap(input));
+            final Map<String, Integer> balances = readMap(input);
+            final OperationIdSet knownOperations = readOperationIds(input);
+            final List<Operation> stableOperations = readOperations(input);
+            final List<Operation> unstableOperations = readOperations(input);
+            return Optional.of(
+                    new Snapshot(
+                            logPosition,
+                            discardedCount,
+                            balances,
+                            valueTimestamp,
+                            replicaTimestamp,
+                            knownOperations,
+                            stableOperations,
+                            unstableOperations
+                    )
+            );
+        }
+    }
+
+    private static void writeMap(DataOutputStream output, Map<String, Integer> map) throws IOException {
+        output.writeInt(map.size());
+        for (Map.Entry<String, Integer> entry : map.entrySet()) {
+            output.writeUTF(entry.getKey());
+            output.writeInt(entry.getValue());
+        }
+    }
+
+    private static Map<String, Integer> readMap(DataInputStream input) throws IOException {
+        final int size = input.readInt();
+        final Map<String, Integer> map = new HashMap<>(size * 2);
+        for (int i = 0; i < size; i++) {
+            map.put(input.readUTF(), input.readInt());
+        }
+        return map;
+    }
+
+    // Origins are stored by qualifier, since their indices in the ReplicaRegistry may change between restarts
+    private static void writeOperationIds(DataOutputStream output, OperationIdSet operationIds) throws IOException {
+        output.writeInt(operationIds.originCount());
+        for (int origin = 0; origin < operationIds.originCount(); origin++) {
+            output.writeUTF(ReplicaRegistry.qualifierOf(origin));
+            output.writeInt(operationIds.getWatermark(origin));
+            final int[] above = operationIds.getAboveWatermark(origin);
+            output.writeInt(above.length);
+            for (int counter : above) {
+                output.writeInt(counter);
+            }
+        }
+    }
+
+    private static OperationIdSet readOperationIds(DataInputStream input) throws IOException {
+        final OperationIdSet operationIds = new OperationIdSet();
+        final int origins = input.readInt();
+        for (int i = 0; i < origins; i++) {
+            final int origin = ReplicaRegistry.indexOf(input.readUTF());
+            final int watermark = input.readInt();
+            final int[] above = new int[input.readInt()];
+            for (int j = 0; j < above.length; j++) {
+                above[j] = input.readInt();
+            }
+            operationIds.addAll(origin, watermark, above);
+        }
+        return operationIds;
+    }
+
+    private static void writeOperations(DataOutputStream output, List<Operation> operations) throws IOException {
+        final ConvertOperationsToGrpcVisitor visitor = new ConvertOperationsToGrpcVisitor();
+        operations.forEach(operation -> operation.accept(visitor));
+        output.writeInt(visitor.getLedger().size());
+        for (DistLedgerCommonDefinitions.Operation operation : visitor.getLedger()) {
+            final byte[] bytes = operation.toByteArray();
+            output.writeInt(bytes.length);
+            output.write(bytes);
+        }
+    }
+
+    private List<Operation> readOperations(DataInputStream input) throws IOException {
+        final int size = input.readInt();
+        final List<Operation> operations = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            final byte[] bytes = new byte[input.readInt()];
+            input.readFully(bytes);
+            operations.add(
+                    operationFactory.createOperationFromGrpc(DistLedgerCommonDefinitions.Operation.parseFrom(bytes))
+            );
+        }
+        return operations;
+    }
+
+}
@@ -0,0 +1,278 @@
+package pt.tecnico.distledger.server.persistence;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import lombok.CustomLog;
+import pt.tecnico.distledger.server.domain.operation.Operation;
+import pt.tecnico.distledger.server.visitor.GrpcOperationVisitor;
+import pt.ulisboa.tecnico.distledger.contract.DistLedgerCommonDefinitions;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Operation log backed by an append-only file, where each operation is stored in its gRPC representation, prefixed by
+ * its length.
+ * <p>
+ * Appending an operation only buffers it in memory. A single writer thread writes the buffered operations to the file
+ * and forces them to disk, so all operations appended while the previous batch was being written are made durable by a
+ * single fsync (group commit). Optionally, the writer waits a few milliseconds before each batch, trading latency for
+ * larger batches.
+ */
+@CustomLog(topic = "Write-Ahead Log")
+public class WriteAheadLog implements OperationLog {
+
+    private final Path path;
+    private final FileChannel channel;
+    private final boolean fsync;
+    private final long batchDelayMillis;
+    private final Thread writer;
+
+    private final RecordEncoder encoder = new RecordEncoder();
+
+    // Waiting on a lock condition (instead of a monitor) does not pin virtual threads to their carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+
+    // Guarded by lock
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    private long appendedCount = 0;
+    private long appendedPosition;
+    private long durableCount = 0;
+    private IOException failure;
+    private boolean closed = false;
+
+    /**
+     * Open (or create) a write-ahead log.
+     *
+     * @param path             The file of the log.
+     * @param fsync            Whether to force each batch to disk, instead of only handing it to the operating system.
+     * @param batchDelayMillis How long the writer waits for more operations before writing a batch.
+     * @throws IOException If the file cannot be opened.
+     */
+    public WriteAheadLog(Path path, boolean fsync, long batchDelayMillis) throws IOException {
+        this.path = path;
+        this.channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.READ,
+                StandardOpenOption.WRITE
+        );
+        this.channel.position(this.channel.size());
+        this.appendedPosition = this.channel.size();
+        this.fsync = fsync;
+        this.batchDelayMillis = batchDelayMillis;
+        this.writer = new Thread(this::writeBatches, "wal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * A record that was only partially written (e.g., because the replica crashed while writing it) is discarded,
+     * along with anything after it.
+     */
+    @Override
+    public List<DistLedgerCommonDefinitions.Operation> recover(long position) throws IOException {
+        lock.lock();
+        try {
+            return recoverFrom(position);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private List<DistLedgerCommonDefinitions.Operation> recoverFrom(long position) throws IOException {
+        final List<DistLedgerCommonDefinitions.Operation> operations = new ArrayList<>();
+        if (position > channel.size()) {
+            log.warn("Position %d is past the end of %s, not recovering any operation from it", position, path);
+            return operations;
+        }
+        long validBytes = position;
+        try (InputStream stream = new BufferedInputStream(Files.newInputStream(path))) {
+            stream.skipNBytes(position);
+            final CodedInputStream input = CodedInputStream.newInstance(stream);
+            while (!input.isAtEnd()) {
+                input.resetSizeCounter();
+                try {
+                    final int length = input.readRawVarint32();
+                    operations.add(DistLedgerCommonDefinitions.Operation.parseFrom(input.readRawBytes(length)));
+                } catch (InvalidProtocolBufferException e) {
+                    log.warn("Discarding incomplete record at byte %d of %s", validBytes, path);
+                    break;
+                }
+                validBytes += input.getTotalBytesRead();
+            }
+        }
+        if (validBytes < channel.size()) {
+            channel.truncate(validBytes);
+        }
+        channel.position(channel.size());
+        appendedPosition = channel.size();
+        log.info("Recovered %d operation(s) from position %d of %s", operations.size(), position, path);
+        return operations;
+    }
+
+    @Override
+    public void append(Operation operation) {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Cannot append to a closed write-ahead log");
+            }
+            final int pendingSize = pending.size();
+            operation.accept(encoder);
+            appendedPosition += pending.size() - pendingSize;
+            appendedCount++;
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long position() {
+        lock.lock();
+        try {
+            return appendedPosition;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void sync() {
+        lock.lock();
+        try {
+            final long target = appendedCount;
+            while (durableCount < target) {
+                if (failure != null) {
+                    throw new UncheckedIOException("Failed to write to " + path, failure);
+                }
+                if (closed && !writer.isAlive()) {
+                    throw new IllegalStateException("Write-ahead log was closed before the operations were written");
+                }
+                try {
+                    changed.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new UncheckedIOException(new InterruptedIOException("Interrupted while waiting for " + path));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Write the operations appended so far and close the log.
+     */
+    @Override
+    public void close() {
+        signalAll(() -> closed = true);
+        try {
+            writer.join();
+            channel.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error("Failed to close %s: %s", path, e);
+        }
+    }
+
+    private void writeBatches() {
+        try {
+            while (true) {
+                lock.lock();
+                try {
+                    while (appendedCount == durableCount && !closed) {
+                        changed.await();
+                    }
+                    if (appendedCount == durableCount) {
+                        return;
+                    }
+                } finally {
+                    lock.unlock();
+                }
+                if (batchDelayMillis > 0) {
+                    Thread.sleep(batchDelayMillis);
+                }
+
+                final ByteArrayOutputStream batch;
+                final long batchEnd;
+                lock.lock();
+                try {
+                    batch = pending;
+                    batchEnd = appendedCount;
+                    pending = new ByteArrayOutputStream(batch.size());
+                } finally {
+                    lock.unlock();
+                }
+
+                final ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                if (fsync) {
+                    channel.force(false);
+                }
+
+                signalAll(() -> durableCount = batchEnd);
+            }
+        } catch (IOException e) {
+            log.error("Failed to write to %s: %s", path, e);
+            signalAll(() -> failure = e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            signalAll(() -> {
+            });
+        }
+    }
+
+    /**
+     * Update the state of the log while holding the lock, and wake up every thread waiting for it to change.
+     *
+     * @param update The update to the state.
+     */
+    private void signalAll(Runnable update) {
+        lock.lock();
+        try {
+            update.run();
+            changed.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Encodes operations into the pending buffer. Must only be used while holding the log's lock.
+     */
+    private class RecordEncoder extends GrpcOperationVisitor {
+
+        @Override
+        protected void add(DistLedgerCommonDefinitions.Operation operation) {
+            try {
+                operation.writeDelimitedTo(pending);
+            } catch (IOException e) {
+                // Writing to a byte array never fails
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+}
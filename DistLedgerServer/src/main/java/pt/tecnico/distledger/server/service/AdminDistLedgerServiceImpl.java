@@ -13,6 +13,8 @@ import pt.ulisboa.tecnico.distledger.contract.admin.AdminDistLedger.DeactivateRe
 import pt.ulisboa.tecnico.distledger.contract.admin.AdminDistLedger.DeactivateResponse;
 import pt.ulisboa.tecnico.distledger.contract.admin.AdminDistLedger.GetLedgerStateRequest;
 import pt.ulisboa.tecnico.distledger.contract.admin.AdminDistLedger.GetLedgerStateResponse;
+import pt.ulisboa.tecnico.distledger.contract.admin.AdminDistLedger.GossipAllRequest;
+import pt.ulisboa.tecnico.distledger.contract.admin.AdminDistLedger.GossipAllResponse;
 import pt.ulisboa.tecnico.distledger.contract.admin.AdminDistLedger.GossipRequest;
 import pt.ulisboa.tecnico.distledger.contract.admin.AdminDistLedger.GossipResponse;
 import pt.ulisboa.tecnico.distledger.contract.admin.AdminServiceGrpc;
@@ -66,6 +68,26 @@ public class AdminDistLedgerServiceImpl extends AdminServiceGrpc.AdminServiceImp
         }
     }
 
+    @Override
+    public void gossipAll(
+            GossipAllRequest request,
+            StreamObserver<GossipAllResponse> responseObserver
+    ) {
+        try {
+            final ServerCoordinator.GossipRoundResult result = serverCoordinator.gossipAll();
+            responseObserver.onNext(
+                    GossipAllResponse.newBuilder()
+                            .addAllGossipedTo(result.gossipedTo())
+                            .addAllFailed(result.failed())
+                            .build()
+            );
+            responseObserver.onCompleted();
+        } catch (ServerUnavailableException e) {
+            log.error(e.getMessage());
+            responseObserver.onError(e.toGrpcRuntimeException());
+        }
+    }
+
     @Override
     public void getLedgerState(
             GetLedgerStateRequest request,
@@ -2,14 +2,10 @@ package pt.tecnico.distledger.server.service;
 
 import io.grpc.stub.StreamObserver;
 import lombok.CustomLog;
-import pt.tecnico.distledger.common.VectorClock;
 import pt.tecnico.distledger.server.ServerCoordinator;
 import pt.tecnico.distledger.server.domain.ServerState;
-import pt.tecnico.distledger.server.domain.operation.CreateOp;
-import pt.tecnico.distledger.server.domain.operation.Operation;
-import pt.tecnico.distledger.server.domain.operation.TransferOp;
 import pt.tecnico.distledger.server.exceptions.ServerUnavailableException;
-import pt.ulisboa.tecnico.distledger.contract.DistLedgerCommonDefinitions;
+import pt.tecnico.distledger.server.factory.OperationFactory;
 import pt.ulisboa.tecnico.distledger.contract.distledgerserver.CrossServerDistLedger.PropagateStateRequest;
 import pt.ulisboa.tecnico.distledger.contract.distledgerserver.CrossServerDistLedger.PropagateStateResponse;
 import pt.ulisboa.tecnico.distledger.contract.distledgerserver.DistLedgerCrossServerServiceGrpc.DistLedgerCrossServerServiceImplBase;
@@ -19,6 +15,8 @@ public class CrossServerDistLedgerServiceImpl extends DistLedgerCrossServerServi
 
     private final ServerState serverState;
 
+    private final OperationFactory operationFactory = new OperationFactory();
+
     public CrossServerDistLedgerServiceImpl(ServerCoordinator serverCoordinator) {
         this.serverState = serverCoordinator.getServerState();
     }
@@ -34,12 +32,16 @@ public class CrossServerDistLedgerServiceImpl extends DistLedgerCrossServerServi
                     request.getState()
                             .getLedgerList()
                             .stream()
-                            .map(this::toOperation)
+                            .map(operationFactory::createOperationFromGrpc)
                             .toList()
             );
 
             log.debug("Propagate state response has been sent");
-            responseObserver.onNext(PropagateStateResponse.getDefaultInstance());
+            responseObserver.onNext(
+                    PropagateStateResponse.newBuilder()
+                            .putAllReplicaTimestamp(serverState.getKnownTimestamp().getTimestamps())
+                            .build()
+            );
             responseObserver.onCompleted();
         } catch (ServerUnavailableException e) {
             log.debug("Error: %s", e.getMessage());
@@ -47,24 +49,59 @@ public class CrossServerDistLedgerServiceImpl extends DistLedgerCrossServerServi
         }
     }
 
-    // We ignore the stable field coming from the gRPC request, since the operation hasn't been executed (in this replica) yet
-    private Operation toOperation(DistLedgerCommonDefinitions.Operation operation) {
-        return switch (operation.getType()) {
-            case OP_CREATE_ACCOUNT -> new CreateOp(
-                    operation.getUserId(),
-                    new VectorClock(operation.getPrevTimestampMap()),
-                    new VectorClock(operation.getUniqueTimestampMap()),
-                    false
-            );
-            case OP_TRANSFER_TO -> new TransferOp(
-                    operation.getUserId(),
-                    operation.getDestUserId(),
-                    operation.getAmount(),
-                    new VectorClock(operation.getPrevTimestampMap()),
-                    new VectorClock(operation.getUniqueTimestampMap()),
-                    false
-            );
-            default -> throw new IllegalArgumentException("Invalid operation");
+    /**
+     * Receive operations split across several requests, adding each chunk to the ledger as soon as it arrives. Since
+     * inbound flow control is automatic, the next chunk is only requested from the sender after the previous one has
+     * been applied, which bounds the memory used by a single propagation.
+     */
+    @Override
+    public StreamObserver<PropagateStateRequest> propagateStateStream(
+            StreamObserver<PropagateStateResponse> responseObserver
+    ) {
+        log.debug("Propagate state stream has been opened");
+        return new StreamObserver<>() {
+            private boolean failed = false;
+            private int operationCount = 0;
+
+            @Override
+            public void onNext(PropagateStateRequest request) {
+                if (failed) {
+                    return;
+                }
+                try {
+                    serverState.addToLedger(
+                            request.getState()
+                                    .getLedgerList()
+                                    .stream()
+                                    .map(operationFactory::createOperationFromGrpc)
+                                    .toList()
+                    );
+                    operationCount += request.getState().getLedgerCount();
+                } catch (ServerUnavailableException e) {
+                    log.debug("Error: %s", e.getMessage());
+                    failed = true;
+                    responseObserver.onError(e.toGrpcRuntimeException());
+                }
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                log.debug("Propagate state stream has been aborted after %d operation(s): %s", operationCount, t);
+            }
+
+            @Override
+            public void onCompleted() {
+                if (failed) {
+                    return;
+                }
+                log.debug("Propagate state stream has been received with %d operation(s)", operationCount);
+                responseObserver.onNext(
+                        PropagateStateResponse.newBuilder()
+                                .putAllReplicaTimestamp(serverState.getKnownTimestamp().getTimestamps())
+                                .build()
+                );
+                responseObserver.onCompleted();
+            }
         };
     }
 }
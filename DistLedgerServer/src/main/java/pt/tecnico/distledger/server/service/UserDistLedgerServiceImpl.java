@@ -1,28 +1,50 @@
 package pt.tecnico.distledger.server.service;
 
+import io.grpc.Context;
+import io.grpc.Deadline;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 import lombok.CustomLog;
+import pt.tecnico.distledger.common.ReplicaRegistry;
 import pt.tecnico.distledger.common.VectorClock;
 import pt.tecnico.distledger.server.ServerCoordinator;
+import pt.tecnico.distledger.server.domain.BalanceWatchers;
 import pt.tecnico.distledger.server.domain.OperationResult;
 import pt.tecnico.distledger.server.domain.ServerState;
-import pt.tecnico.distledger.server.exceptions.AccountNotFoundException;
+import pt.tecnico.distledger.server.domain.Transfer;
+import pt.tecnico.distledger.server.exceptions.GrpcSerializableException;
 import pt.tecnico.distledger.server.exceptions.InvalidAmountException;
+import pt.tecnico.distledger.server.exceptions.NotYetConsistentException;
 import pt.tecnico.distledger.server.exceptions.ServerUnavailableException;
 import pt.tecnico.distledger.server.exceptions.TransferBetweenSameAccountException;
+import pt.tecnico.distledger.server.exceptions.UnknownReplicaException;
 import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.BalanceRequest;
 import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.BalanceResponse;
+import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.BatchTransferRequest;
+import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.BatchTransferResponse;
 import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.CreateAccountRequest;
 import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.CreateAccountResponse;
 import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.TransferToRequest;
 import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.TransferToResponse;
 import pt.ulisboa.tecnico.distledger.contract.user.UserServiceGrpc;
 
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
 @CustomLog(topic = "User Service")
 public class UserDistLedgerServiceImpl extends UserServiceGrpc.UserServiceImplBase {
 
     private final ServerState serverState;
 
+    /**
+     * How long a balance request waits for this replica to catch up with the client's timestamp, unless the client's
+     * deadline is sooner.
+     */
+    private final long balanceTimeoutMillis = ServerState.BALANCE_TIMEOUT_MILLIS;
+
     public UserDistLedgerServiceImpl(ServerCoordinator serverCoordinator) {
         this.serverState = serverCoordinator.getServerState();
     }
@@ -33,11 +55,30 @@ public class UserDistLedgerServiceImpl extends UserServiceGrpc.UserServiceImplBa
             StreamObserver<BalanceResponse> responseObserver
     ) {
         log.debug("Balance for account '%s' has been requested", request.getUserId());
+        final VectorClock prevTimestamp;
         try {
-            final OperationResult<Integer> result = serverState.getBalance(
-                    request.getUserId(),
-                    new VectorClock(request.getPrevTimestampMap())
-            );
+            prevTimestamp = prevTimestampOf(request.getPrevTimestampMap());
+        } catch (UnknownReplicaException e) {
+            log.debug("Error getting balance: %s", e.getMessage());
+            responseObserver.onError(e.toGrpcRuntimeException());
+            return;
+        }
+        // The request does not hold a thread while this replica catches up with the client's timestamp
+        serverState.getBalanceAsync(
+                request.getUserId(),
+                prevTimestamp,
+                balanceTimeoutMillis()
+        ).whenComplete((result, failure) -> {
+            if (failure != null) {
+                final Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+                log.debug("Error getting balance: %s", cause.getMessage());
+                responseObserver.onError(
+                        cause instanceof GrpcSerializableException e
+                                ? e.toGrpcRuntimeException()
+                                : Status.INTERNAL.withCause(cause).asRuntimeException()
+                );
+                return;
+            }
             final int balance = result.value();
             final VectorClock newTimestamp = result.vectorClock();
 
@@ -48,10 +89,68 @@ public class UserDistLedgerServiceImpl extends UserServiceGrpc.UserServiceImplBa
                     .build();
             responseObserver.onNext(response);
             responseObserver.onCompleted();
-        } catch (AccountNotFoundException | ServerUnavailableException e) {
-            log.debug("Error getting balance: %s", e.getMessage());
+        });
+    }
+
+    @Override
+    public void watchBalance(
+            BalanceRequest request,
+            StreamObserver<BalanceResponse> responseObserver
+    ) {
+        log.debug("Watch of the balance of account '%s' has been requested", request.getUserId());
+        final VectorClock prevTimestamp;
+        try {
+            prevTimestamp = prevTimestampOf(request.getPrevTimestampMap());
+        } catch (UnknownReplicaException e) {
+            log.debug("Error watching balance: %s", e.getMessage());
             responseObserver.onError(e.toGrpcRuntimeException());
+            return;
         }
+        final ServerCallStreamObserver<BalanceResponse> stream =
+                (ServerCallStreamObserver<BalanceResponse>) responseObserver;
+        final CompletableFuture<BalanceWatchers.Watch> watch = serverState.watchBalance(
+                request.getUserId(),
+                prevTimestamp,
+                balanceTimeoutMillis(),
+                new BalanceWatchers.Listener() {
+                    @Override
+                    public boolean isReady() {
+                        return stream.isReady() && !stream.isCancelled();
+                    }
+
+                    @Override
+                    public void onBalance(OperationResult<Integer> balance) {
+                        stream.onNext(
+                                BalanceResponse.newBuilder()
+                                        .setValue(balance.value())
+                                        .putAllNewTimestamp(balance.vectorClock().getTimestamps())
+                                        .build()
+                        );
+                    }
+                }
+        );
+        // Updates held back while the client was not reading are sent once it catches up
+        stream.setOnReadyHandler(() -> {
+            final BalanceWatchers.Watch current = watch.getNow(null);
+            if (current != null) {
+                current.flush();
+            }
+        });
+        stream.setOnCancelHandler(() -> {
+            log.debug("Watch of the balance of account '%s' has been cancelled", request.getUserId());
+            watch.thenAccept(BalanceWatchers.Watch::close);
+        });
+        watch.whenComplete((ignored, failure) -> {
+            if (failure != null) {
+                final Throwable cause = failure instanceof CompletionException ? failure.getCause() : failure;
+                log.debug("Error watching balance: %s", cause.getMessage());
+                responseObserver.onError(
+                        cause instanceof GrpcSerializableException e
+                                ? e.toGrpcRuntimeException()
+                                : Status.INTERNAL.withCause(cause).asRuntimeException()
+                );
+            }
+        });
     }
 
     @Override
@@ -62,7 +161,7 @@ public class UserDistLedgerServiceImpl extends UserServiceGrpc.UserServiceImplBa
         log.debug("Creation of account '%s' has been requested", request.getUserId());
         try {
             final OperationResult<Void> result =
-                    serverState.createAccount(request.getUserId(), new VectorClock(request.getPrevTimestampMap()));
+                    serverState.createAccount(request.getUserId(), prevTimestampOf(request.getPrevTimestampMap()));
             log.debug("Account '%s' has been created", request.getUserId());
             responseObserver.onNext(
                     CreateAccountResponse.newBuilder()
@@ -70,7 +169,7 @@ public class UserDistLedgerServiceImpl extends UserServiceGrpc.UserServiceImplBa
                             .build()
             );
             responseObserver.onCompleted();
-        } catch (ServerUnavailableException e) {
+        } catch (NotYetConsistentException | ServerUnavailableException | UnknownReplicaException e) {
             log.debug("Error creating account: %s", e.getMessage());
             responseObserver.onError(e.toGrpcRuntimeException());
         }
@@ -92,7 +191,7 @@ public class UserDistLedgerServiceImpl extends UserServiceGrpc.UserServiceImplBa
                     request.getAccountFrom(),
                     request.getAccountTo(),
                     request.getAmount(),
-                    new VectorClock(request.getPrevTimestampMap())
+                    prevTimestampOf(request.getPrevTimestampMap())
             );
             log.debug(
                     "Created transfer of %d coin(s) from account '%s' to account '%s'",
@@ -106,10 +205,69 @@ public class UserDistLedgerServiceImpl extends UserServiceGrpc.UserServiceImplBa
                             .build()
             );
             responseObserver.onCompleted();
-        } catch (InvalidAmountException | ServerUnavailableException | TransferBetweenSameAccountException e) {
+        } catch (InvalidAmountException | NotYetConsistentException | ServerUnavailableException
+                 | TransferBetweenSameAccountException | UnknownReplicaException e) {
             log.debug("Error creating transfer: %s", e.getMessage());
             responseObserver.onError(e.toGrpcRuntimeException());
         }
     }
 
+    @Override
+    public void batchTransfer(
+            BatchTransferRequest request,
+            StreamObserver<BatchTransferResponse> responseObserver
+    ) {
+        log.debug("Batch of %d transfer(s) has been requested", request.getTransfersCount());
+        try {
+            final OperationResult<Integer> result = serverState.batchTransfer(
+                    request.getTransfersList()
+                            .stream()
+                            .map(transfer -> new Transfer(
+                                    transfer.getAccountFrom(),
+                                    transfer.getAccountTo(),
+                                    transfer.getAmount()
+                            ))
+                            .toList(),
+                    prevTimestampOf(request.getPrevTimestampMap())
+            );
+            log.debug("Created batch of %d transfer(s)", request.getTransfersCount());
+            responseObserver.onNext(
+                    BatchTransferResponse.newBuilder()
+                            .putAllNewTimestamp(result.vectorClock().getTimestamps())
+                            .setFirstCounter(result.value())
+                            .build()
+            );
+            responseObserver.onCompleted();
+        } catch (InvalidAmountException | NotYetConsistentException | ServerUnavailableException
+                 | TransferBetweenSameAccountException | UnknownReplicaException e) {
+            log.debug("Error creating batch of transfers: %s", e.getMessage());
+            responseObserver.onError(e.toGrpcRuntimeException());
+        }
+    }
+
+    /**
+     * Convert the previous timestamp sent by a client into a vector clock. Only the replicas this replica knows of
+     * (itself, the ones learned from the naming server, and the ones it has received operations from) can be referred
+     * to, so that clients cannot make it register arbitrary replicas.
+     *
+     * @param timestamps The client's previous timestamp.
+     * @return The vector clock.
+     * @throws UnknownReplicaException If the timestamp has a non-zero entry for a replica that is not known.
+     */
+    private static VectorClock prevTimestampOf(Map<String, Integer> timestamps) throws UnknownReplicaException {
+        for (Map.Entry<String, Integer> entry : timestamps.entrySet()) {
+            if (entry.getValue() != 0 && ReplicaRegistry.lookup(entry.getKey()) < 0) {
+                throw new UnknownReplicaException(entry.getKey());
+            }
+        }
+        return new VectorClock(timestamps);
+    }
+
+    private long balanceTimeoutMillis() {
+        final Deadline deadline = Context.current().getDeadline();
+        return deadline == null
+                ? balanceTimeoutMillis
+                : Math.min(balanceTimeoutMillis, deadline.timeRemaining(TimeUnit.MILLISECONDS));
+    }
+
 }
@@ -0,0 +1,61 @@
+package pt.tecnico.distledger.server.visitor;
+
+import lombok.Getter;
+import pt.ulisboa.tecnico.distledger.contract.DistLedgerCommonDefinitions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Converts operations to their gRPC representation and hands them to a consumer in bounded chunks, so that the
+ * operations never have to be all in memory (or in a single message) at once.
+ */
+public class ChunkedOperationsToGrpcVisitor extends GrpcOperationVisitor {
+
+    private final int maxChunkBytes;
+    private final Consumer<List<DistLedgerCommonDefinitions.Operation>> chunkConsumer;
+
+    private List<DistLedgerCommonDefinitions.Operation> chunk = new ArrayList<>();
+    private int chunkBytes = 0;
+
+    @Getter
+    private int operationCount = 0;
+
+    /**
+     * @param maxChunkBytes The maximum (serialized) size of a chunk. A chunk is only bigger than this if it has a
+     *                      single operation.
+     * @param chunkConsumer Called with every full chunk, and with the last one on {@link #flush()}.
+     */
+    public ChunkedOperationsToGrpcVisitor(
+            int maxChunkBytes,
+            Consumer<List<DistLedgerCommonDefinitions.Operation>> chunkConsumer
+    ) {
+        this.maxChunkBytes = maxChunkBytes;
+        this.chunkConsumer = chunkConsumer;
+    }
+
+    @Override
+    protected void add(DistLedgerCommonDefinitions.Operation operation) {
+        final int size = operation.getSerializedSize();
+        if (!chunk.isEmpty() && chunkBytes + size > maxChunkBytes) {
+            flush();
+        }
+        chunk.add(operation);
+        chunkBytes += size;
+        operationCount++;
+    }
+
+    /**
+     * Hand the operations that have not been consumed yet to the consumer, if there are any.
+     */
+    public void flush() {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        final List<DistLedgerCommonDefinitions.Operation> fullChunk = chunk;
+        chunk = new ArrayList<>();
+        chunkBytes = 0;
+        chunkConsumer.accept(fullChunk);
+    }
+}
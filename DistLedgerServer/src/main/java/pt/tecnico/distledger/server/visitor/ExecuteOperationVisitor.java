@@ -6,21 +6,37 @@ import pt.tecnico.distledger.server.domain.operation.TransferOp;
 
 import java.util.Map;
 import java.util.Objects;
+import java.util.function.Consumer;
 
 public class ExecuteOperationVisitor extends OperationVisitor {
 
     private final Map<String, Account> accounts;
 
+    private final Consumer<String> balanceChanged;
+
     public ExecuteOperationVisitor(Map<String, Account> accounts) {
+        this(accounts, userId -> {
+        });
+    }
+
+    /**
+     * @param accounts       The accounts to execute operations on.
+     * @param balanceChanged Called with the ID of every account that is created or whose balance changes.
+     */
+    public ExecuteOperationVisitor(Map<String, Account> accounts, Consumer<String> balanceChanged) {
         this.accounts = accounts;
+        this.balanceChanged = balanceChanged;
     }
 
     @Override
     public void visit(CreateOp operation) {
-        accounts.putIfAbsent(
+        final Account previous = accounts.putIfAbsent(
                 operation.getAccount(),
                 new Account(operation.getAccount())
         );
+        if (previous == null) {
+            balanceChanged.accept(operation.getAccount());
+        }
     }
 
     @Override
@@ -36,12 +52,14 @@ public class ExecuteOperationVisitor extends OperationVisitor {
             return;
         }
 
-        if (operation.getAmount() <= 0 || from.getBalance() < operation.getAmount()) {
+        // Checking the balance and withdrawing from it is a single atomic step, so the amount is only deposited if it
+        // was actually withdrawn
+        if (operation.getAmount() <= 0 || !from.tryDecreaseBalance(operation.getAmount())) {
             return;
         }
-
-        from.decreaseBalance(operation.getAmount());
         to.increaseBalance(operation.getAmount());
+        balanceChanged.accept(operation.getAccount());
+        balanceChanged.accept(operation.getDestAccount());
     }
 
 }
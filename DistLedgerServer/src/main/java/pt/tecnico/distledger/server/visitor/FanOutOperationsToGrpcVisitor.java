@@ -0,0 +1,86 @@
+package pt.tecnico.distledger.server.visitor;
+
+import pt.tecnico.distledger.common.VectorClock;
+import pt.tecnico.distledger.server.domain.operation.CreateOp;
+import pt.tecnico.distledger.server.domain.operation.Operation;
+import pt.tecnico.distledger.server.domain.operation.TransferOp;
+import pt.ulisboa.tecnico.distledger.contract.DistLedgerCommonDefinitions;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Sorts the operations of a single pass over the ledger into the chunks to be sent to several replicas, according to
+ * the timestamp each of them has acknowledged. Each operation is converted to its gRPC representation only once, and
+ * the same message is shared by the chunks of every replica that has not acknowledged it.
+ */
+public class FanOutOperationsToGrpcVisitor extends GrpcOperationVisitor {
+
+    private final List<VectorClock> acknowledgedTimestamps;
+    private final List<ChunkedOperationsToGrpcVisitor> targets;
+
+    // The operation being converted
+    private int originIndex;
+    private int originCounter;
+
+    /**
+     * @param maxChunkBytes          The maximum (serialized) size of a chunk, as in
+     *                               {@link ChunkedOperationsToGrpcVisitor}.
+     * @param acknowledgedTimestamps The timestamp acknowledged by each replica.
+     * @param chunkConsumers         The consumer of the chunks of each replica, in the same order as the timestamps.
+     */
+    public FanOutOperationsToGrpcVisitor(
+            int maxChunkBytes,
+            List<VectorClock> acknowledgedTimestamps,
+            List<Consumer<List<DistLedgerCommonDefinitions.Operation>>> chunkConsumers
+    ) {
+        if (acknowledgedTimestamps.size() != chunkConsumers.size()) {
+            throw new IllegalArgumentException("There must be one chunk consumer per acknowledged timestamp");
+        }
+        this.acknowledgedTimestamps = List.copyOf(acknowledgedTimestamps);
+        this.targets = new ArrayList<>(chunkConsumers.size());
+        chunkConsumers.forEach(consumer -> targets.add(new ChunkedOperationsToGrpcVisitor(maxChunkBytes, consumer)));
+    }
+
+    @Override
+    public void visit(CreateOp operation) {
+        select(operation);
+        super.visit(operation);
+    }
+
+    @Override
+    public void visit(TransferOp operation) {
+        select(operation);
+        super.visit(operation);
+    }
+
+    @Override
+    protected void add(DistLedgerCommonDefinitions.Operation operation) {
+        for (int i = 0; i < targets.size(); i++) {
+            if (acknowledgedTimestamps.get(i).getValue(originIndex) < originCounter) {
+                targets.get(i).add(operation);
+            }
+        }
+    }
+
+    /**
+     * Hand the operations that have not been consumed yet to the consumer of each replica, if there are any.
+     */
+    public void flush() {
+        targets.forEach(ChunkedOperationsToGrpcVisitor::flush);
+    }
+
+    /**
+     * @param target The index of the replica, in the order given to the constructor.
+     * @return The number of operations sorted into the chunks of the replica.
+     */
+    public int getOperationCount(int target) {
+        return targets.get(target).getOperationCount();
+    }
+
+    private void select(Operation operation) {
+        originIndex = operation.getOriginIndex();
+        originCounter = operation.getOriginCounter();
+    }
+}
@@ -0,0 +1,42 @@
+package pt.tecnico.distledger.server.visitor;
+
+import pt.tecnico.distledger.server.domain.operation.CreateOp;
+import pt.tecnico.distledger.server.domain.operation.TransferOp;
+import pt.ulisboa.tecnico.distledger.contract.DistLedgerCommonDefinitions;
+
+/**
+ * Visitor that converts operations to their gRPC representation, handing each of them to {@link #add}.
+ */
+public abstract class GrpcOperationVisitor extends OperationVisitor {
+
+    @Override
+    public void visit(CreateOp operation) {
+        add(
+                DistLedgerCommonDefinitions.Operation.newBuilder()
+                        .setUserId(operation.getAccount())
+                        .setType(operation.getType())
+                        .putAllPrevTimestamp(operation.getPrevTimestamp().getTimestamps())
+                        .putAllUniqueTimestamp(operation.getUniqueTimestamp().getTimestamps())
+                        .setStable(operation.isStable())
+                        .build()
+        );
+    }
+
+    @Override
+    public void visit(TransferOp operation) {
+        add(
+                DistLedgerCommonDefinitions.Operation.newBuilder()
+                        .setUserId(operation.getAccount())
+                        .setType(operation.getType())
+                        .setDestUserId(operation.getDestAccount())
+                        .setAmount(operation.getAmount())
+                        .putAllPrevTimestamp(operation.getPrevTimestamp().getTimestamps())
+                        .putAllUniqueTimestamp(operation.getUniqueTimestamp().getTimestamps())
+                        .setStable(operation.isStable())
+                        .build()
+        );
+    }
+
+    protected abstract void add(DistLedgerCommonDefinitions.Operation operation);
+
+}
@@ -1,6 +1,7 @@
 package pt.tecnico.distledger.server;
 
 import lombok.SneakyThrows;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import pt.tecnico.distledger.common.VectorClock;
@@ -20,6 +21,11 @@ class AdminTest {
         state = new ServerState();
     }
 
+    @AfterEach
+    public void tearDown() {
+        state.close();
+    }
+
     @Test
     void changeServerAvailability() {
         assertTrue(state.getActive().get());
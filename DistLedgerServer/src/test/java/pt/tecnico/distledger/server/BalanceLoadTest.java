@@ -0,0 +1,144 @@
+package pt.tecnico.distledger.server;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.stub.StreamObserver;
+import lombok.CustomLog;
+import lombok.SneakyThrows;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import pt.tecnico.distledger.common.VectorClock;
+import pt.tecnico.distledger.server.domain.ServerState;
+import pt.tecnico.distledger.server.domain.operation.CreateOp;
+import pt.tecnico.distledger.server.service.UserDistLedgerServiceImpl;
+import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.BalanceRequest;
+import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.BalanceResponse;
+import pt.ulisboa.tecnico.distledger.contract.user.UserServiceGrpc;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Load test of many clients waiting for a replica to catch up with their timestamp: every client asks for a balance
+ * that depends on an operation the replica has not received yet, and the operation is only delivered once all of them
+ * are waiting. Reports the number of live threads while the clients wait, and the latency of the responses once the
+ * operation is delivered.
+ * <p>
+ * Only runs when enabled with {@code -DloadTest=true}; the number of clients is set with {@code -DloadTest.clients}.
+ */
+@CustomLog(topic = "Load Test")
+@EnabledIfSystemProperty(named = "loadTest", matches = "true")
+class BalanceLoadTest {
+
+    private static final int CLIENTS = Integer.getInteger("loadTest.clients", 10_000);
+    private static final String QUALIFIER = "A";
+    private static final String OTHER_QUALIFIER = "B";
+
+    @Test
+    void waitingClientsOnDefaultExecutor() {
+        runLoad("default", null);
+    }
+
+    @Test
+    void waitingClientsOnVirtualThreads() {
+        assumeTrue(VirtualThreads.isSupported(), "Virtual threads require Java 21 or later");
+        val executor = VirtualThreads.newVirtualThreadPerTaskExecutor();
+        try {
+            runLoad("virtual", executor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @SneakyThrows
+    private void runLoad(String name, ExecutorService executor) {
+        val coordinator = new ServerCoordinator(0, QUALIFIER, new GossipScheduler.Config(0, 0, false, 0, 0, 0));
+        final ServerState state = coordinator.getServerState();
+        val serverBuilder = ServerBuilder.forPort(0).addService(new UserDistLedgerServiceImpl(coordinator));
+        if (executor != null) {
+            serverBuilder.executor(executor);
+        }
+        final Server server = serverBuilder.build().start();
+        final ManagedChannel channel = ManagedChannelBuilder.forAddress("localhost", server.getPort())
+                .usePlaintext()
+                .build();
+        try {
+            val stub = UserServiceGrpc.newStub(channel);
+            val timestamp = new VectorClock(Map.of(OTHER_QUALIFIER, 1));
+            val request = BalanceRequest.newBuilder()
+                    .setUserId(ServerState.BROKER_ID)
+                    .putAllPrevTimestamp(timestamp.getTimestamps())
+                    .build();
+
+            final long[] completedAt = new long[CLIENTS];
+            val responses = new CountDownLatch(CLIENTS);
+            val failures = new AtomicInteger();
+            for (int i = 0; i < CLIENTS; i++) {
+                final int client = i;
+                stub.withDeadlineAfter(60, TimeUnit.SECONDS).balance(request, new StreamObserver<>() {
+                    @Override
+                    public void onNext(BalanceResponse response) {
+                        completedAt[client] = System.nanoTime();
+                    }
+
+                    @Override
+                    public void onError(Throwable t) {
+                        failures.incrementAndGet();
+                        responses.countDown();
+                    }
+
+                    @Override
+                    public void onCompleted() {
+                        responses.countDown();
+                    }
+                });
+            }
+
+            final long waitDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(60);
+            while (state.getValueTimestampWaiters().size() < CLIENTS && System.nanoTime() < waitDeadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(CLIENTS, state.getValueTimestampWaiters().size());
+            final int waitingThreads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+            final long deliveredAt = System.nanoTime();
+            state.addToLedger(List.of(new CreateOp("user1", new VectorClock(), timestamp, false)));
+            assertTrue(responses.await(60, TimeUnit.SECONDS));
+            assertEquals(0, failures.get());
+
+            final long[] latencies = Arrays.stream(completedAt).map(at -> at - deliveredAt).sorted().toArray();
+            log.info(
+                    "[%s] %d waiting clients: %d live threads; latency after delivery p50=%.1f ms, p99=%.1f ms, "
+                            + "max=%.1f ms",
+                    name,
+                    CLIENTS,
+                    waitingThreads,
+                    percentile(latencies, 0.50),
+                    percentile(latencies, 0.99),
+                    latencies[latencies.length - 1] / 1e6
+            );
+        } finally {
+            channel.shutdownNow();
+            server.shutdownNow().awaitTermination(10, TimeUnit.SECONDS);
+            coordinator.shutdown();
+        }
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * percentile))] / 1e6;
+    }
+
+}
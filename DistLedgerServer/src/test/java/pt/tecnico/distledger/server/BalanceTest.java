@@ -0,0 +1,273 @@
+package pt.tecnico.distledger.server;
+
+import lombok.SneakyThrows;
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pt.tecnico.distledger.common.VectorClock;
+import pt.tecnico.distledger.server.domain.BalanceWatchers;
+import pt.tecnico.distledger.server.domain.OperationResult;
+import pt.tecnico.distledger.server.domain.ServerState;
+import pt.tecnico.distledger.server.domain.TimestampWaiters;
+import pt.tecnico.distledger.server.domain.operation.CreateOp;
+import pt.tecnico.distledger.server.domain.operation.Operation;
+import pt.tecnico.distledger.server.domain.operation.TransferOp;
+import pt.tecnico.distledger.server.exceptions.AccountNotFoundException;
+import pt.tecnico.distledger.server.exceptions.NotYetConsistentException;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BalanceTest {
+
+    private static final String QUALIFIER = "A";
+    private static final String OTHER_QUALIFIER = "B";
+    private static final String THIRD_QUALIFIER = "C";
+    private static final String userId = "user1";
+
+    private ServerState state;
+
+    @BeforeEach
+    void setup() {
+        state = new ServerState(QUALIFIER);
+    }
+
+    @AfterEach
+    void tearDown() {
+        state.close();
+    }
+
+    @Test
+    @SneakyThrows
+    void balanceIsReturnedOnceReplicaCatchesUp() {
+        val timestamp = new VectorClock(Map.of(OTHER_QUALIFIER, 1));
+        val balance = state.getBalanceAsync(userId, timestamp, 10_000);
+        assertFalse(balance.isDone());
+        assertEquals(1, state.getValueTimestampWaiters().size());
+
+        state.addToLedger(List.of(new CreateOp(userId, new VectorClock(), timestamp, false)));
+
+        val result = balance.get(10, TimeUnit.SECONDS);
+        assertEquals(0, result.value());
+        assertEquals(1, result.vectorClock().getValue(OTHER_QUALIFIER));
+        assertEquals(0, state.getValueTimestampWaiters().size());
+    }
+
+    @Test
+    void balanceFailsIfReplicaDoesNotCatchUpInTime() {
+        val timestamp = new VectorClock(Map.of(OTHER_QUALIFIER, 1));
+        val balance = state.getBalanceAsync(ServerState.BROKER_ID, timestamp, 10);
+
+        val exception = assertThrows(ExecutionException.class, () -> balance.get(10, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof NotYetConsistentException);
+    }
+
+    @Test
+    void blockingBalanceFailsIfReplicaDoesNotCatchUpInTime() {
+        val timestamp = new VectorClock(Map.of(OTHER_QUALIFIER, 1));
+
+        assertThrows(NotYetConsistentException.class, () -> state.getBalance(ServerState.BROKER_ID, timestamp, 10));
+    }
+
+    @Test
+    void balanceOfUnknownAccountFails() {
+        val balance = state.getBalanceAsync(userId, new VectorClock(), 10_000);
+
+        val exception = assertThrows(ExecutionException.class, () -> balance.get(10, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof AccountNotFoundException);
+    }
+
+    @Test
+    @SneakyThrows
+    void onlyWaitersWhoseDependencyIsSatisfiedAreCompleted() {
+        val waitingOnOther = state.getBalanceAsync(userId, new VectorClock(Map.of(OTHER_QUALIFIER, 1)), 10_000);
+        val waitingOnThird = state.getBalanceAsync(userId, new VectorClock(Map.of(THIRD_QUALIFIER, 1)), 10_000);
+
+        state.addToLedger(
+                List.of(new CreateOp(userId, new VectorClock(), new VectorClock(Map.of(OTHER_QUALIFIER, 1)), false))
+        );
+
+        assertEquals(0, waitingOnOther.get(10, TimeUnit.SECONDS).value());
+        assertFalse(waitingOnThird.isDone());
+        assertEquals(1, state.getValueTimestampWaiters().size());
+    }
+
+    @Test
+    @SneakyThrows
+    void waitersThatTimedOutArePurged() {
+        final List<CompletableFuture<?>> balances = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            balances.add(state.getBalanceAsync(userId, new VectorClock(Map.of(OTHER_QUALIFIER, i + 1)), 10));
+        }
+        for (CompletableFuture<?> balance : balances) {
+            assertThrows(ExecutionException.class, () -> balance.get(10, TimeUnit.SECONDS));
+        }
+
+        // Waiters are purged right after their futures fail, which may be after the requests' futures fail
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (state.getValueTimestampWaiters().size() >= 64 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertTrue(state.getValueTimestampWaiters().size() < 64);
+    }
+
+    @Test
+    @SneakyThrows
+    void waitersCompletedAfterTimingOutAreNoLongerCounted() {
+        val waiters = new TimestampWaiters();
+        val timestamp = new VectorClock(Map.of(OTHER_QUALIFIER, 1));
+        final List<CompletableFuture<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(waiters.await(timestamp).orTimeout(1, TimeUnit.MILLISECONDS));
+        }
+        for (CompletableFuture<?> future : futures) {
+            assertThrows(ExecutionException.class, () -> future.get(10, TimeUnit.SECONDS));
+        }
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (waiters.abandonedCount() < 10 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(10, waiters.abandonedCount());
+
+        // Too few to be purged, but removed once their dependency is satisfied
+        waiters.advance(timestamp.clone(), timestamp);
+        assertEquals(0, waiters.size());
+        assertEquals(0, waiters.abandonedCount());
+    }
+
+    @Test
+    @SneakyThrows
+    void watchSendsBalanceWhenItChanges() {
+        state.createAccount(userId, new VectorClock());
+        val listener = new RecordingListener(true);
+        val watch = state.watchBalance(userId, new VectorClock(), 10_000, listener).get(10, TimeUnit.SECONDS);
+        assertEquals(0, listener.next().value());
+
+        val transfer = state.transferTo(ServerState.BROKER_ID, userId, 10, new VectorClock()).vectorClock();
+        val update = listener.next();
+        assertEquals(10, update.value());
+        assertTrue(update.vectorClock().isNewerThanOrEqualTo(transfer));
+
+        watch.close();
+        assertEquals(0, state.getBalanceWatchers().size());
+        state.transferTo(ServerState.BROKER_ID, userId, 10, new VectorClock());
+        assertNull(listener.updates.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    @SneakyThrows
+    void watchConflatesChangesWhileNotReady() {
+        state.createAccount(userId, new VectorClock());
+        val listener = new RecordingListener(false);
+        val watch = state.watchBalance(userId, new VectorClock(), 10_000, listener).get(10, TimeUnit.SECONDS);
+
+        for (int i = 0; i < 5; i++) {
+            state.transferTo(ServerState.BROKER_ID, userId, 1, new VectorClock());
+        }
+        Thread.sleep(100);
+        assertTrue(listener.updates.isEmpty());
+
+        listener.ready = true;
+        watch.flush();
+        assertEquals(5, listener.next().value());
+        assertNull(listener.updates.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    @SneakyThrows
+    void balanceReadDuringBatchIsCoveredByItsTimestamp() {
+        state.addToLedger(
+                List.of(new CreateOp(userId, new VectorClock(), new VectorClock(Map.of(OTHER_QUALIFIER, 1)), false))
+        );
+
+        // Every transfer from the other replica moves 1 to the account, so its balance must match the timestamp
+        val done = new AtomicBoolean();
+        val violation = new AtomicReference<String>();
+        val readers = new ArrayList<Thread>();
+        for (int i = 0; i < 4; i++) {
+            val reader = new Thread(() -> {
+                while (!done.get() && violation.get() == null) {
+                    try {
+                        val result = state.getBalance(userId, new VectorClock());
+                        if (result.value() != result.vectorClock().getValue(OTHER_QUALIFIER) - 1) {
+                            violation.set(result.value() + " with timestamp " + result.vectorClock());
+                        }
+                    } catch (Exception e) {
+                        violation.set(e.toString());
+                    }
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        int counter = 1;
+        for (int batch = 0; batch < 10; batch++) {
+            val operations = new ArrayList<Operation>();
+            for (int i = 0; i < 99; i++, counter++) {
+                operations.add(
+                        new TransferOp(
+                                ServerState.BROKER_ID,
+                                userId,
+                                1,
+                                new VectorClock(Map.of(OTHER_QUALIFIER, counter)),
+                                new VectorClock(Map.of(OTHER_QUALIFIER, counter + 1)),
+                                false
+                        )
+                );
+            }
+            // All the transfers are stabilized (and their balances changed) in a single batch
+            state.addToLedger(operations);
+        }
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(violation.get());
+        assertEquals(990, state.getBalance(userId, new VectorClock()).value());
+    }
+
+    private static class RecordingListener implements BalanceWatchers.Listener {
+
+        private final BlockingQueue<OperationResult<Integer>> updates = new LinkedBlockingQueue<>();
+        private volatile boolean ready;
+
+        RecordingListener(boolean ready) {
+            this.ready = ready;
+        }
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void onBalance(OperationResult<Integer> balance) {
+            updates.add(balance);
+        }
+
+        OperationResult<Integer> next() throws InterruptedException {
+            final OperationResult<Integer> update = updates.poll(10, TimeUnit.SECONDS);
+            assertNotNull(update);
+            return update;
+        }
+    }
+
+}
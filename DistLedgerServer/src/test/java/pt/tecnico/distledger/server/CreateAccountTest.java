@@ -1,14 +1,21 @@
 package pt.tecnico.distledger.server;
 
+import io.grpc.Status;
 import lombok.SneakyThrows;
 import lombok.val;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import pt.tecnico.distledger.common.VectorClock;
 import pt.tecnico.distledger.server.domain.Account;
 import pt.tecnico.distledger.server.domain.ServerState;
+import pt.tecnico.distledger.server.domain.operation.CreateOp;
+import pt.tecnico.distledger.server.exceptions.NotYetConsistentException;
 import pt.tecnico.distledger.server.exceptions.ServerUnavailableException;
 
+import java.util.List;
+import java.util.Map;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
@@ -24,6 +31,11 @@ class CreateAccountTest {
         state = new ServerState();
     }
 
+    @AfterEach
+    void tearDown() {
+        state.close();
+    }
+
     @Test
     @SneakyThrows
     void createBroker() {
@@ -89,4 +101,33 @@ class CreateAccountTest {
         assertEquals(0, state.getLedger().size());
     }
 
+    @Test
+    @SneakyThrows
+    void cannotCreateAccountBeforeCatchingUpWithOwnOperations() {
+        // The client has seen two operations of this replica, which it has lost (e.g., restarted without its log)
+        val qualifier = state.getQualifier();
+        val prevTimestamp = new VectorClock(Map.of(qualifier, 2));
+
+        val exception = assertThrows(
+                NotYetConsistentException.class,
+                () -> state.createAccount(userId, prevTimestamp)
+        );
+        assertEquals(Status.Code.UNAVAILABLE, exception.toGrpcRuntimeException().getStatus().getCode());
+        assertThrows(
+                NotYetConsistentException.class,
+                () -> state.transferTo(ServerState.BROKER_ID, userId, 1, prevTimestamp)
+        );
+        assertEquals(0, state.getLedger().size());
+
+        // Another replica propagates the lost operations back
+        state.addToLedger(List.of(
+                new CreateOp("user0", new VectorClock(), new VectorClock(Map.of(qualifier, 1)), false),
+                new CreateOp("user00", new VectorClock(Map.of(qualifier, 1)), prevTimestamp, false)
+        ));
+
+        val result = state.createAccount(userId, prevTimestamp);
+        assertEquals(3, result.vectorClock().getValue(qualifier));
+        assertEquals(3, state.getLedger().size());
+    }
+
 }
@@ -0,0 +1,176 @@
+package pt.tecnico.distledger.server;
+
+import io.grpc.Server;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+import lombok.SneakyThrows;
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pt.tecnico.distledger.common.VectorClock;
+import pt.tecnico.distledger.server.exceptions.ServerUnavailableException;
+import pt.tecnico.distledger.server.service.CrossServerDistLedgerServiceImpl;
+import pt.ulisboa.tecnico.distledger.contract.distledgerserver.CrossServerDistLedger.PropagateStateRequest;
+import pt.ulisboa.tecnico.distledger.contract.distledgerserver.CrossServerDistLedger.PropagateStateResponse;
+import pt.ulisboa.tecnico.distledger.contract.distledgerserver.DistLedgerCrossServerServiceGrpc.DistLedgerCrossServerServiceImplBase;
+import pt.ulisboa.tecnico.distledger.contract.namingserver.NamingServerDistLedger.ServerAddress;
+import pt.ulisboa.tecnico.distledger.contract.namingserver.NamingServerDistLedger.ServerInfo;
+
+import java.net.ServerSocket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+* Test gossiping to several replicas at once, over gRPC, when some of them are slow or cannot be reached.
+ */
+class GossipFanOutTest {
+
+    private static final long DEADLINE_MILLIS = 10_000;
+    private static final long QUEUE_WAIT_MILLIS = 1000;
+    private static final GossipScheduler.Config NO_SCHEDULER = new GossipScheduler.Config(0, 0, false, 0, 0, 0);
+
+    private final List<Server> servers = new ArrayList<>();
+    private final List<ServerCoordinator> coordinators = new ArrayList<>();
+
+    private ServerCoordinator replicaA;
+    private ServerCoordinator replicaB;
+
+    @BeforeEach
+    @SneakyThrows
+    void setup() {
+        System.setProperty("gossip.deadline", Long.toString(DEADLINE_MILLIS));
+        System.setProperty("gossip.queueWait", Long.toString(QUEUE_WAIT_MILLIS));
+        // Small chunks, so that there are many more chunks than fit in a peer's queue and its transport's buffers
+        System.setProperty("gossip.chunkBytes", "1024");
+        replicaA = coordinator("A");
+        replicaB = coordinator("B");
+    }
+
+    @AfterEach
+    @SneakyThrows
+    void tearDown() {
+        System.clearProperty("gossip.deadline");
+        System.clearProperty("gossip.queueWait");
+        System.clearProperty("gossip.chunkBytes");
+        for (Server server : servers) {
+            server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        }
+        coordinators.forEach(ServerCoordinator::shutdown);
+    }
+
+    @Test
+    @SneakyThrows
+    void stalledReceiverDoesNotGrowSenderQueue() {
+        final int operations = 4000;
+        for (int i = 0; i < operations; i++) {
+            replicaA.getServerState().createAccount("user" + i, new VectorClock());
+        }
+        val portB = serve(new CrossServerDistLedgerServiceImpl(replicaB), 1024 * 1024);
+        // Never reads what is sent to it, and has a small flow control window, so its sender soon stops being ready
+        val portStalled = serve(new StalledCrossServerService(), 16 * 1024);
+        replicaA.updatePeers(List.of(server("B", portB), server("S", portStalled)));
+
+        final long start = System.nanoTime();
+        val sends = replicaA.propagateUsingGossip(List.of("B", "S"));
+        final long passMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        // The pass waits for the stalled replica's queue to drain only for a short while, well before the deadline
+        assertTrue(passMillis < DEADLINE_MILLIS / 2, "Pass took " + passMillis + " ms");
+        val failure = assertThrows(CompletionException.class, () -> sends.get("S").join());
+        assertTrue(failure.getCause() instanceof ServerUnavailableException);
+        // The stalled replica's queue filled up, but never grew past its bound
+        assertEquals(ServerCoordinator.MAX_QUEUED_CHUNKS, replicaA.getPeakQueuedChunks());
+
+        // The replica that keeps up still receives every operation, even though the other one failed
+        sends.get("B").join();
+        assertEquals(operations, replicaB.getServerState().getLedger().size());
+    }
+
+    @Test
+    @SneakyThrows
+    void unreachableReplicaDoesNotFailTheOthers() {
+        final int operations = 100;
+        for (int i = 0; i < operations; i++) {
+            replicaA.getServerState().createAccount("user" + i, new VectorClock());
+        }
+        val portB = serve(new CrossServerDistLedgerServiceImpl(replicaB), 1024 * 1024);
+        replicaA.updatePeers(List.of(server("B", portB), server("U", unusedPort())));
+
+        final long start = System.nanoTime();
+        val result = replicaA.gossipTo(List.of("U", "B"));
+        final long roundMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(List.of("B"), result.gossipedTo());
+        assertEquals(List.of("U"), result.failed());
+        // The unreachable replica is not waited for until the deadline
+        assertTrue(roundMillis < DEADLINE_MILLIS / 2, "Round took " + roundMillis + " ms");
+        assertEquals(operations, replicaB.getServerState().getLedger().size());
+    }
+
+    @SneakyThrows
+    private ServerCoordinator coordinator(String qualifier) {
+        val coordinator = new ServerCoordinator(0, qualifier, NO_SCHEDULER);
+        coordinators.add(coordinator);
+        return coordinator;
+    }
+
+    @SneakyThrows
+    private int serve(DistLedgerCrossServerServiceImplBase service, int flowControlWindow) {
+        val server = NettyServerBuilder.forPort(0)
+                .flowControlWindow(flowControlWindow)
+                .addService(service)
+                .build()
+                .start();
+        servers.add(server);
+        return server.getPort();
+    }
+
+    @SneakyThrows
+    private static int unusedPort() {
+        try (val socket = new ServerSocket(0)) {
+            return socket.getLocalPort();
+        }
+    }
+
+    private static ServerInfo server(String qualifier, int port) {
+        return ServerInfo.newBuilder()
+                .setQualifier(qualifier)
+                .setAddress(ServerAddress.newBuilder().setHost("localhost").setPort(port).build())
+                .build();
+    }
+
+    /**
+     * A replica that accepts ledger streams but never reads from them nor answers.
+     */
+    private static class StalledCrossServerService extends DistLedgerCrossServerServiceImplBase {
+
+        @Override
+        public StreamObserver<PropagateStateRequest> propagateStateStream(
+                StreamObserver<PropagateStateResponse> responseObserver
+        ) {
+            ((ServerCallStreamObserver<PropagateStateResponse>) responseObserver).disableAutoInboundFlowControl();
+            return new StreamObserver<>() {
+                @Override
+                public void onNext(PropagateStateRequest value) {
+                }
+
+                @Override
+                public void onError(Throwable t) {
+                }
+
+                @Override
+                public void onCompleted() {
+                }
+            };
+        }
+    }
+
+}
@@ -0,0 +1,38 @@
+package pt.tecnico.distledger.server;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GossipSchedulerTest {
+
+    private static final GossipScheduler.Config CONFIG = new GossipScheduler.Config(1000, 2, true, 100, 8000, 50);
+
+    @Test
+    void selectPeersWithLargestBacklog() {
+        val backlogs = Map.of("A", 5L, "B", 0L, "C", 20L, "D", 10L);
+
+        assertEquals(List.of("C", "D"), GossipScheduler.selectPeers(backlogs, 2));
+        assertEquals(List.of("C", "D", "A"), GossipScheduler.selectPeers(backlogs, 0));
+    }
+
+    @Test
+    void peersWithoutBacklogAreNotSelected() {
+        assertTrue(GossipScheduler.selectPeers(Map.of("A", 0L, "B", 0L), 0).isEmpty());
+    }
+
+    @Test
+    void intervalAdaptsToBacklog() {
+        assertEquals(100, GossipScheduler.nextIntervalMillis(1000, 50, CONFIG));
+        assertEquals(1000, GossipScheduler.nextIntervalMillis(100, 10, CONFIG));
+        assertEquals(2000, GossipScheduler.nextIntervalMillis(1000, 0, CONFIG));
+        assertEquals(2000, GossipScheduler.nextIntervalMillis(100, 0, CONFIG));
+        assertEquals(8000, GossipScheduler.nextIntervalMillis(8000, 0, CONFIG));
+    }
+
+}
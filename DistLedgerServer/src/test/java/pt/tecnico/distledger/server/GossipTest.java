@@ -4,19 +4,26 @@ import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.val;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import pt.tecnico.distledger.common.VectorClock;
+import pt.tecnico.distledger.server.domain.Ledger;
 import pt.tecnico.distledger.server.domain.ServerState;
 import pt.tecnico.distledger.server.domain.operation.CreateOp;
 import pt.tecnico.distledger.server.domain.operation.Operation;
 import pt.tecnico.distledger.server.domain.operation.TransferOp;
+import pt.tecnico.distledger.server.persistence.DisabledOperationArchive;
+import pt.tecnico.distledger.server.persistence.DisabledOperationLog;
+import pt.tecnico.distledger.server.visitor.FanOutOperationsToGrpcVisitor;
 import pt.tecnico.distledger.server.visitor.OperationVisitor;
+import pt.ulisboa.tecnico.distledger.contract.DistLedgerCommonDefinitions;
 
 import java.util.ArrayList;
 import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 /**
@@ -36,11 +43,18 @@ public class GossipTest {
     private static ServerState state2;
     private static ServerState state3;
 
+    private final List<ServerState> replicas = new ArrayList<>();
+
     @BeforeEach
     void setup() {
-        state1 = new ServerState(SERVER_A);
-        state2 = new ServerState(SERVER_B);
-        state3 = new ServerState(SERVER_C);
+        state1 = replica(SERVER_A);
+        state2 = replica(SERVER_B);
+        state3 = replica(SERVER_C);
+    }
+
+    @AfterEach
+    void tearDown() {
+        replicas.forEach(ServerState::close);
     }
 
     @Test
@@ -170,7 +184,7 @@ public class GossipTest {
         assertEquals(ACCOUNT_2, toSendBtoA1.get(0).getAccount());
 
         propagateGossip(state2, state1);
-        state2.updateGossipTimestamp(SERVER_A, state2.getReplicaTimestamp().clone());
+        state2.updateGossipTimestamp(SERVER_A, state1.getKnownTimestamp());
 
         val ledgerA1 = getLedgerOfReplica(state1);
         assertEquals(2, ledgerA1.size());
@@ -190,7 +204,7 @@ public class GossipTest {
         assertEquals(ACCOUNT_3, toSendCtoB.get(0).getAccount());
 
         propagateGossip(state3, state2);
-        state3.updateGossipTimestamp(SERVER_B, state3.getReplicaTimestamp().clone());
+        state3.updateGossipTimestamp(SERVER_B, state2.getKnownTimestamp());
 
         val ledgerB = getLedgerOfReplica(state2);
         assertEquals(2, ledgerB.size());
@@ -210,7 +224,7 @@ public class GossipTest {
         assertEquals(ACCOUNT_3, toSendBtoA2.get(0).getAccount());
 
         propagateGossip(state2, state1);
-        state2.updateGossipTimestamp(SERVER_A, state2.getReplicaTimestamp().clone());
+        state2.updateGossipTimestamp(SERVER_A, state1.getKnownTimestamp());
 
         val ledgerA2 = getLedgerOfReplica(state1);
         assertEquals(3, ledgerA2.size());
@@ -226,6 +240,191 @@ public class GossipTest {
         assertTrue(ledgerA2.get(2).isStable());
     }
 
+    @Test
+    @SneakyThrows
+    public void operationsReceivedInReverseCausalOrderAreStabilized() {
+        // ACCOUNT_1 happens before ACCOUNT_2, which happens before ACCOUNT_3, all created on different replicas
+
+        val userClock = new VectorClock();
+        userClock.updateVectorClock(state1.createAccount(ACCOUNT_1, userClock.clone()).vectorClock());
+        propagateGossip(state1, state2);
+        userClock.updateVectorClock(state2.createAccount(ACCOUNT_2, userClock.clone()).vectorClock());
+        propagateGossip(state2, state3);
+        userClock.updateVectorClock(state3.createAccount(ACCOUNT_3, userClock.clone()).vectorClock());
+
+        assertEquals(clock(1, 1, 1), userClock);
+
+        // Deliver the operations to a fresh replica, in reverse causal order
+
+        val operations = getLedgerOfReplica(state3);
+        val unstableOperations = new ArrayList<Operation>();
+        for (int i = operations.size() - 1; i >= 0; i--) {
+            unstableOperations.add(clone(operations.get(i)));
+        }
+        val replica = replica(SERVER_C);
+        replica.addToLedger(unstableOperations.subList(0, 2));
+
+        assertEquals(2, replica.getLedger().size());
+        assertTrue(getLedgerOfReplica(replica).stream().noneMatch(Operation::isStable));
+
+        replica.addToLedger(unstableOperations.subList(2, 3));
+
+        val ledger = getLedgerOfReplica(replica);
+        assertEquals(3, ledger.size());
+        assertEquals(ACCOUNT_1, ledger.get(0).getAccount());
+        assertEquals(ACCOUNT_2, ledger.get(1).getAccount());
+        assertEquals(ACCOUNT_3, ledger.get(2).getAccount());
+        assertTrue(ledger.stream().allMatch(Operation::isStable));
+        assertEquals(4, replica.getAccounts().size());
+    }
+
+    @Test
+    @SneakyThrows
+    public void onlyAcknowledgedOperationsAreSkipped() {
+        val userClock = new VectorClock();
+        userClock.updateVectorClock(state1.createAccount(ACCOUNT_1, userClock.clone()).vectorClock());
+        userClock.updateVectorClock(state1.createAccount(ACCOUNT_2, userClock.clone()).vectorClock());
+
+        // Replica B never received the operations, so it does not acknowledge them
+        state1.updateGossipTimestamp(SERVER_B, state2.getKnownTimestamp());
+        assertEquals(2, getOperationsToSendThroughGossip(state1, SERVER_B).size());
+
+        // Replica B received only the first operation (e.g., from replica C)
+        val firstOperation = clone(getLedgerOfReplica(state1).get(0));
+        state2.addToLedger(List.of(firstOperation));
+        state1.updateGossipTimestamp(SERVER_B, state2.getKnownTimestamp());
+
+        val toSend = getOperationsToSendThroughGossip(state1, SERVER_B);
+        assertEquals(1, toSend.size());
+        assertEquals(ACCOUNT_2, toSend.get(0).getAccount());
+
+        // A stale acknowledgement does not move the acknowledged timestamp backwards
+        propagateGossip(state1, state2);
+        state1.updateGossipTimestamp(SERVER_B, state2.getKnownTimestamp());
+        state1.updateGossipTimestamp(SERVER_B, new VectorClock());
+        assertEquals(0, getOperationsToSendThroughGossip(state1, SERVER_B).size());
+    }
+
+    @Test
+    @SneakyThrows
+    public void singlePassSortsOperationsByReplica() {
+        state1.createAccount(ACCOUNT_1, new VectorClock());
+        state1.createAccount(ACCOUNT_2, new VectorClock());
+        state1.createAccount(ACCOUNT_3, new VectorClock());
+
+        // Replica B has the first operation, and replica C has none
+        state2.addToLedger(List.of(clone(getLedgerOfReplica(state1).get(0))));
+        state1.updateGossipTimestamp(SERVER_B, state2.getKnownTimestamp());
+
+        val acknowledgedTimestamps = List.of(state1.getGossipTimestamp(SERVER_B), state1.getGossipTimestamp(SERVER_C));
+        val toB = new ArrayList<DistLedgerCommonDefinitions.Operation>();
+        val toC = new ArrayList<DistLedgerCommonDefinitions.Operation>();
+        val visitor = new FanOutOperationsToGrpcVisitor(
+                1024,
+                acknowledgedTimestamps,
+                List.of(toB::addAll, toC::addAll)
+        );
+        state1.operateOverLedgerToPropagateToReplicas(visitor, acknowledgedTimestamps);
+        visitor.flush();
+
+        val accountsToB = toB.stream().map(DistLedgerCommonDefinitions.Operation::getUserId).toList();
+        assertEquals(List.of(ACCOUNT_2, ACCOUNT_3), accountsToB);
+        assertEquals(3, toC.size());
+        assertEquals(2, visitor.getOperationCount(0));
+        assertEquals(3, visitor.getOperationCount(1));
+        // Each operation is converted once, and the same message is queued for every replica missing it
+        assertSame(toC.get(1), toB.get(0));
+        assertSame(toC.get(2), toB.get(1));
+
+        // Nothing is visited once every replica has acknowledged every operation
+        val visited = new ClonedOperationVisitor(false);
+        state1.operateOverLedgerToPropagateToReplicas(visited, List.of(state1.getKnownTimestamp()));
+        assertEquals(0, visited.getOperations().size());
+    }
+
+    @Test
+    @SneakyThrows
+    public void operationsNotAcknowledgedAreFoundByOrigin() {
+        state1.createAccount(ACCOUNT_1, new VectorClock());
+        state1.createAccount(ACCOUNT_2, new VectorClock());
+        state2.createAccount(ACCOUNT_3, new VectorClock());
+        state2.transferTo(ServerState.BROKER_ID, ACCOUNT_3, 10, new VectorClock());
+
+        // Replica C receives the operations of B before the ones of A
+        propagateGossip(state2, state3);
+        propagateGossip(state1, state3);
+
+        // Replica A has acknowledged its first operation, and none of B's
+        state3.updateGossipTimestamp(SERVER_A, clock(1, 0, 0));
+        val toSend = getOperationsToSendThroughGossip(state3, SERVER_A);
+        assertEquals(3, toSend.size());
+        assertEquals(clock(2, 0, 0), toSend.get(0).getUniqueTimestamp());
+        assertEquals(clock(0, 1, 0), toSend.get(1).getUniqueTimestamp());
+        assertEquals(clock(0, 2, 0), toSend.get(2).getUniqueTimestamp());
+
+        state3.updateGossipTimestamp(SERVER_A, clock(2, 1, 0));
+        val remaining = getOperationsToSendThroughGossip(state3, SERVER_A);
+        assertEquals(1, remaining.size());
+        assertTrue(remaining.get(0) instanceof TransferOp);
+    }
+
+    @Test
+    public void operationsMadeReadyTogetherAreStabilizedInOneBatch() {
+        val valueTimestamp = new VectorClock();
+        val batches = new ArrayList<VectorClock>();
+        val ledger = new Ledger(
+                valueTimestamp,
+                operation -> valueTimestamp.updateVectorClock(operation.getUniqueTimestamp()),
+                batches::add,
+                new DisabledOperationLog(),
+                new DisabledOperationArchive()
+        );
+
+        // Each operation depends on the previous one, and they are received in reverse order
+        ledger.addAllUnstable(List.of(
+                new CreateOp(ACCOUNT_3, clock(0, 2, 0), clock(0, 3, 0), false),
+                new CreateOp(ACCOUNT_2, clock(0, 1, 0), clock(0, 2, 0), false)
+        ));
+        assertEquals(0, batches.size());
+
+        ledger.addAllUnstable(List.of(new CreateOp(ACCOUNT_1, clock(0, 0, 0), clock(0, 1, 0), false)));
+        assertEquals(List.of(clock(0, 3, 0)), batches);
+        assertEquals(clock(0, 3, 0), valueTimestamp);
+    }
+
+    @Test
+    public void largeBatchIsPublishedInBoundedParts() {
+        val valueTimestamp = new VectorClock();
+        val batches = new ArrayList<VectorClock>();
+        val ledger = new Ledger(
+                valueTimestamp,
+                operation -> valueTimestamp.updateVectorClock(operation.getUniqueTimestamp()),
+                batches::add,
+                new DisabledOperationLog(),
+                new DisabledOperationArchive()
+        );
+
+        // Each operation depends on the previous one, and they are all made ready by the first one
+        final int operations = 2 * Ledger.MAX_STABILIZED_BATCH + 1;
+        val received = new ArrayList<Operation>();
+        for (int counter = operations; counter > 1; counter--) {
+            received.add(new CreateOp("user" + counter, clock(0, counter - 1, 0), clock(0, counter, 0), false));
+        }
+        ledger.addAllUnstable(received);
+        assertEquals(0, batches.size());
+
+        ledger.addAllUnstable(List.of(new CreateOp("user1", clock(0, 0, 0), clock(0, 1, 0), false)));
+        assertEquals(
+                List.of(
+                        clock(0, Ledger.MAX_STABILIZED_BATCH, 0),
+                        clock(0, 2 * Ledger.MAX_STABILIZED_BATCH, 0),
+                        clock(0, operations, 0)
+                ),
+                batches
+        );
+        assertEquals(clock(0, operations, 0), valueTimestamp);
+    }
+
     /**
      * Utility function to create a vector clock for 3 replicas, A, B and C.
      *
@@ -242,6 +441,38 @@ public class GossipTest {
         return clock;
     }
 
+    @Test
+    @SneakyThrows
+    public void operationsAcknowledgedByAllReplicasAreDiscarded() {
+        state1.createAccount(ACCOUNT_1, new VectorClock());
+        state1.transferTo(ServerState.BROKER_ID, ACCOUNT_1, 10, new VectorClock());
+
+        propagateGossip(state1, state2);
+        state1.updateGossipTimestamp(SERVER_B, state2.getKnownTimestamp());
+
+        // Replica C has not acknowledged anything yet
+        assertEquals(0, state1.discardAcknowledgedOperations(List.of(SERVER_B, SERVER_C), Long.MAX_VALUE));
+
+        propagateGossip(state1, state3);
+        state1.updateGossipTimestamp(SERVER_C, state3.getKnownTimestamp());
+        state1.createAccount(ACCOUNT_2, new VectorClock());
+
+        assertEquals(2, state1.discardAcknowledgedOperations(List.of(SERVER_B, SERVER_C), Long.MAX_VALUE));
+        assertEquals(1, state1.getLedger().size());
+        assertEquals(10, state1.getAccounts().get(ACCOUNT_1).getBalance());
+
+        // Discarded operations are still known, so they are not added again
+        propagateGossip(state2, state1);
+        assertEquals(1, state1.getLedger().size());
+        assertEquals(10, state1.getAccounts().get(ACCOUNT_1).getBalance());
+    }
+
+    private ServerState replica(String qualifier) {
+        val replica = new ServerState(qualifier);
+        replicas.add(replica);
+        return replica;
+    }
+
     /**
      * Simulate gossip propagation between two replicas. Skips gRPC for simplicity.
      *
@@ -280,6 +511,18 @@ public class GossipTest {
         return visitor.getOperations();
     }
 
+    /**
+     * Create an unstable copy of the given operation.
+     *
+     * @param operation The operation to copy.
+     * @return The copied operation.
+     */
+    private Operation clone(Operation operation) {
+        val visitor = new ClonedOperationVisitor(false);
+        operation.accept(visitor);
+        return visitor.getOperations().get(0);
+    }
+
     @RequiredArgsConstructor
     static class ClonedOperationVisitor extends OperationVisitor {
         private final boolean keepStable;
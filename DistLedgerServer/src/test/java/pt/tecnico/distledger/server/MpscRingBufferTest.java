@@ -0,0 +1,156 @@
+package pt.tecnico.distledger.server;
+
+import lombok.SneakyThrows;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import pt.tecnico.distledger.server.domain.LedgerApplier;
+import pt.tecnico.distledger.server.domain.MpscRingBuffer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MpscRingBufferTest {
+
+    private static final long BACKOFF_NANOS = 10_000;
+
+    @Test
+    void bufferIsFirstInFirstOut() {
+        val buffer = new MpscRingBuffer<Integer>(3);
+        assertEquals(4, buffer.capacity());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(buffer.offer(i));
+        }
+        assertFalse(buffer.offer(4));
+
+        assertEquals(0, buffer.poll());
+        assertTrue(buffer.offer(4));
+        for (int i = 1; i <= 4; i++) {
+            assertEquals(i, buffer.poll());
+        }
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    @SneakyThrows
+    void elementsOfEachProducerAreConsumedInOrder() {
+        final int producers = 4;
+        final int elementsPerProducer = 10_000;
+        val buffer = new MpscRingBuffer<int[]>(16);
+
+        final List<Thread> threads = new ArrayList<>();
+        for (int producer = 0; producer < producers; producer++) {
+            final int id = producer;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < elementsPerProducer; i++) {
+                    while (!buffer.offer(new int[]{id, i})) {
+                        // Back off like the applier does, rather than spin: there may be fewer processors than threads
+                        LockSupport.parkNanos(BACKOFF_NANOS);
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+
+        final int[] next = new int[producers];
+        for (int consumed = 0; consumed < producers * elementsPerProducer; ) {
+            final int[] element = buffer.poll();
+            if (element == null) {
+                LockSupport.parkNanos(BACKOFF_NANOS);
+                continue;
+            }
+            assertEquals(next[element[0]]++, element[1]);
+            consumed++;
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    @SneakyThrows
+    void applierRunsChangesInSubmissionOrder() {
+        final List<Integer> applied = new ArrayList<>();
+        try (val applier = new LedgerApplier("test-applier", 2)) {
+            final List<CompletableFuture<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                final int change = i;
+                results.add(applier.submit(() -> {
+                    applied.add(change);
+                    return change * 2;
+                }));
+            }
+            for (int i = 0; i < 100; i++) {
+                assertEquals(i * 2, results.get(i).get(10, TimeUnit.SECONDS));
+            }
+
+            val failed = applier.submit(() -> {
+                throw new IllegalArgumentException("Invalid change");
+            });
+            assertTrue(failed.handle((result, failure) -> failure instanceof IllegalArgumentException).join());
+        }
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, applied.get(i));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void applierKeepsRunningAfterChangeThrowsError() {
+        try (val applier = new LedgerApplier("test-applier", 2)) {
+            val failed = applier.submit(() -> {
+                throw new StackOverflowError();
+            });
+            val outcome = failed.handle((result, failure) -> failure instanceof StackOverflowError);
+            assertTrue(outcome.get(10, TimeUnit.SECONDS));
+
+            assertEquals(42, applier.submit(() -> 42).get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void changesSubmittedWhileClosingAreEitherAppliedOrRejected() {
+        for (int round = 0; round < 100; round++) {
+            val applier = new LedgerApplier("test-applier", 4);
+            final List<CompletableFuture<Integer>> results = new CopyOnWriteArrayList<>();
+            final List<Thread> producers = new ArrayList<>();
+            for (int producer = 0; producer < 4; producer++) {
+                producers.add(new Thread(() -> {
+                    try {
+                        for (int i = 0; i < 50; i++) {
+                            final int change = i;
+                            results.add(applier.submit(() -> change));
+                        }
+                    } catch (IllegalStateException e) {
+                        // Submitted after the applier was closed
+                    }
+                }));
+            }
+            producers.forEach(Thread::start);
+            applier.close();
+            for (Thread producer : producers) {
+                producer.join();
+            }
+
+            // No change is left waiting forever
+            for (CompletableFuture<Integer> result : results) {
+                val outcome = result.handle(
+                        (value, failure) -> value != null || failure instanceof IllegalStateException
+                );
+                assertTrue(outcome.get(10, TimeUnit.SECONDS));
+            }
+        }
+    }
+
+}
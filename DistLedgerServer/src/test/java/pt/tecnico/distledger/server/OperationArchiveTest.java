@@ -0,0 +1,124 @@
+package pt.tecnico.distledger.server;
+
+import lombok.SneakyThrows;
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pt.tecnico.distledger.common.VectorClock;
+import pt.tecnico.distledger.server.domain.ServerState;
+import pt.tecnico.distledger.server.domain.operation.CreateOp;
+import pt.tecnico.distledger.server.domain.operation.TransferOp;
+import pt.tecnico.distledger.server.persistence.DisabledOperationLog;
+import pt.tecnico.distledger.server.persistence.MappedOperationArchive;
+import pt.tecnico.distledger.server.visitor.ConvertOperationsToGrpcVisitor;
+import pt.tecnico.distledger.server.visitor.OperationVisitor;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OperationArchiveTest {
+
+    private static final String SERVER_A = "A";
+    private static final String SERVER_B = "B";
+
+    private static final String userId = "user1";
+
+    @TempDir
+    Path directory;
+
+    private final List<ServerState> states = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        states.forEach(ServerState::close);
+    }
+
+    @Test
+    @SneakyThrows
+    void discardedOperationsAreArchived() {
+        val archive = new MappedOperationArchive(directory, 2);
+        val state = state(archive);
+        state.createAccount(userId, new VectorClock());
+        state.transferTo(ServerState.BROKER_ID, userId, 10, new VectorClock());
+        state.transferTo(ServerState.BROKER_ID, userId, 20, new VectorClock());
+        val expectedLedger = getLedger(state);
+
+        // Not enough operations acknowledged to fill a segment
+        state.updateGossipTimestamp(SERVER_B, clock(1));
+        assertEquals(0, state.discardAcknowledgedOperations(List.of(SERVER_B), Long.MAX_VALUE));
+
+        state.updateGossipTimestamp(SERVER_B, clock(2));
+        assertEquals(2, state.discardAcknowledgedOperations(List.of(SERVER_B), Long.MAX_VALUE));
+        assertEquals(1, state.getLedger().size());
+        assertEquals(2, archive.size());
+
+        // The ledger still includes the archived operations, in order
+        assertEquals(expectedLedger, getLedger(state));
+
+        // Archived operations acknowledged by the other replica are not read to be propagated to it
+        val propagated = new ArrayList<Integer>();
+        state.getLedger().operateOverLedgerNotCoveredBy(new OperationVisitor() {
+            @Override
+            public void visit(CreateOp operation) {
+                propagated.add(0);
+            }
+
+            @Override
+            public void visit(TransferOp operation) {
+                propagated.add(operation.getAmount());
+            }
+        }, clock(2));
+        assertEquals(List.of(20), propagated);
+
+        // The archive is mapped again when reopened
+        val reopened = new MappedOperationArchive(directory, 2);
+        assertEquals(2, reopened.size());
+        val archived = new ConvertOperationsToGrpcVisitor();
+        reopened.segments().forEach(segment -> segment.forEach(operation -> operation.accept(archived)));
+        assertEquals(expectedLedger.subList(0, 2), archived.getLedger());
+
+        // Only the operations of a segment not covered by a timestamp are decoded
+        val notCovered = new ConvertOperationsToGrpcVisitor();
+        reopened.segments().get(0).forEachNotCoveredBy(clock(1), operation -> operation.accept(notCovered));
+        assertEquals(expectedLedger.subList(1, 2), notCovered.getLedger());
+    }
+
+    @Test
+    @SneakyThrows
+    void onlyOperationsWithinLimitAreDiscarded() {
+        val archive = new MappedOperationArchive(directory, 1);
+        val state = state(archive);
+        state.createAccount(userId, new VectorClock());
+        state.transferTo(ServerState.BROKER_ID, userId, 10, new VectorClock());
+        state.updateGossipTimestamp(SERVER_B, clock(2));
+
+        assertEquals(1, state.discardAcknowledgedOperations(List.of(SERVER_B), 1));
+        assertEquals(1, state.discardAcknowledgedOperations(List.of(SERVER_B), 2));
+        assertEquals(0, state.discardAcknowledgedOperations(List.of(SERVER_B), 2));
+        assertEquals(2, archive.segments().size());
+        assertEquals(0, state.getLedger().size());
+    }
+
+    private ServerState state(MappedOperationArchive archive) {
+        val state = new ServerState(SERVER_A, new DisabledOperationLog(), archive);
+        states.add(state);
+        return state;
+    }
+
+    private static VectorClock clock(int value) {
+        val clock = new VectorClock();
+        clock.setValue(SERVER_A, value);
+        return clock;
+    }
+
+    private static List<?> getLedger(ServerState state) {
+        val visitor = new ConvertOperationsToGrpcVisitor();
+        state.operateOverLedger(visitor);
+        return visitor.getLedger();
+    }
+
+}
@@ -0,0 +1,103 @@
+package pt.tecnico.distledger.server;
+
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import pt.tecnico.distledger.server.domain.OperationIdSet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OperationIdSetTest {
+
+    @Test
+    void inOrderAdvancesWatermark() {
+        val set = new OperationIdSet();
+        for (int counter = 1; counter <= 1000; counter++) {
+            assertTrue(set.add(0, counter));
+        }
+
+        assertEquals(1000, set.getWatermark(0));
+        assertArrayEquals(new int[0], set.getAboveWatermark(0));
+        assertFalse(set.add(0, 500));
+        assertTrue(set.contains(0, 1000));
+        assertFalse(set.contains(0, 1001));
+        assertFalse(set.contains(1, 1));
+    }
+
+    @Test
+    void gapsAreKeptAboveWatermark() {
+        val set = new OperationIdSet();
+        set.add(2, 1);
+        set.add(2, 3);
+        set.add(2, 64);
+        set.add(2, 1000);
+
+        assertEquals(1, set.getWatermark(2));
+        assertArrayEquals(new int[]{3, 64, 1000}, set.getAboveWatermark(2));
+        assertFalse(set.add(2, 64));
+        assertFalse(set.contains(2, 2));
+
+        // Filling the gap moves the watermark up to the next one
+        assertTrue(set.add(2, 2));
+        assertEquals(3, set.getWatermark(2));
+        assertArrayEquals(new int[]{64, 1000}, set.getAboveWatermark(2));
+    }
+
+    @Test
+    void addAllRaisesWatermark() {
+        val set = new OperationIdSet();
+        set.add(0, 70);
+        set.add(0, 130);
+        set.add(0, 200);
+
+        set.addAll(0, 129, new int[]{300});
+        assertEquals(130, set.getWatermark(0));
+        assertArrayEquals(new int[]{200, 300}, set.getAboveWatermark(0));
+
+        val copy = set.copy();
+        set.add(0, 131);
+        assertEquals(130, copy.getWatermark(0));
+        assertFalse(copy.contains(0, 131));
+
+        val merged = new OperationIdSet();
+        merged.addAll(copy);
+        assertEquals(130, merged.getWatermark(0));
+        assertArrayEquals(new int[]{200, 300}, merged.getAboveWatermark(0));
+    }
+
+    @Test
+    void matchesSortedSetInAnyOrder() {
+        val random = new Random(42);
+        val counters = new ArrayList<Integer>();
+        for (int counter = 1; counter <= 5000; counter++) {
+            counters.add(counter);
+        }
+        // Shuffle within small windows, as operations arriving close to their origin's order
+        for (int from = 0; from < counters.size(); from += 200) {
+            Collections.shuffle(counters.subList(from, Math.min(from + 200, counters.size())), random);
+        }
+
+        val set = new OperationIdSet();
+        val expected = new TreeSet<Integer>();
+        for (int counter : counters) {
+            assertEquals(expected.add(counter), set.add(0, counter));
+            assertEquals(expected.add(counter), set.add(0, counter));
+
+            int watermark = 0;
+            while (expected.contains(watermark + 1)) {
+                watermark++;
+            }
+            assertEquals(watermark, set.getWatermark(0));
+            assertEquals(expected.tailSet(watermark, false).size(), set.getAboveWatermark(0).length);
+        }
+        assertEquals(5000, set.getWatermark(0));
+    }
+
+}
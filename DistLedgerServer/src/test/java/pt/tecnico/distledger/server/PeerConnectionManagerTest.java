@@ -0,0 +1,58 @@
+package pt.tecnico.distledger.server;
+
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import pt.tecnico.distledger.server.grpc.PeerConnectionManager;
+import pt.ulisboa.tecnico.distledger.contract.namingserver.NamingServerDistLedger.ServerAddress;
+import pt.ulisboa.tecnico.distledger.contract.namingserver.NamingServerDistLedger.ServerInfo;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PeerConnectionManagerTest {
+
+    private final PeerConnectionManager peerConnections = new PeerConnectionManager();
+
+    @AfterEach
+    void tearDown() {
+        peerConnections.close();
+    }
+
+    @Test
+    void connectionsAreKeptAcrossUpdates() {
+        peerConnections.update(List.of(server("B", 2002), server("C", 2003)));
+        val first = peerConnections.get("B").orElseThrow();
+
+        peerConnections.update(List.of(server("B", 2002), server("C", 2003)));
+
+        assertSame(first, peerConnections.get("B").orElseThrow());
+        assertEquals(2, peerConnections.qualifiers().size());
+    }
+
+    @Test
+    void connectionsAreReplacedOrClosedWhenReplicasMoveOrLeave() {
+        peerConnections.update(List.of(server("B", 2002), server("C", 2003)));
+        val first = peerConnections.get("B").orElseThrow();
+
+        peerConnections.update(List.of(server("B", 2004)));
+
+        val moved = peerConnections.get("B").orElseThrow();
+        assertNotSame(first, moved);
+        assertEquals(2004, moved.getServerInfo().getAddress().getPort());
+        assertTrue(peerConnections.get("C").isEmpty());
+        assertEquals(List.of("B"), peerConnections.qualifiers());
+    }
+
+    private static ServerInfo server(String qualifier, int port) {
+        return ServerInfo.newBuilder()
+                .setQualifier(qualifier)
+                .setAddress(ServerAddress.newBuilder().setHost("localhost").setPort(port).build())
+                .build();
+    }
+
+}
@@ -0,0 +1,136 @@
+package pt.tecnico.distledger.server;
+
+import lombok.SneakyThrows;
+import lombok.val;
+import org.junit.jupiter.api.Test;
+import pt.tecnico.distledger.server.domain.SegmentedLog;
+
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class SegmentedLogTest {
+
+    @Test
+    void emptyLog() {
+        val log = new SegmentedLog<Integer>();
+
+        assertEquals(0, log.size());
+        assertThrows(IndexOutOfBoundsException.class, () -> log.get(0));
+    }
+
+    @Test
+    void appendAcrossSegments() {
+        val log = new SegmentedLog<Integer>();
+        final int count = 100_000;
+
+        for (int i = 0; i < count; i++) {
+            log.append(i);
+        }
+
+        assertEquals(count, log.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, log.get(i));
+        }
+        assertThrows(IndexOutOfBoundsException.class, () -> log.get(count));
+    }
+
+    @Test
+    void iterateOverSnapshot() {
+        val log = new SegmentedLog<Integer>();
+        for (int i = 0; i < 5000; i++) {
+            log.append(i);
+        }
+
+        val visited = new ArrayList<Integer>();
+        val view = log.view();
+        log.append(5000);
+        view.forEach(visited::add);
+
+        assertEquals(5000, visited.size());
+        for (int i = 0; i < visited.size(); i++) {
+            assertEquals(i, visited.get(i));
+        }
+    }
+
+    @Test
+    void truncateHead() {
+        val log = new SegmentedLog<Integer>();
+        for (int i = 0; i < 10_000; i++) {
+            log.append(i);
+        }
+        val view = log.view();
+
+        log.truncateHead(9000);
+
+        assertEquals(9000, log.first());
+        assertEquals(10_000, log.size());
+        assertEquals(9000, log.get(9000));
+        assertThrows(IndexOutOfBoundsException.class, () -> log.get(8999));
+
+        val visited = new ArrayList<Integer>();
+        log.forEach(visited::add);
+        assertEquals(1000, visited.size());
+        assertEquals(9000, visited.get(0));
+
+        // Views taken before the truncation still see the discarded elements
+        val visitedBefore = new ArrayList<Integer>();
+        view.forEach(visitedBefore::add);
+        assertEquals(10_000, visitedBefore.size());
+        assertEquals(0, visitedBefore.get(0));
+    }
+
+    @Test
+    @SneakyThrows
+    void viewWhileAppendingAndTruncating() {
+        val log = new SegmentedLog<Integer>();
+        // Enough elements for the segment directory to grow several times
+        final int count = 300_000;
+        val done = new AtomicBoolean(false);
+        val failure = new AtomicReference<Throwable>();
+
+        val reader = new Thread(() -> {
+            try {
+                for (int round = 0; !done.get(); round++) {
+                    val view = log.view();
+                    // Only the first and last elements of most views are checked, so that many views are taken while
+                    // the directory grows
+                    final int from = round % 100 == 0 || view.size() < 2 ? view.from() : view.to() - 1;
+                    final int[] next = {from};
+                    new SegmentedLog.View<Integer>(view.directory(), from, view.to())
+                            .forEach(element -> assertEquals(next[0]++, element));
+                    assertEquals(view.to(), next[0]);
+                    if (view.size() > 0) {
+                        new SegmentedLog.View<Integer>(view.directory(), view.from(), view.from() + 1)
+                                .forEach(element -> assertEquals(view.from(), element));
+                    }
+                    // The head is never truncated past the last element
+                    final int last = log.size() - 1;
+                    if (last >= 0) {
+                        assertEquals(last, log.get(last));
+                    }
+                }
+            } catch (Throwable e) {
+                failure.set(e);
+            }
+        });
+        reader.start();
+
+        for (int i = 0; i < count; i++) {
+            log.append(i);
+            if (i % 50_000 == 0) {
+                log.truncateHead(Math.max(0, i - 10_000));
+            }
+        }
+        done.set(true);
+        reader.join();
+
+        assertNull(failure.get());
+        assertEquals(count, log.size());
+    }
+
+}
@@ -0,0 +1,127 @@
+package pt.tecnico.distledger.server;
+
+import lombok.SneakyThrows;
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pt.tecnico.distledger.common.VectorClock;
+import pt.tecnico.distledger.server.domain.ServerState;
+import pt.tecnico.distledger.server.factory.OperationFactory;
+import pt.tecnico.distledger.server.persistence.SnapshotStore;
+import pt.tecnico.distledger.server.persistence.WriteAheadLog;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SnapshotTest {
+
+    private static final String QUALIFIER = "A";
+
+    private static final String userId = "user1";
+
+    @TempDir
+    Path directory;
+
+    private final List<ServerState> states = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        states.forEach(ServerState::close);
+    }
+
+    @Test
+    @SneakyThrows
+    void stateIsRestoredFromSnapshotAndLogTail() {
+        val walPath = directory.resolve("A.wal");
+        val snapshotStore = new SnapshotStore(directory.resolve("A.snapshot"));
+
+        try (val operationLog = new WriteAheadLog(walPath, true, 0)) {
+            val state = state(operationLog);
+            state.createAccount(userId, new VectorClock());
+            state.transferTo(ServerState.BROKER_ID, userId, 10, new VectorClock());
+            // Depends on an operation from another replica, so it stays unstable
+            val otherReplica = new VectorClock();
+            otherReplica.setValue("B", 1);
+            state.transferTo(userId, ServerState.BROKER_ID, 1, otherReplica);
+
+            val snapshot = state.takeSnapshot();
+            operationLog.sync();
+            snapshotStore.write(snapshot);
+
+            state.transferTo(ServerState.BROKER_ID, userId, 20, new VectorClock());
+        }
+
+        try (val operationLog = new WriteAheadLog(walPath, true, 0)) {
+            val state = state(operationLog);
+            val snapshot = snapshotStore.read().orElseThrow();
+            state.restore(snapshot);
+            val tail = operationLog.recover(snapshot.logPosition());
+            state.recover(tail.stream().map(new OperationFactory()::createOperationFromGrpc).toList());
+
+            assertEquals(1, tail.size());
+            assertEquals(4, state.getLedger().size());
+            assertEquals(30, state.getAccounts().get(userId).getBalance());
+            assertEquals(970, state.getAccounts().get(ServerState.BROKER_ID).getBalance());
+            assertEquals(4, state.getReplicaTimestamp().getValue(QUALIFIER));
+            assertEquals(4, state.getValueTimestamp().getValue(QUALIFIER));
+            assertEquals(1, state.getReplicaTimestamp().getValue("B"));
+            assertEquals(0, state.getValueTimestamp().getValue("B"));
+
+            // New operations continue after the recovered ones
+            val result = state.createAccount("user2", new VectorClock());
+            assertEquals(5, result.vectorClock().getValue(QUALIFIER));
+            assertTrue(state.getAccounts().containsKey("user2"));
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void snapshotTakenWhileOperationsAreExecutedIsConsistent() {
+        try (val operationLog = new WriteAheadLog(directory.resolve("A.wal"), false, 0)) {
+            val state = state(operationLog);
+            state.createAccount(userId, new VectorClock());
+
+            final int transfers = 500;
+            val writer = new Thread(() -> {
+                for (int i = 0; i < transfers; i++) {
+                    try {
+                        state.transferTo(ServerState.BROKER_ID, userId, 1, new VectorClock());
+                    } catch (Exception e) {
+                        throw new IllegalStateException(e);
+                    }
+                }
+            });
+            writer.start();
+
+            int snapshots = 0;
+            while (writer.isAlive() || snapshots == 0) {
+                val snapshot = state.takeSnapshot();
+                snapshots++;
+
+                // The balances reflect exactly the stable operations, which are the ones the value timestamp covers
+                val stable = snapshot.stableOperations();
+                assertEquals(stable.size(), snapshot.valueTimestamp().getValue(QUALIFIER));
+                assertEquals(stable.size() - 1, snapshot.balances().get(userId));
+                assertEquals(
+                        ServerState.BROKER_INITIAL_AMOUNT - stable.size() + 1,
+                        snapshot.balances().get(ServerState.BROKER_ID)
+                );
+            }
+            writer.join();
+
+            assertEquals(transfers + 1, state.takeSnapshot().stableOperations().size());
+        }
+    }
+
+    private ServerState state(WriteAheadLog operationLog) {
+        val state = new ServerState(QUALIFIER, operationLog);
+        states.add(state);
+        return state;
+    }
+
+}
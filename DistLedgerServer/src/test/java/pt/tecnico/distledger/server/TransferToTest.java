@@ -1,16 +1,25 @@
 package pt.tecnico.distledger.server;
 
 import lombok.SneakyThrows;
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import pt.tecnico.distledger.common.VectorClock;
+import pt.tecnico.distledger.server.domain.Account;
 import pt.tecnico.distledger.server.domain.ServerState;
+import pt.tecnico.distledger.server.domain.Transfer;
 import pt.tecnico.distledger.server.exceptions.InvalidAmountException;
 import pt.tecnico.distledger.server.exceptions.ServerUnavailableException;
 import pt.tecnico.distledger.server.exceptions.TransferBetweenSameAccountException;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class TransferToTest {
 
@@ -27,6 +36,11 @@ class TransferToTest {
         state.createAccount(userId, new VectorClock());
     }
 
+    @AfterEach
+    void tearDown() {
+        state.close();
+    }
+
     @Test
     @SneakyThrows
     void transferToUser() {
@@ -108,4 +122,84 @@ class TransferToTest {
         assertEquals(1, state.getLedger().size());
     }
 
+    @Test
+    @SneakyThrows
+    void balanceIsReadWithTimestampCoveringTransfer() {
+        final VectorClock transferTimestamp = state.transferTo(brokerId, userId, 10, new VectorClock()).vectorClock();
+
+        val result = state.getBalance(userId, transferTimestamp);
+        assertEquals(10, result.value());
+        assertTrue(result.vectorClock().isNewerThanOrEqualTo(transferTimestamp));
+    }
+
+    @Test
+    @SneakyThrows
+    void batchTransferAssignsConsecutiveCounters() {
+        final String otherUserId = "user2";
+        state.createAccount(otherUserId, new VectorClock());
+
+        val result = state.batchTransfer(
+                List.of(
+                        new Transfer(brokerId, userId, 10),
+                        new Transfer(brokerId, otherUserId, 20),
+                        new Transfer(userId, otherUserId, 5)
+                ),
+                new VectorClock()
+        );
+
+        assertEquals(3, result.value());
+        assertEquals(5, result.vectorClock().getValue(state.getQualifier()));
+        assertEquals(5, state.getAccounts().get(userId).getBalance());
+        assertEquals(25, state.getAccounts().get(otherUserId).getBalance());
+        assertEquals(970, state.getAccounts().get(brokerId).getBalance());
+        assertEquals(5, state.getLedger().size());
+
+        val next = state.transferTo(brokerId, userId, 1, new VectorClock());
+        assertEquals(6, next.vectorClock().getValue(state.getQualifier()));
+    }
+
+    @Test
+    @SneakyThrows
+    void batchTransferIsRejectedIfAnyTransferIsInvalid() {
+        assertThrows(
+                InvalidAmountException.class,
+                () -> state.batchTransfer(
+                        List.of(new Transfer(brokerId, userId, 10), new Transfer(brokerId, userId, 0)),
+                        new VectorClock()
+                )
+        );
+        assertThrows(
+                TransferBetweenSameAccountException.class,
+                () -> state.batchTransfer(List.of(new Transfer(userId, userId, 10)), new VectorClock())
+        );
+        assertEquals(1, state.getLedger().size());
+        assertEquals(ServerState.BROKER_INITIAL_AMOUNT, state.getAccounts().get(brokerId).getBalance());
+    }
+
+    @Test
+    @SneakyThrows
+    void concurrentWithdrawalsNeverOverdraw() {
+        final Account account = new Account(userId);
+        account.increaseBalance(1000);
+        final AtomicInteger withdrawals = new AtomicInteger();
+
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(new Thread(() -> {
+                for (int j = 0; j < 100; j++) {
+                    if (account.tryDecreaseBalance(3)) {
+                        withdrawals.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(333, withdrawals.get());
+        assertEquals(1, account.getBalance());
+    }
+
 }
@@ -0,0 +1,95 @@
+package pt.tecnico.distledger.server;
+
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import lombok.SneakyThrows;
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pt.tecnico.distledger.common.ReplicaRegistry;
+import pt.tecnico.distledger.server.domain.ServerState;
+import pt.tecnico.distledger.server.service.UserDistLedgerServiceImpl;
+import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.BalanceRequest;
+import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.CreateAccountRequest;
+import pt.ulisboa.tecnico.distledger.contract.user.UserServiceGrpc;
+import pt.ulisboa.tecnico.distledger.contract.user.UserServiceGrpc.UserServiceBlockingStub;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Test that clients cannot make a replica register replicas it does not know of, by referring to them in their
+ * timestamps.
+ */
+class UnknownReplicaTest {
+
+    private static final String QUALIFIER = "A";
+
+    private ServerCoordinator coordinator;
+    private Server server;
+    private ManagedChannel channel;
+    private UserServiceBlockingStub stub;
+
+    @BeforeEach
+    @SneakyThrows
+    void setup() {
+        coordinator = new ServerCoordinator(0, QUALIFIER, new GossipScheduler.Config(0, 0, false, 0, 0, 0));
+        server = ServerBuilder.forPort(0).addService(new UserDistLedgerServiceImpl(coordinator)).build().start();
+        channel = ManagedChannelBuilder.forAddress("localhost", server.getPort()).usePlaintext().build();
+        stub = UserServiceGrpc.newBlockingStub(channel).withDeadlineAfter(10, TimeUnit.SECONDS);
+    }
+
+    @AfterEach
+    @SneakyThrows
+    void tearDown() {
+        channel.shutdownNow();
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        coordinator.shutdown();
+    }
+
+    @Test
+    void timestampWithUnknownReplicaIsRejected() {
+        final String unknown = "unknown-" + UUID.randomUUID();
+
+        val balance = assertThrows(StatusRuntimeException.class, () -> stub.balance(
+                BalanceRequest.newBuilder().setUserId(ServerState.BROKER_ID).putPrevTimestamp(unknown, 1).build()
+        ));
+        assertEquals(Status.Code.INVALID_ARGUMENT, balance.getStatus().getCode());
+        val creation = assertThrows(StatusRuntimeException.class, () -> stub.createAccount(
+                CreateAccountRequest.newBuilder().setUserId("user1").putPrevTimestamp(unknown, 1).build()
+        ));
+        assertEquals(Status.Code.INVALID_ARGUMENT, creation.getStatus().getCode());
+
+        assertEquals(-1, ReplicaRegistry.lookup(unknown));
+        assertEquals(0, coordinator.getServerState().getLedger().size());
+    }
+
+    @Test
+    void timestampWithKnownReplicasIsAccepted() {
+        final String unknown = "unknown-" + UUID.randomUUID();
+
+        // Zero entries do not refer to any operation, so they are ignored
+        val creation = stub.createAccount(
+                CreateAccountRequest.newBuilder().setUserId("user1").putPrevTimestamp(unknown, 0).build()
+        );
+        assertEquals(1, creation.getNewTimestampOrThrow(QUALIFIER));
+
+        val balance = stub.balance(
+                BalanceRequest.newBuilder()
+                        .setUserId("user1")
+                        .putAllPrevTimestamp(creation.getNewTimestampMap())
+                        .build()
+        );
+        assertEquals(0, balance.getValue());
+        assertEquals(-1, ReplicaRegistry.lookup(unknown));
+    }
+
+}
@@ -0,0 +1,111 @@
+package pt.tecnico.distledger.server;
+
+import lombok.SneakyThrows;
+import lombok.val;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import pt.tecnico.distledger.common.VectorClock;
+import pt.tecnico.distledger.server.domain.ServerState;
+import pt.tecnico.distledger.server.factory.OperationFactory;
+import pt.tecnico.distledger.server.persistence.WriteAheadLog;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class WriteAheadLogTest {
+
+    private static final String QUALIFIER = "A";
+
+    private static final String userId = "user1";
+
+    @TempDir
+    Path directory;
+
+    private final List<ServerState> states = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        states.forEach(ServerState::close);
+    }
+
+    @Test
+    @SneakyThrows
+    void stateIsRebuiltFromLog() {
+        val path = directory.resolve("A.wal");
+        try (val operationLog = new WriteAheadLog(path, true, 0)) {
+            val state = state(operationLog);
+            state.createAccount(userId, new VectorClock());
+            state.transferTo(ServerState.BROKER_ID, userId, 10, new VectorClock());
+        }
+
+        try (val operationLog = new WriteAheadLog(path, true, 0)) {
+            val state = recover(operationLog);
+
+            assertEquals(2, state.getLedger().size());
+            assertEquals(10, state.getAccounts().get(userId).getBalance());
+            assertEquals(2, state.getReplicaTimestamp().getValue(QUALIFIER));
+            assertEquals(2, state.getValueTimestamp().getValue(QUALIFIER));
+
+            // New operations continue after the recovered ones
+            state.transferTo(userId, ServerState.BROKER_ID, 5, new VectorClock());
+        }
+
+        try (val operationLog = new WriteAheadLog(path, true, 0)) {
+            val state = recover(operationLog);
+
+            assertEquals(3, state.getLedger().size());
+            assertEquals(5, state.getAccounts().get(userId).getBalance());
+        }
+    }
+
+    @Test
+    @SneakyThrows
+    void incompleteRecordIsDiscarded() {
+        val path = directory.resolve("A.wal");
+        try (val operationLog = new WriteAheadLog(path, true, 0)) {
+            val state = state(operationLog);
+            state.createAccount(userId, new VectorClock());
+            state.transferTo(ServerState.BROKER_ID, userId, 10, new VectorClock());
+        }
+        try (val channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+
+        try (val operationLog = new WriteAheadLog(path, true, 0)) {
+            val state = recover(operationLog);
+
+            assertEquals(1, state.getLedger().size());
+            assertEquals(0, state.getAccounts().get(userId).getBalance());
+
+            state.transferTo(ServerState.BROKER_ID, userId, 20, new VectorClock());
+        }
+
+        try (val operationLog = new WriteAheadLog(path, true, 0)) {
+            val state = recover(operationLog);
+
+            assertEquals(2, state.getLedger().size());
+            assertEquals(20, state.getAccounts().get(userId).getBalance());
+        }
+    }
+
+    @SneakyThrows
+    private ServerState recover(WriteAheadLog operationLog) {
+        val operationFactory = new OperationFactory();
+        val state = state(operationLog);
+        state.recover(operationLog.recover(0).stream().map(operationFactory::createOperationFromGrpc).toList());
+        return state;
+    }
+
+    private ServerState state(WriteAheadLog operationLog) {
+        val state = new ServerState(QUALIFIER, operationLog);
+        states.add(state);
+        return state;
+    }
+
+}
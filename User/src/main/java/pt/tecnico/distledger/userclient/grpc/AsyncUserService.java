@@ -0,0 +1,193 @@
+package pt.tecnico.distledger.userclient.grpc;
+
+import io.grpc.stub.StreamObserver;
+import lombok.CustomLog;
+import lombok.RequiredArgsConstructor;
+import pt.tecnico.distledger.common.VectorClock;
+import pt.tecnico.distledger.common.connection.ServerResolver;
+import pt.tecnico.distledger.common.exceptions.ServerUnresolvableException;
+import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.BalanceRequest;
+import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.BalanceResponse;
+import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.BatchTransferRequest;
+import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.BatchTransferResponse;
+import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.CreateAccountRequest;
+import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.CreateAccountResponse;
+import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.Transfer;
+import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.TransferToRequest;
+import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.TransferToResponse;
+import pt.ulisboa.tecnico.distledger.contract.user.UserServiceGrpc.UserServiceStub;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Non-blocking counterpart of {@link UserService}: every request returns as soon as it is sent, with a future that
+ * completes with its response. Any number of requests may be in flight at once, multiplexed over the same channel.
+ * <p>
+ * Each request depends on the operations observed by this session when it is sent, so requests sent concurrently do
+ * not depend on each other; to make a request depend on another, send it once the other's future has completed (e.g.,
+ * with {@link CompletableFuture#thenCompose}). The timestamp of each response is merged into the session's vector
+ * clock before its future completes, in whatever order the responses arrive.
+ * <p>
+ * Futures are completed on gRPC's threads, so the actions chained to them must not block.
+ */
+@CustomLog(topic = "Service")
+@RequiredArgsConstructor
+public class AsyncUserService implements AutoCloseable {
+
+    private final ServerResolver<UserServiceStub> serverResolver;
+
+    // Guarded by itself
+    private final VectorClock vectorClock = new VectorClock();
+
+    public CompletableFuture<Void> createAccount(String qualifier, String username) {
+        log.debug("[Server '%s'] Sending request to create account for '%s'", qualifier, username);
+        final CreateAccountRequest request = CreateAccountRequest.newBuilder()
+                .setUserId(username)
+                .putAllPrevTimestamp(currentTimestamps())
+                .build();
+        return this.<CreateAccountResponse>call(
+                qualifier,
+                (stub, observer) -> stub.createAccount(request, observer),
+                CreateAccountResponse::getNewTimestampMap
+        ).thenApply(response -> null);
+    }
+
+    public CompletableFuture<Integer> balance(String qualifier, String username) {
+        log.debug("[Server '%s'] Sending request to get balance for '%s'", qualifier, username);
+        final BalanceRequest request = BalanceRequest.newBuilder()
+                .setUserId(username)
+                .putAllPrevTimestamp(currentTimestamps())
+                .build();
+        return this.<BalanceResponse>call(
+                qualifier,
+                (stub, observer) -> stub.balance(request, observer),
+                BalanceResponse::getNewTimestampMap
+        ).thenApply(BalanceResponse::getValue);
+    }
+
+    public CompletableFuture<Void> transferTo(String qualifier, String from, String to, Integer amount) {
+        log.debug(
+                "[Server '%s'] Sending request to create transfer of %d coin(s) from '%s' to '%s'",
+                qualifier,
+                amount,
+                from,
+                to
+        );
+        final TransferToRequest request = TransferToRequest.newBuilder()
+                .setAccountFrom(from)
+                .setAccountTo(to)
+                .setAmount(amount)
+                .putAllPrevTimestamp(currentTimestamps())
+                .build();
+        return this.<TransferToResponse>call(
+                qualifier,
+                (stub, observer) -> stub.transferTo(request, observer),
+                TransferToResponse::getNewTimestampMap
+        ).thenApply(response -> null);
+    }
+
+    /**
+     * Send a batch of transfers, which all depend on the operations observed by this session when it is sent, in a
+     * single request. The server validates every transfer before accepting any of them.
+     *
+     * @param qualifier The qualifier of the server.
+     * @param transfers The transfers.
+     * @return The future counter the server assigned to the first transfer (the others are assigned the next ones, in
+     *         order).
+     */
+    public CompletableFuture<Integer> batchTransfer(String qualifier, List<Transfer> transfers) {
+        log.debug("[Server '%s'] Sending request to create batch of %d transfer(s)", qualifier, transfers.size());
+        final BatchTransferRequest request = BatchTransferRequest.newBuilder()
+                .addAllTransfers(transfers)
+                .putAllPrevTimestamp(currentTimestamps())
+                .build();
+        return this.<BatchTransferResponse>call(
+                qualifier,
+                (stub, observer) -> stub.batchTransfer(request, observer),
+                BatchTransferResponse::getNewTimestampMap
+        ).thenApply(BatchTransferResponse::getFirstCounter);
+    }
+
+    /**
+     * Get the timestamp of the operations this session has observed so far.
+     *
+     * @return A copy of the session's vector clock.
+     */
+    public VectorClock getTimestamp() {
+        synchronized (vectorClock) {
+            return vectorClock.clone();
+        }
+    }
+
+    /**
+     * Make this session causally depend on the operations observed by another session, so that its reads reflect them.
+     *
+     * @param timestamp The timestamp observed by the other session.
+     */
+    public void mergeTimestamp(VectorClock timestamp) {
+        synchronized (vectorClock) {
+            vectorClock.updateVectorClock(timestamp);
+            log.debug("Vector clock is currently: %s", vectorClock.getTimestamps());
+        }
+    }
+
+    @Override
+    public void close() {
+        serverResolver.close();
+    }
+
+    private Map<String, Integer> currentTimestamps() {
+        synchronized (vectorClock) {
+            return Map.copyOf(vectorClock.getTimestamps());
+        }
+    }
+
+    /**
+     * Send a request to the given server, merging the timestamp of its response into the session's vector clock.
+     *
+     * @param qualifier    The qualifier of the server.
+     * @param rpc          Sends the request through the given stub, with the given observer of its response.
+     * @param newTimestamp Gets the timestamp from the response.
+     * @param <R>          The type of the response.
+     * @return The future response, failed with a {@link io.grpc.StatusRuntimeException} if the server fails the
+     *         request, or with a {@link ServerUnresolvableException} if the server cannot be resolved.
+     */
+    private <R> CompletableFuture<R> call(
+            String qualifier,
+            BiConsumer<UserServiceStub, StreamObserver<R>> rpc,
+            Function<R, Map<String, Integer>> newTimestamp
+    ) {
+        final UserServiceStub stub;
+        try {
+            stub = serverResolver.resolveStub(qualifier);
+        } catch (ServerUnresolvableException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        final CompletableFuture<R> response = new CompletableFuture<>();
+        rpc.accept(stub, new StreamObserver<>() {
+            @Override
+            public void onNext(R value) {
+                log.debug("[Server '%s'] Received response", qualifier);
+                mergeTimestamp(new VectorClock(newTimestamp.apply(value)));
+                response.complete(value);
+            }
+
+            @Override
+            public void onError(Throwable t) {
+                response.completeExceptionally(t);
+            }
+
+            @Override
+            public void onCompleted() {
+                // Unary calls complete right after their only response
+            }
+        });
+        return response;
+    }
+
+}
@@ -97,6 +97,25 @@ public class UserService implements AutoCloseable {
         logTimestamps();
     }
 
+    /**
+     * Get the timestamp of the operations this session has observed so far.
+     *
+     * @return A copy of the session's vector clock.
+     */
+    public VectorClock getTimestamp() {
+        return vectorClock.clone();
+    }
+
+    /**
+     * Make this session causally depend on the operations observed by another session, so that its reads reflect them.
+     *
+     * @param timestamp The timestamp observed by the other session.
+     */
+    public void mergeTimestamp(VectorClock timestamp) {
+        vectorClock.updateVectorClock(timestamp);
+        logTimestamps();
+    }
+
     @Override
     public void close() {
         serverResolver.close();
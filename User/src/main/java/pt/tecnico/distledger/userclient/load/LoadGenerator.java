@@ -0,0 +1,344 @@
+package pt.tecnico.distledger.userclient.load;
+
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import lombok.CustomLog;
+import lombok.val;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import pt.tecnico.distledger.common.Logger;
+import pt.tecnico.distledger.common.connection.CachedServerResolver;
+import pt.tecnico.distledger.common.connection.ServerResolver;
+import pt.tecnico.distledger.common.exceptions.ServerUnresolvableException;
+import pt.tecnico.distledger.userclient.grpc.UserService;
+import pt.ulisboa.tecnico.distledger.contract.user.UserServiceGrpc;
+import pt.ulisboa.tecnico.distledger.contract.user.UserServiceGrpc.UserServiceBlockingStub;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Drives a mix of {@code createAccount}, {@code transferTo} and {@code balance} requests against one or more replicas,
+ * and reports the latency percentiles and throughput of each kind of request.
+ * <p>
+ * Each worker thread is a client session, with its own vector clock, which sends every request to a random replica.
+ * Before the run, a set of accounts is created and funded by the broker, and every session starts from the timestamp
+ * of that setup, so its reads on any replica reflect the accounts.
+ * <p>
+ * Without a target rate, each session sends its next request as soon as the previous one completes (closed loop).
+ * With a target rate, requests are scheduled at fixed intervals regardless of how long the previous ones take (open
+ * loop), and latency is measured from the time a request was scheduled to start: a request that could not be sent on
+ * time because the sessions were all busy is charged the time it spent waiting, so that a stalled replica is not
+ * hidden by the client backing off (coordinated omission).
+ */
+@CustomLog(topic = "Load Generator")
+public class LoadGenerator {
+
+    private static final String ACCOUNT_PREFIX = "load-";
+    private static final String BROKER_ID = "broker";
+    private static final int BROKER_INITIAL_AMOUNT = 1000;
+
+    private final Config config;
+    private final ServerResolver<UserServiceBlockingStub> serverResolver;
+
+    private final Map<OperationType, Stats> stats = new ConcurrentHashMap<>();
+    private final AtomicLong tickets = new AtomicLong();
+    private final AtomicLong createdAccounts = new AtomicLong();
+
+    public LoadGenerator(Config config, ServerResolver<UserServiceBlockingStub> serverResolver) {
+        this.config = config;
+        this.serverResolver = serverResolver;
+        Arrays.stream(OperationType.values()).forEach(type -> stats.put(type, new Stats()));
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Logger.setDebug(System.getProperty("debug") != null);
+
+        final Config config;
+        try {
+            config = Config.fromSystemProperties();
+        } catch (IllegalArgumentException e) {
+            log.error("Invalid load generator configuration: %s", e.getMessage());
+            System.exit(1);
+            return;
+        }
+
+        val serverResolver = new CachedServerResolver<>(UserServiceGrpc::newBlockingStub);
+        try {
+            new LoadGenerator(config, serverResolver).run();
+        } finally {
+            serverResolver.close();
+        }
+    }
+
+    /**
+     * Set up the accounts, run the configured load and print the report.
+     *
+     * @throws InterruptedException If interrupted while waiting for the sessions to finish.
+     */
+    public void run() throws InterruptedException {
+        log.info("Creating and funding %d account(s) on replica %s", config.accounts(), config.servers().get(0));
+        final UserService setupSession = new UserService(serverResolver);
+        setUp(setupSession);
+
+        log.info(
+                "Running %d session(s) for %d s (warm-up: %d s, rate: %s, reads: %.0f%%, creates: %.0f%%)",
+                config.concurrency(),
+                config.durationSeconds(),
+                config.warmupSeconds(),
+                config.rate() > 0 ? config.rate() + " op/s" : "closed loop",
+                config.readRatio() * 100,
+                config.createRatio() * 100
+        );
+        final long startNanos = System.nanoTime();
+        final long measureStartNanos = startNanos + TimeUnit.SECONDS.toNanos(config.warmupSeconds());
+        final long endNanos = measureStartNanos + TimeUnit.SECONDS.toNanos(config.durationSeconds());
+
+        final List<Thread> sessions = new ArrayList<>(config.concurrency());
+        for (int i = 0; i < config.concurrency(); i++) {
+            final UserService session = new UserService(serverResolver);
+            session.mergeTimestamp(setupSession.getTimestamp());
+            final Thread thread = new Thread(
+                    () -> runSession(session, startNanos, measureStartNanos, endNanos),
+                    "load-session-" + i
+            );
+            thread.setDaemon(true);
+            sessions.add(thread);
+            thread.start();
+        }
+        for (Thread thread : sessions) {
+            thread.join();
+        }
+
+        printReport(TimeUnit.SECONDS.toNanos(config.durationSeconds()));
+    }
+
+    /**
+     * Create the accounts used by the run (unless they already exist, from a previous run) and share the broker's
+     * coins among them.
+     */
+    private void setUp(UserService session) {
+        final String server = config.servers().get(0);
+        final int funding = BROKER_INITIAL_AMOUNT / config.accounts();
+        for (int i = 0; i < config.accounts(); i++) {
+            try {
+                session.createAccount(server, accountName(i));
+                if (funding > 0) {
+                    session.transferTo(server, BROKER_ID, accountName(i), funding);
+                }
+            } catch (StatusRuntimeException e) {
+                log.debug("Could not set up account %s: %s", accountName(i), e.getMessage());
+            } catch (ServerUnresolvableException e) {
+                throw new IllegalStateException("Could not resolve replica " + server, e);
+            }
+        }
+    }
+
+    private void runSession(UserService session, long startNanos, long measureStartNanos, long endNanos) {
+        final ThreadLocalRandom random = ThreadLocalRandom.current();
+        final long intervalNanos = config.rate() > 0 ? TimeUnit.SECONDS.toNanos(1) / config.rate() : 0;
+        while (true) {
+            final long intendedStartNanos;
+            if (intervalNanos > 0) {
+                intendedStartNanos = startNanos + tickets.getAndIncrement() * intervalNanos;
+                if (intendedStartNanos >= endNanos) {
+                    return;
+                }
+                long delay;
+                while ((delay = intendedStartNanos - System.nanoTime()) > 0) {
+                    LockSupport.parkNanos(delay);
+                }
+            } else {
+                intendedStartNanos = System.nanoTime();
+                if (intendedStartNanos >= endNanos) {
+                    return;
+                }
+            }
+
+            final OperationType type = chooseOperation(random.nextDouble());
+            final String server = config.servers().get(random.nextInt(config.servers().size()));
+            Status.Code failure = null;
+            try {
+                execute(session, type, server, random);
+            } catch (StatusRuntimeException e) {
+                failure = e.getStatus().getCode();
+            } catch (ServerUnresolvableException e) {
+                failure = Status.Code.UNAVAILABLE;
+            }
+            if (intendedStartNanos >= measureStartNanos) {
+                stats.get(type).record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - intendedStartNanos), failure);
+            }
+        }
+    }
+
+    private OperationType chooseOperation(double draw) {
+        if (draw < config.createRatio()) {
+            return OperationType.CREATE_ACCOUNT;
+        }
+        return draw < config.createRatio() + config.readRatio() ? OperationType.BALANCE : OperationType.TRANSFER_TO;
+    }
+
+    private void execute(
+            UserService session,
+            OperationType type,
+            String server,
+            ThreadLocalRandom random
+    ) throws StatusRuntimeException, ServerUnresolvableException {
+        switch (type) {
+            case CREATE_ACCOUNT -> session.createAccount(
+                    server,
+                    ACCOUNT_PREFIX + "new-" + ProcessHandle.current().pid() + "-" + createdAccounts.getAndIncrement()
+            );
+            case BALANCE -> session.balance(server, accountName(random.nextInt(config.accounts())));
+            case TRANSFER_TO -> {
+                final int from = random.nextInt(config.accounts());
+                // Never transfer from an account to itself
+                final int to = (from + 1 + random.nextInt(Math.max(config.accounts() - 1, 1))) % config.accounts();
+                session.transferTo(server, accountName(from), accountName(to), 1);
+            }
+        }
+    }
+
+    private void printReport(long measuredNanos) {
+        final double seconds = measuredNanos / 1e9;
+        long total = 0;
+        System.out.printf(
+                "%-12s %10s %10s %8s %10s %10s %10s %10s %10s%n",
+                "operation",
+                "count",
+                "op/s",
+                "errors",
+                "p50 (ms)",
+                "p90 (ms)",
+                "p99 (ms)",
+                "p99.9 (ms)",
+                "max (ms)"
+        );
+        for (OperationType type : OperationType.values()) {
+            final Stats typeStats = stats.get(type);
+            final Histogram histogram = typeStats.latencies;
+            total += histogram.getTotalCount();
+            System.out.printf(
+                    "%-12s %10d %10.1f %8d %10.2f %10.2f %10.2f %10.2f %10.2f%n",
+                    type.displayName,
+                    histogram.getTotalCount(),
+                    histogram.getTotalCount() / seconds,
+                    typeStats.errorCount(),
+                    histogram.getValueAtPercentile(50) / 1e3,
+                    histogram.getValueAtPercentile(90) / 1e3,
+                    histogram.getValueAtPercentile(99) / 1e3,
+                    histogram.getValueAtPercentile(99.9) / 1e3,
+                    histogram.getMaxValue() / 1e3
+            );
+            typeStats.errors.forEach(
+                    (code, count) -> System.out.printf("%-12s %10s %10s %8d (%s)%n", "", "", "", count.sum(), code)
+            );
+        }
+        System.out.printf("Total throughput: %.1f op/s%n", total / seconds);
+    }
+
+    private static String accountName(int index) {
+        return ACCOUNT_PREFIX + index;
+    }
+
+    private enum OperationType {
+        CREATE_ACCOUNT("create"),
+        TRANSFER_TO("transfer"),
+        BALANCE("balance");
+
+        private final String displayName;
+
+        OperationType(String displayName) {
+            this.displayName = displayName;
+        }
+    }
+
+    /**
+     * Latencies (in microseconds) and failures of one kind of request. Failed requests are also recorded in the
+     * latency histogram, since they took as long to answer.
+     */
+    private static class Stats {
+
+        private final Histogram latencies = new ConcurrentHistogram(3);
+        private final Map<Status.Code, LongAdder> errors = new ConcurrentHashMap<>();
+
+        void record(long latencyMicros, Status.Code failure) {
+            latencies.recordValue(latencyMicros);
+            if (failure != null) {
+                errors.computeIfAbsent(failure, code -> new LongAdder()).increment();
+            }
+        }
+
+        long errorCount() {
+            return errors.values().stream().mapToLong(LongAdder::sum).sum();
+        }
+    }
+
+    /**
+     * Configuration of the load generator.
+     *
+     * @param servers         The qualifiers of the replicas to send requests to. Accounts are set up on the first one.
+     * @param concurrency     The number of concurrent sessions.
+     * @param rate            The target rate of requests per second, across all sessions, or 0 for a closed loop.
+     * @param durationSeconds How long the load is measured for, in seconds.
+     * @param warmupSeconds   How long the load runs before being measured, in seconds.
+     * @param readRatio       The fraction of requests that are balance reads.
+     * @param createRatio     The fraction of requests that create a new account. The remaining requests are transfers.
+     * @param accounts        The number of accounts that are read and transferred between.
+     */
+    public record Config(
+            List<String> servers,
+            int concurrency,
+            long rate,
+            long durationSeconds,
+            long warmupSeconds,
+            double readRatio,
+            double createRatio,
+            int accounts
+    ) {
+
+        public Config {
+            if (servers.isEmpty() || concurrency <= 0 || accounts <= 0 || durationSeconds <= 0 || rate < 0) {
+                throw new IllegalArgumentException(
+                        "servers, concurrency, accounts and duration must be positive, and the rate not negative"
+                );
+            }
+            if (readRatio < 0 || createRatio < 0 || readRatio + createRatio > 1) {
+                throw new IllegalArgumentException("read and create ratios must not be negative, nor add up past 1");
+            }
+            servers = List.copyOf(servers);
+        }
+
+        /**
+         * Read the configuration from the system properties {@code load.servers} (comma-separated qualifiers),
+         * {@code load.concurrency}, {@code load.rate}, {@code load.duration}, {@code load.warmup},
+         * {@code load.readRatio}, {@code load.createRatio} and {@code load.accounts}.
+         *
+         * @return The configuration.
+         */
+        public static Config fromSystemProperties() {
+            return new Config(
+                    Arrays.stream(System.getProperty("load.servers", "A").split(","))
+                            .map(String::trim)
+                            .filter(server -> !server.isEmpty())
+                            .toList(),
+                    Integer.getInteger("load.concurrency", 16),
+                    Long.getLong("load.rate", 0),
+                    Long.getLong("load.duration", 30),
+                    Long.getLong("load.warmup", 5),
+                    Double.parseDouble(System.getProperty("load.readRatio", "0.9")),
+                    Double.parseDouble(System.getProperty("load.createRatio", "0.01")),
+                    Integer.getInteger("load.accounts", 100)
+            );
+        }
+    }
+
+}
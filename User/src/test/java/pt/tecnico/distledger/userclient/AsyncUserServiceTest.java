@@ -0,0 +1,217 @@
+package pt.tecnico.distledger.userclient;
+
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+import lombok.SneakyThrows;
+import lombok.val;
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import pt.tecnico.distledger.common.VectorClock;
+import pt.tecnico.distledger.common.connection.ServerResolver;
+import pt.tecnico.distledger.common.connection.SingleServerResolver;
+import pt.tecnico.distledger.common.exceptions.ServerUnresolvableException;
+import pt.tecnico.distledger.userclient.grpc.AsyncUserService;
+import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.BalanceRequest;
+import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.BalanceResponse;
+import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.CreateAccountRequest;
+import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.CreateAccountResponse;
+import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.TransferToRequest;
+import pt.ulisboa.tecnico.distledger.contract.user.UserDistLedger.TransferToResponse;
+import pt.ulisboa.tecnico.distledger.contract.user.UserServiceGrpc;
+import pt.ulisboa.tecnico.distledger.contract.user.UserServiceGrpc.UserServiceStub;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Test the non-blocking user service against a server that answers requests whenever the test tells it to, so that
+ * several requests can be in flight at once and their responses can arrive in any order.
+ */
+class AsyncUserServiceTest {
+
+    private static final String LOCALHOST = "localhost";
+    private static final String SERVER = "A";
+
+    private final PendingUserService pending = new PendingUserService();
+    private Server server;
+    private AsyncUserService service;
+
+    @BeforeEach
+    @SneakyThrows
+    void setup() {
+        server = ServerBuilder.forPort(0).addService(pending).build().start();
+        service = new AsyncUserService(
+                new SingleServerResolver<>(LOCALHOST, server.getPort(), UserServiceGrpc::newStub)
+        );
+    }
+
+    @AfterEach
+    @SneakyThrows
+    void tearDown() {
+        service.close();
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    @SneakyThrows
+    void concurrentResponsesAreMergedIntoSession() {
+        val first = service.createAccount(SERVER, "user1");
+        val second = service.createAccount(SERVER, "user2");
+
+        // Both requests are in flight at once, so neither depends on the other
+        val calls = List.of(pending.next(), pending.next());
+        val firstCall = creationOf("user1", calls);
+        val secondCall = creationOf("user2", calls);
+        assertTrue(firstCall.prevTimestamp().isEmpty());
+        assertTrue(secondCall.prevTimestamp().isEmpty());
+
+        // The responses arrive in the opposite order of the requests
+        respond(secondCall, CreateAccountResponse.newBuilder().putNewTimestamp("B", 1).build());
+        second.get(10, TimeUnit.SECONDS);
+        assertFalse(first.isDone());
+        assertEquals(new VectorClock(Map.of("B", 1)), service.getTimestamp());
+
+        respond(firstCall, CreateAccountResponse.newBuilder().putNewTimestamp("A", 1).build());
+        first.get(10, TimeUnit.SECONDS);
+        assertEquals(new VectorClock(Map.of("A", 1, "B", 1)), service.getTimestamp());
+    }
+
+    @Test
+    @SneakyThrows
+    void composedRequestDependsOnEarlierResponse() {
+        val balance = service.createAccount(SERVER, "user1")
+                .thenCompose(ignored -> service.balance(SERVER, "user1"));
+
+        val create = pending.next();
+        assertEquals(create, creationOf("user1", List.of(create)));
+        respond(create, CreateAccountResponse.newBuilder().putNewTimestamp("A", 1).build());
+
+        // The balance is only requested once the account creation has been acknowledged, and depends on it
+        val read = pending.next();
+        assertTrue(read.request() instanceof BalanceRequest);
+        assertEquals(Map.of("A", 1), read.prevTimestamp());
+        respond(read, BalanceResponse.newBuilder().setValue(0).putNewTimestamp("A", 1).build());
+
+        assertEquals(0, balance.get(10, TimeUnit.SECONDS));
+        assertEquals(new VectorClock(Map.of("A", 1)), service.getTimestamp());
+    }
+
+    @Test
+    @SneakyThrows
+    void failedRequestFailsItsFuture() {
+        val transfer = service.transferTo(SERVER, "user1", "user2", 10);
+
+        val call = pending.next();
+        call.observer().onError(
+                Status.INVALID_ARGUMENT.withDescription("Account 'user1' not found").asRuntimeException()
+        );
+
+        val exception = assertThrows(ExecutionException.class, () -> transfer.get(10, TimeUnit.SECONDS));
+        assertTrue(exception.getCause() instanceof StatusRuntimeException);
+        assertEquals(
+                Status.Code.INVALID_ARGUMENT,
+                ((StatusRuntimeException) exception.getCause()).getStatus().getCode()
+        );
+        assertEquals(new VectorClock(), service.getTimestamp());
+
+        // A request chained to the failed one is never sent
+        val chained = transfer.thenCompose(ignored -> service.balance(SERVER, "user1"));
+        assertThrows(ExecutionException.class, () -> chained.get(10, TimeUnit.SECONDS));
+        assertTrue(pending.calls.isEmpty());
+    }
+
+    @Test
+    @SneakyThrows
+    void unresolvableServerFailsFuture() {
+        try (val unresolvable = new AsyncUserService(new UnresolvableServerResolver())) {
+            val balance = unresolvable.balance(SERVER, "user1");
+
+            val exception = assertThrows(ExecutionException.class, () -> balance.get(10, TimeUnit.SECONDS));
+            assertTrue(exception.getCause() instanceof ServerUnresolvableException);
+            assertEquals(new VectorClock(), unresolvable.getTimestamp());
+        }
+        assertTrue(pending.calls.isEmpty());
+    }
+
+    private static PendingCall creationOf(String userId, List<PendingCall> calls) {
+        return calls.stream()
+                .filter(call -> call.request() instanceof CreateAccountRequest request
+                        && request.getUserId().equals(userId))
+                .findFirst()
+                .orElseThrow();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> void respond(PendingCall call, R response) {
+        final StreamObserver<R> observer = (StreamObserver<R>) call.observer();
+        observer.onNext(response);
+        observer.onCompleted();
+    }
+
+    /**
+     * A request received by the server, which is only answered when the test does so.
+     *
+     * @param request       The request.
+     * @param prevTimestamp The previous timestamp sent with the request.
+     * @param observer      The observer of its response.
+     */
+    private record PendingCall(Object request, Map<String, Integer> prevTimestamp, StreamObserver<?> observer) {
+    }
+
+    /**
+     * A user service that queues every request it receives, without answering it.
+     */
+    private static class PendingUserService extends UserServiceGrpc.UserServiceImplBase {
+
+        private final BlockingQueue<PendingCall> calls = new LinkedBlockingQueue<>();
+
+        @Override
+        public void createAccount(CreateAccountRequest request, StreamObserver<CreateAccountResponse> observer) {
+            calls.add(new PendingCall(request, request.getPrevTimestampMap(), observer));
+        }
+
+        @Override
+        public void balance(BalanceRequest request, StreamObserver<BalanceResponse> observer) {
+            calls.add(new PendingCall(request, request.getPrevTimestampMap(), observer));
+        }
+
+        @Override
+        public void transferTo(TransferToRequest request, StreamObserver<TransferToResponse> observer) {
+            calls.add(new PendingCall(request, request.getPrevTimestampMap(), observer));
+        }
+
+        PendingCall next() throws InterruptedException {
+            final PendingCall call = calls.poll(10, TimeUnit.SECONDS);
+            assertNotNull(call);
+            return call;
+        }
+    }
+
+    private static class UnresolvableServerResolver implements ServerResolver<UserServiceStub> {
+
+        @Override
+        public @NotNull UserServiceStub resolveStub(@NotNull String qualifier) throws ServerUnresolvableException {
+            throw new ServerUnresolvableException(qualifier);
+        }
+
+        @Override
+        public void closeAllChannels() {
+        }
+    }
+
+}